@@ -0,0 +1,70 @@
+package com.dollarsbank.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.service.AccountStore;
+
+// Looking up a random account by number: the primitive-keyed account store against a map with boxed keys.
+// Numbers above 127 aren't cached by Integer.valueOf, so every map lookup boxes its key.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AccountStoreBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int accounts;
+
+    private AccountStore store;
+    private ConcurrentHashMap<Integer, Account> boxed;
+    private int first;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Customer owner = new Customer("user0", "Passw0rd!", "First", "Last", "1 Main St", "5555555555", "user0@bank.com", new Account());
+
+        store = new AccountStore(accounts);
+        boxed = new ConcurrentHashMap<>(accounts * 2);
+
+        for (int i = 0; i < accounts; i++) {
+            Account account = new Account(100);
+
+            if (i == 0) {
+                first = account.getAccountNo();
+            }
+
+            store.add(account, owner);
+            boxed.put(account.getAccountNo(), account);
+        }
+    }
+
+    @Benchmark
+    public Account accountStore() {
+        return store.get(first + ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+    @Benchmark
+    public Account boxedMap() {
+        return boxed.get(first + ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+}
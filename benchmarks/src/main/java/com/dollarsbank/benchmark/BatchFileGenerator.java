@@ -0,0 +1,55 @@
+package com.dollarsbank.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Writes a command file for DollarsBankApplication --batch: the accounts first, then a random mix
+// of deposits, withdrawals and transfers between them.
+//
+// Usage: BatchFileGenerator <file> [accounts] [operations]
+public class BatchFileGenerator {
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "batch.csv";
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+
+        // Fixed seed so runs are comparable
+        Random random = new Random(42);
+
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < accounts; i++) {
+                out.write("create,user" + i + ",Passw0rd!,First,Last,1 Main St,5555555555,user" + i + "@bank.com,1000.00");
+                out.newLine();
+            }
+
+            for (int i = 0; i < operations; i++) {
+                String user = "user" + random.nextInt(accounts);
+                String amount = random.nextInt(100) + "." + (10 + random.nextInt(90));
+
+                switch (random.nextInt(4)) {
+                    case 0:
+                        out.write("deposit," + user + "," + amount);
+                        break;
+
+                    case 1:
+                        out.write("withdraw," + user + "," + amount);
+                        break;
+
+                    default:
+                        out.write("transfer," + user + ",user" + random.nextInt(accounts) + "," + amount);
+                        break;
+                }
+
+                out.newLine();
+            }
+        }
+
+        System.out.printf("Wrote %d accounts and %d operations to %s%n", accounts, operations, file);
+    }
+
+}
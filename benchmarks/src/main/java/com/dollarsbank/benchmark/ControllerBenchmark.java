@@ -0,0 +1,116 @@
+package com.dollarsbank.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.controller.DollarsBankController;
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.service.BankCore;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// A signed-in customer's deposits, withdrawals and transfers through DollarsBankController, end to end:
+// reading and validating the input, journaling, applying, posting and printing the result.
+// The mix is 50% deposits, 30% withdrawals and 20% transfers.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Ddollarsbank.data=" + ControllerBenchmark.DATADIR)
+public class ControllerBenchmark {
+
+    // Kept apart from the application's own data
+    static final String DATADIR = "target/jmh-data/controller";
+
+    // Customers listed on the transfer screen
+    @Param({ "100" })
+    public int customers;
+
+    private BankCore bank;
+    private DollarsBankController controller;
+
+    private Scanner depositInput;
+    private Scanner withdrawalInput;
+    private Scanner transferInput;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StorageBenchmark.deleteRecursively(new File(FileStorageUtility.DATADIR));
+
+        bank = new BankCore();
+
+        for (int i = 0; i < customers; i++) {
+            String username = "user" + i;
+            Customer customer = new Customer(username, "Passw0rd!", "First", "Last", "1 Main St", "5555555555", username + "@bank.com", new Account(Money.ofDollars(1000)));
+            bank.getEngine().openAccount(customer, customer.getAccount().getBalance());
+        }
+
+        controller = new DollarsBankController(bank);
+        controller.setCurrUser(bank.getCustomers().get("user0"));
+
+        depositInput = RepeatingInput.scanner("2.00\n");
+        withdrawalInput = RepeatingInput.scanner("1.00\n");
+        transferInput = RepeatingInput.scanner("user1\n1.00\ny\n");
+
+        // Output goes nowhere, it is still formatted
+        ConsolePrinterUtility.bindOutput(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ConsolePrinterUtility.unbindOutput();
+        bank.shutdown();
+    }
+
+    @Benchmark
+    public void deposit() {
+        controller.makeDeposit(depositInput);
+    }
+
+    @Benchmark
+    public void withdraw() {
+        controller.makeWithdrawal(withdrawalInput);
+    }
+
+    @Benchmark
+    public void transfer() {
+        controller.transferFunds(transferInput);
+    }
+
+    @Benchmark
+    public void mix() {
+        int op = next;
+        next = (next + 1) % 10;
+
+        if (op < 5) {
+            controller.makeDeposit(depositInput);
+        } else if (op < 8) {
+            controller.makeWithdrawal(withdrawalInput);
+        } else {
+            controller.transferFunds(transferInput);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.dollarsbank.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.security.CredentialVerifier;
+import com.dollarsbank.security.PasswordHasher;
+
+// Sign-ins per second one core can check at each hashing cost, and what a sign-in costs once its credential is
+// cached. Pick -Ddollarsbank.password.iterations so that the first is still comfortably above the expected peak
+// rate of sign-ins per core given to -Ddollarsbank.password.threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CredentialBenchmark {
+
+    private static final String PASSWORD = "Passw0rd!";
+
+    @Param({ "10000", "100000", "310000" })
+    private int iterations;
+
+    private String stored;
+
+    private CredentialVerifier uncached;
+    private CredentialVerifier cached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stored = PasswordHasher.hash(PASSWORD, iterations);
+
+        // One hashing thread, as a single core would have
+        uncached = new CredentialVerifier(1, 16, 0);
+        cached = new CredentialVerifier(1, 16, 16);
+        cached.verify(PASSWORD, stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        uncached.shutdown();
+        cached.shutdown();
+    }
+
+    // Full PBKDF2 on the calling thread
+    @Benchmark
+    public boolean hashCheck() {
+        return PasswordHasher.matches(PASSWORD, stored);
+    }
+
+    // The same through the pool, as a sign-in does it
+    @Benchmark
+    public CredentialVerifier.Result signIn() {
+        return uncached.verify(PASSWORD, stored);
+    }
+
+    // A customer signing in again
+    @Benchmark
+    public CredentialVerifier.Result signInCached() {
+        return cached.verify(PASSWORD, stored);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.dollarsbank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.IdAllocator;
+import com.dollarsbank.persistence.IdLeaseFile;
+
+// Handing out ids from several threads with leases written to a real file, and formatting them
+// with IdAllocator.format against String.format
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBenchmark {
+
+    private File leases;
+    private IdAllocator allocator;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        leases = File.createTempFile("ids", ".seq");
+        leases.delete();
+
+        allocator = new IdAllocator();
+        allocator.attach(new IdLeaseFile(leases.getPath()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        leases.delete();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int next() {
+        return allocator.next();
+    }
+
+    @Benchmark
+    public String format() {
+        return IdAllocator.format('U', allocator.next() & 0xFFFFF);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format("U%06d", allocator.next() & 0xFFFFF);
+    }
+
+}
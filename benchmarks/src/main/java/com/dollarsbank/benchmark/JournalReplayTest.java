@@ -0,0 +1,171 @@
+package com.dollarsbank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.persistence.AccountLedger;
+import com.dollarsbank.persistence.TransactionJournal;
+
+// Writes a journal of random deposits, withdrawals and transfers, then rebuilds every balance and account history
+// from it with 1 replay thread up to maxThreads (one per core by default), the way start-up does, into an empty
+// ledger each time. Each rebuild is checked against the balances the journal was written from and the number of
+// history entries it should have left.
+//
+// Usage: JournalReplayTest [events] [customers] [maxThreads]
+// The journal is kept under target/replay-data in the working directory, in segments of
+// -Ddollarsbank.journal.segment bytes, and each run's ledger under target/replay-data/ledger.
+public class JournalReplayTest {
+
+    private static final String DIR = "target/replay-data";
+    private static final String LEDGER_DIR = DIR + "/ledger";
+
+    private static final long OPENING_BALANCE = Money.ofDollars(1000);
+
+    // Records appended between waits for the journal to reach the disk, so pending records stay bounded
+    private static final int SYNC_EVERY = 100000;
+
+    public static void main(String[] args) throws IOException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        File dir = new File(DIR);
+        File ledgerDir = new File(LEDGER_DIR);
+        deleteAll(ledgerDir);
+        deleteAll(dir);
+        dir.mkdirs();
+        String path = new File(dir, "journal.dat").getPath();
+
+        long[] balances = new long[customers];
+        long begin = System.nanoTime();
+        long entries = write(path, events, customers, balances);
+
+        System.out.printf("Wrote %d events for %d customers in %d ms, %d MB in %d segments%n", events, customers, (System.nanoTime() - begin) / 1000000,
+            size(dir) >> 20, dir.list().length);
+
+        long expected = 0;
+        for (long balance : balances) {
+            expected += balance;
+        }
+
+        System.out.println();
+        System.out.println("threads   ms       events/sec");
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Map<String, Customer> replayed = new ConcurrentHashMap<>();
+            deleteAll(ledgerDir);
+            AccountLedger ledger = new AccountLedger(LEDGER_DIR);
+
+            begin = System.nanoTime();
+            TransactionJournal.replay(path, replayed, 0, ledger, threads);
+            long nanos = System.nanoTime() - begin;
+
+            long written = 0;
+            for (int i = 0; i < customers; i++) {
+                written += ledger.getCount(accountId(i));
+            }
+            ledger.close();
+
+            if (written != entries) {
+                throw new AssertionError("Ledger has " + written + " entries instead of " + entries);
+            }
+
+            long total = 0;
+            for (int i = 0; i < customers; i++) {
+                long balance = replayed.get("user" + i).getAccount().getBalance();
+
+                if (balance != balances[i]) {
+                    throw new AssertionError("user" + i + " has " + balance + " cents instead of " + balances[i]);
+                }
+                total += balance;
+            }
+
+            if (total != expected) {
+                throw new AssertionError("Total balance is " + total + " cents instead of " + expected);
+            }
+
+            System.out.printf("%7d   %-8d %10.0f%n", threads, nanos / 1000000, (customers + (double) events) / nanos * 1e9);
+        }
+    }
+
+    // Returns the number of history entries the journal leaves: one per event, two per transfer
+    private static long write(String path, int events, int customers, long[] balances) throws IOException {
+        TransactionJournal journal = new TransactionJournal(path, 0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long entries = customers;
+
+        for (int i = 0; i < customers; i++) {
+            String username = "user" + i;
+            Customer customer = new Customer(username, "Passw0rd!", "First", "Last", "1 Main St", "5555555555", username + "@bank.com",
+                new Account(accountId(i), OPENING_BALANCE));
+
+            journal.logCreate(customer, OPENING_BALANCE);
+            balances[i] = OPENING_BALANCE;
+        }
+
+        for (int i = 0; i < events; i++) {
+            int from = random.nextInt(customers);
+            long amount = random.nextLong(1, Money.ofDollars(10));
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    journal.logDeposit("user" + from, accountId(from), amount);
+                    balances[from] += amount;
+                    break;
+
+                case 1:
+                    journal.logWithdrawal("user" + from, accountId(from), amount);
+                    balances[from] -= amount;
+                    break;
+
+                default:
+                    int to = random.nextInt(customers);
+                    journal.logTransfer("user" + from, accountId(from), "user" + to, accountId(to), amount);
+                    balances[from] -= amount;
+                    balances[to] += amount;
+                    entries++;
+                    break;
+            }
+
+            entries++;
+
+            if (i % SYNC_EVERY == 0) {
+                journal.awaitDurable(journal.getLastSequence());
+            }
+        }
+
+        journal.close();
+        return entries;
+    }
+
+    private static String accountId(int customer) {
+        return "R" + customer;
+    }
+
+    private static long size(File dir) {
+        long size = 0;
+        for (File file : dir.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        dir.delete();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.dollarsbank.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.Money;
+
+// Parse, format and add throughput of Money (long cents) against the old double + String.format path
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final String[] INPUTS = { "0", "5", "25.50", "100.00", "1999.99", "123456789.01" };
+
+    private int next;
+
+    private double doubleBalance;
+    private long centsBalance;
+
+    private StringBuilder sb;
+
+    @Setup
+    public void setup() {
+        next = 0;
+        doubleBalance = 1000.25;
+        centsBalance = 100025;
+        sb = new StringBuilder(32);
+    }
+
+    private String nextInput() {
+        next = (next + 1) % INPUTS.length;
+        return INPUTS[next];
+    }
+
+    // PARSE
+
+    @Benchmark
+    public double parseDouble() {
+        return Double.parseDouble(nextInput());
+    }
+
+    @Benchmark
+    public long parseMoney() {
+        return Money.parse(nextInput());
+    }
+
+    // FORMAT
+
+    @Benchmark
+    public String formatDouble() {
+        return String.format("%.2f", doubleBalance);
+    }
+
+    @Benchmark
+    public String formatMoney() {
+        return Money.format(centsBalance);
+    }
+
+    @Benchmark
+    public int appendMoney() {
+        sb.setLength(0);
+        return Money.appendTo(sb, centsBalance).length();
+    }
+
+    // ADD
+
+    @Benchmark
+    public double addDouble() {
+        doubleBalance = doubleBalance + 0.01;
+        return doubleBalance;
+    }
+
+    @Benchmark
+    public long addMoney() {
+        centsBalance = Money.add(centsBalance, 1);
+        return centsBalance;
+    }
+
+    // DEPOSIT: parse the amount, apply it and print the new balance
+
+    @Benchmark
+    public String depositDouble() {
+        doubleBalance = doubleBalance + Double.parseDouble(nextInput());
+        return String.format("%.2f", doubleBalance);
+    }
+
+    @Benchmark
+    public String depositMoney() {
+        centsBalance = Money.add(centsBalance, Money.parse(nextInput()));
+        return Money.format(centsBalance);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.dollarsbank.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.service.MonthEndProcessor;
+import com.dollarsbank.service.TransferEngine;
+
+// A whole month-end run over every savings account, in memory without a journal or ledger, so it shows
+// how the run scales with accounts and partitions rather than how fast the disk is.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MonthEndBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int customers;
+
+    @Param({ "1", "4" })
+    public int partitions;
+
+    private MonthEndProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, Customer> users = new HashMap<String, Customer>(customers * 2);
+
+        for (int i = 0; i < customers; i++) {
+            String username = "user" + i;
+            SavingsAccount account = new SavingsAccount(Money.ofDollars(1000), 0.02, 5, Money.ofDollars(5));
+            users.put(username, new Customer(username, "Passw0rd!", "First", "Last", "1 Main St", "5555555555", username + "@bank.com", account));
+        }
+
+        processor = new MonthEndProcessor(new TransferEngine(users), partitions);
+    }
+
+    @Benchmark
+    public MonthEndProcessor.Summary run() throws InterruptedException {
+        return processor.run();
+    }
+
+}
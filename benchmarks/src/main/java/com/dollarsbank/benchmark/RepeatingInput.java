@@ -0,0 +1,33 @@
+package com.dollarsbank.benchmark;
+
+import java.nio.CharBuffer;
+import java.util.Scanner;
+
+// Endless console input for benchmarking the Scanner driven code: the same text, over and over
+final class RepeatingInput implements Readable {
+
+    private final String text;
+    private int position;
+
+    private RepeatingInput(String text) {
+        this.text = text;
+    }
+
+    static Scanner scanner(String text) {
+        return new Scanner(new RepeatingInput(text));
+    }
+
+    @Override
+    public int read(CharBuffer cb) {
+        int start = cb.position();
+
+        while (cb.hasRemaining()) {
+            int n = Math.min(cb.remaining(), text.length() - position);
+            cb.put(text, position, position + n);
+            position = (position + n) % text.length();
+        }
+
+        return cb.position() - start;
+    }
+
+}
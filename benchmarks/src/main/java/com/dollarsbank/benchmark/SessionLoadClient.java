@@ -0,0 +1,102 @@
+package com.dollarsbank.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Opens many idle sessions against a running DollarsBankServer and checks every one still responds.
+//
+// Usage: SessionLoadClient [host] [port] [sessions] [idleSeconds]
+// Each session waits for the guest menu, stays idle, then sends an invalid choice and waits for the
+// menu again. Needs an open file limit above the session count on both ends (ulimit -n).
+public class SessionLoadClient {
+
+    // Printed at the end of every menu, when the server is waiting for input
+    private static final byte[] PROMPT = "Enter a choice".getBytes(StandardCharsets.UTF_8);
+
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8023;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int idleSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        List<Socket> sessions = new ArrayList<Socket>(count);
+        List<InputStream> inputs = new ArrayList<InputStream>(count);
+
+        // CONNECT
+        long begin = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            sessions.add(socket);
+            inputs.add(new BufferedInputStream(socket.getInputStream(), 512));
+        }
+
+        for (InputStream in : inputs) {
+            awaitPrompt(in);
+        }
+
+        long connectNanos = System.nanoTime() - begin;
+        System.out.printf("%d sessions connected and at the menu in %d ms%n", count, connectNanos / 1000000);
+
+        // IDLE
+        Thread.sleep(idleSeconds * 1000L);
+
+        // ROUND TRIP: every session must still answer
+        byte[] invalidChoice = "9\n".getBytes(StandardCharsets.UTF_8);
+        long[] latencies = new long[count];
+
+        begin = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            Socket socket = sessions.get(i);
+            long start = System.nanoTime();
+
+            OutputStream out = socket.getOutputStream();
+            out.write(invalidChoice);
+            out.flush();
+            awaitPrompt(inputs.get(i));
+
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        long roundTripNanos = System.nanoTime() - begin;
+        Arrays.sort(latencies);
+
+        System.out.printf("%d round trips after %d s idle in %d ms (%.0f/sec)%n", count, idleSeconds, roundTripNanos / 1000000, count / (roundTripNanos / 1e9));
+        System.out.printf("latency p50 %d us, p99 %d us, max %d us%n",
+            latencies[count / 2] / 1000, latencies[(int) (count * 0.99)] / 1000, latencies[count - 1] / 1000);
+
+        for (Socket socket : sessions) {
+            socket.close();
+        }
+    }
+
+    // Read until the menu prompt has been received
+    private static void awaitPrompt(InputStream in) throws IOException {
+        int matched = 0;
+
+        while (matched < PROMPT.length) {
+            int b = in.read();
+
+            if (b < 0) {
+                throw new IOException("Session closed by server");
+            }
+
+            matched = b == PROMPT[matched] ? matched + 1 : (b == PROMPT[0] ? 1 : 0);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.dollarsbank.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dollarsbank.metrics.LatencyHistogram;
+import com.dollarsbank.security.CredentialVerifier;
+import com.dollarsbank.security.PasswordHasher;
+import com.dollarsbank.security.SignInThrottle;
+
+// A password-guessing burst from one address against the same bank as customers signing in normally, first with
+// sign-in throttling off and then on. Each run prints the CPU the process used, how many guesses were hashed, and
+// how long the real customers waited to be signed in.
+//
+// Usage: SignInLoadTest [seconds] [guessesPerSecond] [iterations]
+public class SignInLoadTest {
+
+    private static final String PASSWORD = "Passw0rd!";
+
+    private static final int CUSTOMERS = 64;
+    private static final int ATTACKERS = 4;
+
+    // Customers signing in, one every this many milliseconds
+    private static final long CUSTOMER_PERIOD_MILLIS = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int guesses = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : PasswordHasher.ITERATIONS;
+
+        String[] stored = new String[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            stored[i] = PasswordHasher.hash(PASSWORD, iterations);
+        }
+
+        System.out.printf("%d s, %d guesses/sec from %d threads, %d iterations, %d cores%n%n", seconds, guesses, ATTACKERS, iterations,
+            Runtime.getRuntime().availableProcessors());
+        System.out.println("throttle   cpu %   guesses hashed   sign-ins   busy   p50 ms   p99 ms");
+
+        run(false, seconds, guesses, stored);
+        run(true, seconds, guesses, stored);
+    }
+
+    private static void run(boolean throttled, int seconds, int guesses, String[] stored) throws InterruptedException {
+        // Caching off, so every sign-in here pays for its hash as a first sign-in would
+        CredentialVerifier verifier = new CredentialVerifier(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 256, 0);
+        SignInThrottle throttle = new SignInThrottle(throttled, 5, 10000, 20, 1000);
+
+        LatencyHistogram latency = new LatencyHistogram("sign in");
+        LongAdder hashed = new LongAdder();
+        AtomicInteger busy = new AtomicInteger();
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(ATTACKERS + 1);
+        long cpuBefore = processCpuNanos();
+        long begin = System.nanoTime();
+
+        // Guesses arrive at a steady rate whatever happens to them, as they would over the network
+        for (int a = 0; a < ATTACKERS; a++) {
+            int first = a;
+
+            new Thread(() -> {
+                long periodNanos = TimeUnit.SECONDS.toNanos(1) * ATTACKERS / guesses;
+                long next = System.nanoTime();
+
+                for (int i = first; System.nanoTime() < end; i += ATTACKERS) {
+                    if (throttle.tryAcquire("user" + i % CUSTOMERS, "10.0.0.66") == 0) {
+                        verifier.verify("Guess" + i + "!", stored[i % CUSTOMERS]);
+                        hashed.increment();
+                    }
+
+                    next += periodNanos;
+                    sleepUntil(next);
+                }
+
+                done.countDown();
+            }, "attacker-" + a).start();
+        }
+
+        new Thread(() -> {
+            long next = System.nanoTime();
+
+            for (int i = 0; System.nanoTime() < end; i++) {
+                long start = System.nanoTime();
+
+                if (throttle.tryAcquire("user" + i % CUSTOMERS, "10.0.1." + i % CUSTOMERS) == 0) {
+                    if (verifier.verify(PASSWORD, stored[i % CUSTOMERS]) == CredentialVerifier.Result.BUSY) {
+                        busy.incrementAndGet();
+                    } else {
+                        latency.recordSince(start);
+                    }
+                }
+
+                next += TimeUnit.MILLISECONDS.toNanos(CUSTOMER_PERIOD_MILLIS);
+                sleepUntil(next);
+            }
+
+            done.countDown();
+        }, "customers").start();
+
+        done.await();
+
+        double cpu = 100.0 * (processCpuNanos() - cpuBefore) / (System.nanoTime() - begin) / Runtime.getRuntime().availableProcessors();
+        LatencyHistogram.Snapshot s = latency.snapshot();
+
+        System.out.printf("%-8s %7.1f %16d %10d %6d %8.1f %8.1f%n", throttled ? "on" : "off", cpu, hashed.sum(), s.getCount(), busy.get(),
+            s.getPercentile(50) / 1e6, s.getPercentile(99) / 1e6);
+
+        verifier.shutdown();
+    }
+
+    private static void sleepUntil(long deadline) {
+        long wait = deadline - System.nanoTime();
+
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.dollarsbank.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.TransactionType;
+import com.dollarsbank.utility.DataGeneratorStubUtil;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Full snapshot export and import of the customer map, as done on exit and at start-up.
+// Each call is timed on its own since a single export of a million customers takes seconds.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-Ddollarsbank.data=" + StorageBenchmark.DATADIR })
+public class StorageBenchmark {
+
+    // Kept apart from the application's own data
+    static final String DATADIR = "target/jmh-data/storage";
+
+    @Param({ "1000", "100000", "1000000" })
+    public int customers;
+
+    private Map<String, Customer> users;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        deleteRecursively(new File(FileStorageUtility.DATADIR));
+        new File(FileStorageUtility.DATADIR).mkdirs();
+
+        users = new HashMap<String, Customer>(customers * 2);
+
+        for (int i = 0; i < customers; i++) {
+            String username = "user" + i;
+            Customer customer = new Customer(username, "Passw0rd!", "First", "Last", "1 Main St", "5555555555", username + "@bank.com", new Account(100000));
+
+            // A full set of recent transactions, as an active customer would have
+            for (int t = 0; t < Customer.RECENT_TRANSACTIONS; t++) {
+                DataGeneratorStubUtil.postTransaction(customer, DataGeneratorStubUtil.transactionStub(TransactionType.DEPOSIT, 2500, customer.getAccount()));
+            }
+
+            users.put(username, customer);
+        }
+
+        // Something to import from the first iteration on
+        FileStorageUtility.exportData(users);
+    }
+
+    @Benchmark
+    public Map<String, Customer> exportData() {
+        FileStorageUtility.exportData(users);
+        return users;
+    }
+
+    @Benchmark
+    public Map<String, Customer> importData() {
+        return FileStorageUtility.importData();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        file.delete();
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.dollarsbank.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
+import com.dollarsbank.utility.DataGeneratorStubUtil;
+
+// Creating transaction records and posting them to a customer's recent transactions,
+// plus rendering one for display, which only happens when it is shown
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    private Customer customer;
+    private Customer other;
+    private Transaction transfer;
+
+    @Setup
+    public void setup() {
+        customer = new Customer("jdoe", "Passw0rd!", "John", "Doe", "1 Main St", "5555555555", "jdoe@bank.com", new Account(100000));
+        other = new Customer("jane", "Passw0rd!", "Jane", "Doe", "2 Main St", "5555555556", "jane@bank.com", new Account(50000));
+        transfer = DataGeneratorStubUtil.transferToStub(2000, customer.getAccount(), other);
+    }
+
+    @Benchmark
+    public Transaction transactionStub() {
+        return DataGeneratorStubUtil.transactionStub(TransactionType.DEPOSIT, 2500, customer.getAccount());
+    }
+
+    @Benchmark
+    public Customer stubAndPost() {
+        DataGeneratorStubUtil.postTransaction(customer, DataGeneratorStubUtil.transactionStub(TransactionType.DEPOSIT, 2500, customer.getAccount()));
+        return customer;
+    }
+
+    @Benchmark
+    public Customer transferStubsAndPost() {
+        DataGeneratorStubUtil.postTransaction(customer, DataGeneratorStubUtil.transferToStub(2000, customer.getAccount(), other));
+        DataGeneratorStubUtil.postTransaction(other, DataGeneratorStubUtil.transferFromStub(2000, customer, other.getAccount()));
+        return customer;
+    }
+
+    @Benchmark
+    public String renderTransaction() {
+        return DataGeneratorStubUtil.renderTransaction(transfer, other);
+    }
+
+}
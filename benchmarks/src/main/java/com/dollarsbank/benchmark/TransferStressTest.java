@@ -0,0 +1,112 @@
+package com.dollarsbank.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.service.TransferEngine;
+
+// Hammers a TransferEngine with random transfers from many threads and checks no money is created or lost.
+//
+// Usage: TransferStressTest [accounts] [threads] [transfersPerThread]
+// Afterwards prints transfer throughput for 1 thread up to one per available core.
+public class TransferStressTest {
+
+    private static final long OPENING_BALANCE = Money.ofDollars(1000);
+
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int transfers = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        // CONSERVATION
+        TransferEngine engine = newEngine(accounts);
+        long expected = engine.totalBalance();
+
+        // A few hot accounts so threads contend on the same stripes, in both directions
+        long elapsed = run(engine, threads, transfers, 4);
+        long actual = engine.totalBalance();
+
+        System.out.printf("%d threads x %d transfers over %d accounts in %d ms%n", threads, transfers, accounts, elapsed / 1000000);
+        System.out.printf("Total before: $%s, after: $%s%n", Money.format(expected), Money.format(actual));
+
+        for (Customer customer : engine.getCustomers().values()) {
+            if (customer.getAccount().getBalance() < 0) {
+                throw new AssertionError("Negative balance in " + customer.getAccount().getAccountId());
+            }
+        }
+
+        if (actual != expected) {
+            throw new AssertionError("Total balance changed by " + (actual - expected) + " cents");
+        }
+
+        // SCALING
+        System.out.println();
+        System.out.println("threads   transfers/sec");
+
+        for (int n = 1; n <= Runtime.getRuntime().availableProcessors(); n *= 2) {
+            TransferEngine scaling = newEngine(accounts);
+            long nanos = run(scaling, n, transfers, 0);
+
+            System.out.printf("%7d   %13.0f%n", n, (double) n * transfers / nanos * 1e9);
+        }
+    }
+
+    private static TransferEngine newEngine(int accounts) {
+        Map<String, Customer> customers = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < accounts; i++) {
+            String username = "user" + i;
+            customers.put(username, new Customer(username, "Password1!", "First", "Last", "Address", "5555555555", username + "@bank.com", new Account(OPENING_BALANCE)));
+        }
+
+        return new TransferEngine(customers);
+    }
+
+    // Run the transfers on the given number of threads, returns the elapsed time in nanoseconds
+    private static long run(TransferEngine engine, int threads, int transfers, int hotAccounts) throws InterruptedException {
+        Customer[] customers = engine.getCustomers().values().toArray(new Customer[0]);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                try {
+                    start.await();
+
+                    for (int i = 0; i < transfers; i++) {
+                        int range = hotAccounts > 0 && random.nextBoolean() ? hotAccounts : customers.length;
+                        Customer from = customers[random.nextInt(range)];
+                        Customer to = customers[random.nextInt(range)];
+
+                        if (from == to) {
+                            continue;
+                        }
+
+                        // Insufficient funds is a normal outcome here, the transfer is simply refused
+                        engine.transfer(from, to, random.nextLong(1, Money.ofDollars(50)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "transfer-" + t);
+
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+
+        return System.nanoTime() - begin;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.dollarsbank.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.InputValidator;
+import com.dollarsbank.utility.StringUtil;
+import com.dollarsbank.utility.ValidationUtility;
+
+// Input validation as the console does it: prompt, read a token from the Scanner and check it against
+// the StringUtil format. The raw checks compare the regex, compiled per call or once, with InputValidator.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({ "NAME", "USERNAME", "PASSWORD", "EMAIL", "NUMBER", "MONETARY" })
+    public StringUtil type;
+
+    private String input;
+
+    private Scanner strInput;
+    private Scanner intInput;
+    private Scanner confirmInput;
+
+    @Setup
+    public void setup() {
+        switch (type) {
+            case NAME:
+                input = "Johnathan";
+                break;
+            case USERNAME:
+                input = "jdoe1984";
+                break;
+            case PASSWORD:
+                input = "Passw0rd!";
+                break;
+            case EMAIL:
+                input = "johndoe@bank.com";
+                break;
+            case NUMBER:
+                input = "5555555555";
+                break;
+            default:
+                input = "1234.56";
+                break;
+        }
+
+        strInput = RepeatingInput.scanner(input + "\n");
+        intInput = RepeatingInput.scanner("2\n");
+        confirmInput = RepeatingInput.scanner("yes\n");
+
+        // Prompts go nowhere, only the validation is measured
+        ConsolePrinterUtility.bindOutput(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConsolePrinterUtility.unbindOutput();
+    }
+
+    @Benchmark
+    public String getValidatedStrInput() {
+        return ValidationUtility.getValidatedStrInput(strInput, "Input:", type);
+    }
+
+    @Benchmark
+    public int getValidatedIntInput() {
+        return ValidationUtility.getValidatedIntInput(intInput, "Menu", 3);
+    }
+
+    @Benchmark
+    public boolean getConfirmation() {
+        return ValidationUtility.getConfirmation(confirmInput, "Confirm?");
+    }
+
+    // The pattern compiled on every call, as getValidatedStrInput used to
+    @Benchmark
+    public boolean compileAndMatch() {
+        return Pattern.compile(type.pattern).matcher(input).matches();
+    }
+
+    @Benchmark
+    public boolean precompiledMatch() {
+        return type.compiled.matcher(input).matches();
+    }
+
+    // What getValidatedStrInput does now
+    @Benchmark
+    public boolean handWritten() {
+        return InputValidator.isValid(type, input);
+    }
+
+}
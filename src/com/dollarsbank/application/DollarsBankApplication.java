@@ -1,5 +1,6 @@
 package com.dollarsbank.application;
 
+import java.util.Arrays;
 import java.util.Scanner;
 
 import com.dollarsbank.controller.DollarsBankController;
@@ -9,10 +10,40 @@ import com.dollarsbank.utility.ValidationUtility;
 public class DollarsBankApplication {
     
     public static void main(String[] args) throws Exception {
+        // Serve many users over the network instead of one at the console
+        if (args.length > 0 && args[0].equals("--server")) {
+            DollarsBankServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Apply a file of commands without prompts
+        if (args.length > 0 && args[0].equals("--batch")) {
+            DollarsBankBatch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Interest and withdrawal counts of every savings account
+        if (args.length > 0 && args[0].equals("--month-end")) {
+            DollarsBankMonthEnd.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        Scanner sc = new Scanner(System.in);
+
+        run(new DollarsBankController(), sc);
+
+        // Send the goodbye message
+        ConsolePrinterUtility.flush();
+
+        // Close the scanner
+        sc.close();
+        
+    }
+
+    // Guest and customer menus of one session, until the user exits the program
+    public static void run(DollarsBankController controller, Scanner sc) {
         boolean done = false;
-        DollarsBankController controller = new DollarsBankController();
         boolean isLoggedIn;
-        Scanner sc = new Scanner(System.in);
         String instr;
         int sel;
 
@@ -26,6 +57,11 @@ public class DollarsBankApplication {
             // Get a validated input from user
             sel = ValidationUtility.getValidatedIntInput(sc, instr, controller.getNumMenuOptions());
 
+            // Idle for too long since the menu was shown; back to the guest menu
+            if (isLoggedIn && !controller.touchSession()) {
+                continue;
+            }
+
             // Customer is signed in
             if (isLoggedIn) {
                 // Customer Logic
@@ -50,13 +86,23 @@ public class DollarsBankApplication {
                         controller.printRecentTransactions();
                         break;
 
-                    // Display current user's information
+                    // Display the full transaction history
                     case 5:
+                        controller.printTransactionHistory(sc);
+                        break;
+
+                    // Display current user's information
+                    case 6:
                         controller.printCustomerInformation();
                         break;
 
+                    // Open a checking or savings account next to the existing ones
+                    case 7:
+                        controller.openAnotherAccount(sc);
+                        break;
+
                     // Sign customer out of the system
-                    case 6:
+                    case 8:
                         controller.signCustomerOut(sc);
                         break;
 
@@ -85,6 +131,11 @@ public class DollarsBankApplication {
                         done = controller.exitProgram(sc);
                         break;
 
+                    // Latencies and sizes, only offered with the admin menu
+                    case 4:
+                        controller.printMetrics();
+                        break;
+
                     default:
                         ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: No such option exists.");
                         break;
@@ -93,9 +144,6 @@ public class DollarsBankApplication {
 
         }
 
-        // Close the scanner
-        sc.close();
-        
     }
 
 }
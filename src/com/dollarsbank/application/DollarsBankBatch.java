@@ -0,0 +1,54 @@
+package com.dollarsbank.application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.dollarsbank.service.BankCore;
+import com.dollarsbank.service.BatchProcessor;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+
+// Runs a command file against the bank without a console, e.g. for payroll or bulk imports.
+// See BatchProcessor for the file format.
+//
+// Usage: DollarsBankApplication --batch <commandFile> [rejectedLinesFile]
+public class DollarsBankBatch {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Usage: --batch <commandFile> [rejectedLinesFile]");
+            ConsolePrinterUtility.flush();
+            return;
+        }
+
+        BankCore bank = new BankCore();
+
+        // Every line is journaled; checkpoint on the interval and at the end rather than every few thousand lines
+        bank.getCheckpoints().setDirtyThreshold(Integer.MAX_VALUE);
+        PrintStream rejects = args.length > 1 ? new PrintStream(args[1], StandardCharsets.UTF_8) : ConsolePrinterUtility.out();
+
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            BatchProcessor.Summary summary = new BatchProcessor(bank.getEngine(), rejects).run(in);
+
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, summary.toString());
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to read " + args[0] + ".");
+
+        } finally {
+            // Everything applied so far is journaled; save it and release the files
+            bank.shutdown();
+
+            if (rejects != ConsolePrinterUtility.out()) {
+                rejects.close();
+            }
+
+            ConsolePrinterUtility.flush();
+        }
+    }
+
+}
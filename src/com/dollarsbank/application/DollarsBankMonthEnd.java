@@ -0,0 +1,31 @@
+package com.dollarsbank.application;
+
+import com.dollarsbank.service.BankCore;
+import com.dollarsbank.service.MonthEndProcessor;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+
+// Runs the month-end job: interest on every savings account and a fresh withdrawal count.
+// See MonthEndProcessor; -Ddollarsbank.monthend.partitions sets how many run in parallel.
+//
+// Usage: DollarsBankApplication --month-end
+public class DollarsBankMonthEnd {
+
+    public static void main(String[] args) throws InterruptedException {
+        BankCore bank = new BankCore();
+
+        // Every account is journaled; checkpoint on the interval and at the end rather than every few thousand accounts
+        bank.getCheckpoints().setDirtyThreshold(Integer.MAX_VALUE);
+
+        try {
+            MonthEndProcessor.Summary summary = new MonthEndProcessor(bank.getEngine()).run();
+
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, summary.toString());
+
+        } finally {
+            // Everything applied so far is journaled; save it and release the files
+            bank.shutdown();
+            ConsolePrinterUtility.flush();
+        }
+    }
+
+}
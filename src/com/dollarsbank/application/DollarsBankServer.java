@@ -0,0 +1,233 @@
+package com.dollarsbank.application;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dollarsbank.controller.DollarsBankController;
+import com.dollarsbank.metrics.Metrics;
+import com.dollarsbank.service.BankCore;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+
+// Serves the console menus to many users at once over TCP, e.g. with telnet or nc.
+//
+// Every connection is a session with its own controller and thread, sharing one BankCore. Sessions
+// run on virtual threads when the JVM has them, so idle sessions cost little more than their buffers;
+// older JVMs fall back to platform threads with small stacks.
+//
+// Usage: DollarsBankApplication --server [port]
+public class DollarsBankServer {
+
+    private static final int DEFAULT_PORT = Integer.getInteger("dollarsbank.server.port", 8023);
+
+    // Socket buffer of each session, menus and prompts are small
+    private static final int SESSION_BUFFER = 1024;
+
+    // Stack of a platform session thread, only used without virtual threads
+    private static final long SESSION_STACK_SIZE = 256 * 1024;
+
+    // How often the number of open sessions is reported
+    private static final long REPORT_MILLIS = 10000;
+
+    private final BankCore bank;
+    private final ServerSocket serverSocket;
+    private final ThreadFactory sessionThreads = sessionThreadFactory();
+
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    public DollarsBankServer(BankCore bank, int port) throws IOException {
+        this.bank = bank;
+        this.serverSocket = new ServerSocket(port, 4096);
+
+        Metrics.gauge("sessions", sessions::get);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        BankCore bank = new BankCore();
+
+        // Save everything when the server is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(bank::shutdown, "shutdown"));
+
+        new DollarsBankServer(bank, port).serve();
+    }
+
+    public int getSessionCount() {
+        return sessions.get();
+    }
+
+    // Accept connections until the server socket is closed
+    public void serve() {
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "DollarsBank server listening on port " + serverSocket.getLocalPort());
+        ConsolePrinterUtility.flush();
+        startReporter();
+
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                sessionThreads.newThread(() -> runSession(socket)).start();
+
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to accept connection.");
+                    ConsolePrinterUtility.flush();
+                }
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // One user's menus, with everything this thread prints going back over the connection
+    private void runSession(Socket socket) {
+        sessions.incrementAndGet();
+        DollarsBankController controller = null;
+        SessionInput in = null;
+
+        try (Socket s = socket) {
+            // Clients are terminals, e.g. telnet or nc, whatever the server's own console is
+            PrintStream out = ConsolePrinterUtility.openOutput(s.getOutputStream(), SESSION_BUFFER, StandardCharsets.UTF_8, true);
+            in = new SessionInput(s.getInputStream());
+            Scanner sc = new Scanner(in, StandardCharsets.UTF_8);
+
+            ConsolePrinterUtility.bindOutput(out);
+            controller = new DollarsBankController(bank, s.getInetAddress().getHostAddress());
+            DollarsBankApplication.run(controller, sc);
+            out.flush();
+
+        } catch (NoSuchElementException | IllegalStateException e) {
+            // The scanner ran out of input or was closed: the client disconnected mid-session. Nothing to clean
+            // up, every completed operation is already journaled. Thrown by anything else, the session failed.
+            if (in == null || !in.isEnded()) {
+                e.printStackTrace();
+                ConsolePrinterUtility.unbindOutput();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Session ended by an unexpected error.");
+                ConsolePrinterUtility.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // Signed out with the connection, not when the session would expire
+            if (controller != null) {
+                controller.endSession();
+            }
+
+            ConsolePrinterUtility.unbindOutput();
+            sessions.decrementAndGet();
+        }
+    }
+
+    // Periodically print the number of open sessions and heap in use, when it changes
+    private void startReporter() {
+        Thread reporter = new Thread(() -> {
+            int last = -1;
+
+            while (!serverSocket.isClosed()) {
+                try {
+                    Thread.sleep(REPORT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                int open = sessions.get();
+                if (open != last) {
+                    Runtime runtime = Runtime.getRuntime();
+                    long usedMb = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, open + " sessions open, " + usedMb + " MB heap used");
+                    ConsolePrinterUtility.flush();
+                    last = open;
+                }
+            }
+        }, "session-reporter");
+
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    // Input of a session, noting when the client is gone: the end of the stream, a failed read or the scanner
+    // closing it. Scanner reports all of these the same way as any other missing input.
+    private static class SessionInput extends FilterInputStream {
+
+        private volatile boolean ended;
+
+        SessionInput(InputStream in) {
+            super(in);
+        }
+
+        boolean isEnded() {
+            return this.ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                ended |= b < 0;
+                return b;
+            } catch (IOException e) {
+                ended = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int n = super.read(b, off, len);
+                ended |= n < 0;
+                return n;
+            } catch (IOException e) {
+                ended = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            ended = true;
+            super.close();
+        }
+    }
+
+    // Virtual threads when available (Java 21+), looked up reflectively so the code still builds on 17
+    private static ThreadFactory sessionThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "session-", 0L);
+            Method factory = builderType.getMethod("factory");
+
+            return (ThreadFactory) factory.invoke(builder);
+
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger next = new AtomicInteger();
+
+            return task -> {
+                Thread thread = new Thread(null, task, "session-" + next.getAndIncrement(), SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+}
@@ -1,39 +1,98 @@
 package com.dollarsbank.controller;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
+import com.dollarsbank.metrics.Metrics;
 import com.dollarsbank.model.Account;
 import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.persistence.AccountLedger;
+import com.dollarsbank.security.CredentialVerifier;
+import com.dollarsbank.security.PasswordHasher;
+import com.dollarsbank.security.SessionManager;
+import com.dollarsbank.security.SignInThrottle;
+import com.dollarsbank.service.BankCore;
+import com.dollarsbank.service.CustomerDirectory;
+import com.dollarsbank.service.CustomerIndex;
+import com.dollarsbank.service.TransferEngine;
 import com.dollarsbank.utility.ColorsUtility;
 import com.dollarsbank.utility.ConsolePrinterUtility;
 import com.dollarsbank.utility.DataGeneratorStubUtil;
-import com.dollarsbank.utility.FileStorageUtility;
+import com.dollarsbank.utility.InputValidator;
 import com.dollarsbank.utility.StringUtil;
 import com.dollarsbank.utility.ValidationUtility;
 
 public class DollarsBankController {
 
-    private static final int GUEST_MENU_NUM = 3;
-    private static final int CUSTOMER_MENU_NUM = 6;
+    // The admin menu adds the metrics option
+    private static final int GUEST_MENU_NUM = ConsolePrinterUtility.ADMIN_MENU ? 4 : 3;
+    private static final int CUSTOMER_MENU_NUM = 8;
+
+    // Number of transactions shown per page of the full history
+    private static final int HISTORY_PAGE_SIZE = 10;
+
+    // Number of accounts shown per page of the transfer screen's directory
+    private static final int DIRECTORY_PAGE_SIZE = 10;
     
-    // Collection of customers
-    // Will import saved user data, or start with an empty map if no data exists
-    private Map<String, Customer> customers = FileStorageUtility.importData();
+    // Shared with every other session of the same bank
+    private final BankCore bank;
+
+    private final Map<String, Customer> customers;
+    private final AccountLedger ledger;
+    private final TransferEngine engine;
+    private final CustomerIndex index;
+    private final CredentialVerifier credentials;
+    private final SessionManager sessions;
+    private final SignInThrottle throttle;
+
+    // Where the user is, for throttling sign-ins: the client's address, or the console
+    private final String source;
+
+    // Whether this controller created the bank, and so saves and closes it on exit
+    private final boolean ownsBank;
 
     // Current logged in user
     private Customer currUser;
+    private SessionManager.Session session;
 
     private int numMenuOptions;
 
     public DollarsBankController() {
-        this.currUser = null;
-        this.numMenuOptions = GUEST_MENU_NUM;
+        this(new BankCore(), true, "console");
     }
 
     public DollarsBankController(Customer user) {
-        this.currUser = user;
-        this.numMenuOptions = CUSTOMER_MENU_NUM;
+        this();
+        setCurrUser(user);
+    }
+
+    // Session of a bank shared with other sessions, e.g. one connection to the server
+    public DollarsBankController(BankCore bank) {
+        this(bank, false, "local");
+    }
+
+    public DollarsBankController(BankCore bank, String source) {
+        this(bank, false, source);
+    }
+
+    private DollarsBankController(BankCore bank, boolean ownsBank, String source) {
+        this.bank = bank;
+        this.customers = bank.getCustomers();
+        this.ledger = bank.getLedger();
+        this.engine = bank.getEngine();
+        this.index = engine.getIndex();
+        this.credentials = bank.getCredentials();
+        this.sessions = bank.getSessions();
+        this.throttle = bank.getThrottle();
+        this.source = source;
+        this.ownsBank = ownsBank;
+        this.currUser = null;
+        this.numMenuOptions = GUEST_MENU_NUM;
     }
 
     // Check what user is logged in
@@ -42,7 +101,10 @@ public class DollarsBankController {
     }
 
     // Control whether a user is logged in or not
+    // Signing a customer in opens a session for them, and signing out closes it
     public void setCurrUser(Customer currUser) {
+        sessions.close(session);
+        this.session = currUser != null ? sessions.open(currUser, source) : null;
         this.currUser = currUser;
         
         if (currUser != null) {
@@ -53,6 +115,23 @@ public class DollarsBankController {
 
     }
 
+    // Record activity of the signed-in customer; if they were idle too long they are signed out instead
+    public boolean touchSession() {
+        if (session == null || session.touch()) {
+            return true;
+        }
+
+        setCurrUser(null);
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Signed out after being idle. Please sign in again.");
+        return false;
+    }
+
+    // The user left, e.g. their connection closed
+    public void endSession() {
+        sessions.close(session);
+        this.session = null;
+    }
+
     public int getNumMenuOptions() {
         return this.numMenuOptions;
     }
@@ -69,7 +148,7 @@ public class DollarsBankController {
 
         // Variables needed to create a new account
         String fName, lName, address, email, number, username, password;
-        double initialDeposit;
+        long initialDeposit;
 
         // Print overall instructions
         ConsolePrinterUtility.printNewAcctHeader();
@@ -84,7 +163,16 @@ public class DollarsBankController {
         address = ValidationUtility.getValidatedStrInput(sc, "Customer Address:", StringUtil.ANY);
 
         // User's email address
-        email = ValidationUtility.getValidatedStrInput(sc, "Customer Email:", StringUtil.EMAIL);
+        do {
+            email = ValidationUtility.getValidatedStrInput(sc, "Customer Email:", StringUtil.EMAIL);
+
+            // Check if the email already belongs to another customer
+            isAvailable = !index.isEmailTaken(email);
+
+            if (!isAvailable) {
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Email is already registered. Try another.");
+            }
+        } while (!isAvailable);
         
         // User's phone number
         number = ValidationUtility.getValidatedStrInput(sc, "Customer Contact Number (10-digits):", StringUtil.NUMBER);
@@ -107,16 +195,29 @@ public class DollarsBankController {
         password = ValidationUtility.getValidatedStrInput(sc, "Password (Min: 8 characters; Must include: lower, upper & special):", StringUtil.PASSWORD);
 
         // Initial deposit amount
-        initialDeposit = Double.parseDouble(ValidationUtility.getValidatedStrInput(sc, "Initial Deposity Amount:", StringUtil.MONETARY));
+        initialDeposit = Money.parse(ValidationUtility.getValidatedStrInput(sc, "Initial Deposity Amount:", StringUtil.MONETARY));
+
+        // Only the hash of the password is kept
+        String hash = credentials.hash(password);
+
+        if (hash == null) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: The bank is busy. Account was not created, try again later.");
+            return;
+        }
 
         // Create a new account for the customer
-        Customer customer = new Customer(username, password, fName, lName, address, number, email, new Account(initialDeposit));
-        
-        // Post customer's inital deposit
-        DataGeneratorStubUtil.postTransaction(customer, DataGeneratorStubUtil.transactionStub("Initial Deposit Amount", initialDeposit, customer.getAccount()));
+        Customer customer = new Customer(username, hash, fName, lName, address, number, email, new Account(initialDeposit));
 
-        // Store customer account in memory
-        customers.put(customer.getUsername(), customer);
+        // Store customer account; another session may have taken the username or email since they were checked
+        try {
+            if (!engine.openAccount(customer, initialDeposit)) {
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Username or email is unavailable. Account was not created.");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_VALIDATION, "Details too long. Account was not created.");
+            return;
+        }
 
         // Notify user of successful creation
         ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "Account has been successfully created.");
@@ -163,10 +264,41 @@ public class DollarsBankController {
                 ConsolePrinterUtility.askForInput("Password:");
                 password = sc.nextLine();
 
+                // Too many attempts for the username or from here; refused before any hashing
+                long wait = throttle.tryAcquire(username, source);
+
+                if (wait > 0) {
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Too many sign-in attempts. Try again in " + (wait + 999) / 1000 + " seconds.");
+                    break;
+                }
+
+                // Only the check is timed, not the typing
+                long begin = System.nanoTime();
+
+                Customer customer = customers.get(username);
+                String stored = customer.getPassword();
+                CredentialVerifier.Result result = credentials.verify(password, stored);
+
+                Metrics.SIGN_IN.recordSince(begin);
+
                 // If password entered correctly
-                if (password.equals(customers.get(username).getPassword())) {
+                if (result == CredentialVerifier.Result.VALID) {
                     confirm = true;
-                    setCurrUser(customers.get(username));
+                    setCurrUser(customer);
+
+                    // Plain passwords and hashes at a lower cost are replaced while the password is at hand
+                    if (PasswordHasher.needsRehash(stored)) {
+                        String hash = credentials.hash(password);
+
+                        if (hash != null) {
+                            engine.changePassword(customer, hash);
+                        }
+                    }
+
+                // Too many sign-ins at once, the password wasn't checked
+                } else if (result == CredentialVerifier.Result.BUSY) {
+                    confirm = false;
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: The bank is busy. Try again in a moment.");
 
                 // Password is incorrect
                 } else {
@@ -187,119 +319,173 @@ public class DollarsBankController {
                 "\nThank you for banking with Dollars Bank.\nHave a nice day!");
         }
 
-        // Save user data to data file
-        FileStorageUtility.exportData(customers);
+        // Save whatever changed since the last background checkpoint.
+        // A shared bank keeps running when one of its sessions exits.
+        if (!ownsBank) {
+            return confirm;
+        }
+
+        if (confirm) {
+            bank.shutdown();
+        } else {
+            bank.checkpointNow();
+        }
 
         // Return choice
         return confirm;
     }
 
+    // Latencies, persistence counters and sizes of the bank, see Metrics
+    public void printMetrics() {
+        ConsolePrinterUtility.printMetricsHeader();
+        ConsolePrinterUtility.out().print(Metrics.report());
+    }
+
     // CUSTOMER LOGIC
 
     // Deposit money into user's account
     public void makeDeposit(Scanner sc) {
-        // Prompt user for deposit amount
-        double deposit = Double.parseDouble(ValidationUtility.getValidatedStrInput(sc, "Deposit Amount:", StringUtil.MONETARY));
+        // Only asks when the user has more than one account
+        Account account = selectAccount(sc, currUser, "Deposit into which account?", null);
 
-        // Make the deposit (increase the accounts balance)
-        Account customerAcct = currUser.getAccount();
-        customerAcct.setBalance(customerAcct.getBalance() + deposit);
-
-        // Post the transaction to the user's account
-        String transaction = DataGeneratorStubUtil.transactionStub("Deposit", deposit, customerAcct);
-        DataGeneratorStubUtil.postTransaction(currUser, transaction);
+        // Prompt user for deposit amount
+        long deposit = Money.parse(ValidationUtility.getValidatedStrInput(sc, "Deposit Amount:", StringUtil.MONETARY));
+
+        // Make the deposit (increase the accounts balance) and post the transaction
+        Transaction transaction;
+        try {
+            transaction = engine.deposit(currUser, account, deposit);
+        } catch (ArithmeticException e) {
+            printAmountTooLarge();
+            return;
+        }
 
-        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "\n" + transaction);
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "\n" + DataGeneratorStubUtil.renderTransaction(transaction, null));
 
     }
 
     // Withdraw money from user's account
     public void makeWithdrawal(Scanner sc) {
-        double withdrawal = Double.parseDouble(ValidationUtility.getValidatedStrInput(sc, "Withdrawal Amount:", StringUtil.MONETARY));;
+        Account account = selectAccount(sc, currUser, "Withdraw from which account?", null);
+
+        long withdrawal = Money.parse(ValidationUtility.getValidatedStrInput(sc, "Withdrawal Amount:", StringUtil.MONETARY));
 
         // If withdrawal amount is greater than the available balance
-        if (ValidationUtility.checkForSsufficientFunds(currUser.getAccount(), withdrawal)) {
-            Account customerAcct = currUser.getAccount();
-            customerAcct.setBalance(customerAcct.getBalance() - withdrawal);
+        if (ValidationUtility.checkForSsufficientFunds(account, withdrawal)) {
+            // Funds are checked again atomically, another session may have spent them
+            Transaction transaction = engine.withdraw(currUser, account, withdrawal);
 
-            String transaction = DataGeneratorStubUtil.transactionStub("Withdrawal", withdrawal, customerAcct);
-            DataGeneratorStubUtil.postTransaction(currUser, transaction);
+            if (transaction == null) {
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Insufficient Funds!");
+                return;
+            }
 
-            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "\n" + transaction);
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "\n" + DataGeneratorStubUtil.renderTransaction(transaction, null));
         }
         
     }
 
-    // Transfer funds to another account
+    // Transfer funds to another account, the user's own or someone else's
     public void transferFunds(Scanner sc) {
         boolean valid = false, confirmation;
         String transferee = "";
         Customer destination = null;
-        double transferAmt = 0;
+        Account source = null, target = null;
+        long transferAmt = 0;
+        CustomerDirectory.Page page;
 
         // Only applicable if there is more than one account in the system
-        if (customers.size() > 1) {
+        if (customers.size() > 1 || currUser.getAccounts().size() > 1) {
+
+            source = selectAccount(sc, currUser, "Transfer from which account?", null);
+
+            // Start with the first page of everyone
+            page = index.getDirectory().search("", DIRECTORY_PAGE_SIZE);
 
             // Ask for which account funds should be transferred to
             while (!valid) {
-                // Display the accounts in a table format
-                getAccounts(currUser);
+                // Display the page of accounts in a table format
+                getAccounts(page);
 
-                ConsolePrinterUtility.askForInput("\nEnter the username of the person you would like to transfer funds to:");
+                ConsolePrinterUtility.askForInput("\nEnter the username or account id of the person you would like to transfer funds to,"
+                    + "\nthe start of a username or name to search, or nothing to see more:");
                 transferee = sc.nextLine();
 
+                // Next page of the current search, or back to the first one
+                if (transferee.isEmpty()) {
+                    page = page.hasMore() ? index.getDirectory().next(page) : index.getDirectory().search("", DIRECTORY_PAGE_SIZE);
+                    continue;
+                }
+
+                // Look up by username, then by account id; an id like U000123 is also a valid username
+                destination = customers.get(transferee);
+                target = null;
+                if (destination == null && InputValidator.isAccountId(transferee)) {
+                    destination = index.getByAccountId(transferee);
+                    target = index.getAccount(transferee);
+                }
+
                 // If the specified user is found
-                if (customers.containsKey(transferee)) {
+                if (destination != null) {
                     valid = true;
-                    destination = customers.get(transferee);
 
-                    // If the selected destination is the user's own account
-                    if (destination == currUser) {
+                    // If the only account left to choose is the one the funds come from
+                    if (target == source || (destination == currUser && currUser.getAccounts().size() == 1)) {
                         valid = false;
                         ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Cannot transfer money to yourself!");
                     }
 
-                // User not found
+                // Not an exact match, search for it instead
                 } else {
-                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: No such user exists.");
+                    CustomerDirectory.Page results = index.getDirectory().search(transferee, DIRECTORY_PAGE_SIZE);
+
+                    if (results.getCustomers().isEmpty()) {
+                        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: No such user exists.");
+                    } else {
+                        page = results;
+                    }
                 }
 
             }
 
+            // A username was given, pick one of that customer's accounts
+            if (target == null) {
+                target = selectAccount(sc, destination, "Transfer to which account?", source);
+            }
+
             // Prompt for amount to be transferred
             do {
-                transferAmt = Double.parseDouble(ValidationUtility.getValidatedStrInput(sc, "Enter the amount you would like to transfer:", StringUtil.MONETARY));
+                transferAmt = Money.parse(ValidationUtility.getValidatedStrInput(sc, "Enter the amount you would like to transfer:", StringUtil.MONETARY));
 
                 // Check if user has enough funds to make the transfer
-                valid = ValidationUtility.checkForSsufficientFunds(currUser.getAccount(), transferAmt);
+                valid = ValidationUtility.checkForSsufficientFunds(source, transferAmt);
             } while (!valid);
 
             // Confirm that user wants to go through with transfer
             confirmation = ValidationUtility.getConfirmation(sc,
-                String.format("Confirm transfer of $%.2f to %s (%s) [%s]?",
-                    transferAmt, 
+                String.format("Confirm transfer of $%s to %s (%s) [%s]?",
+                    Money.format(transferAmt), 
                     destination.getFullName(), 
-                    transferee, 
-                    destination.getAccount().getAccountId())
+                    destination.getUsername(), 
+                    target.getAccountId())
             );
 
             if (confirmation) {
-                // Perform the transfer
-                // Remove the transfer amount from the user's account
-                currUser.getAccount().setBalance(currUser.getAccount().getBalance() - transferAmt);
-
-                String transferTransaction = DataGeneratorStubUtil.transferToStub(transferAmt, currUser.getAccount(), destination);
-
-                // Post transaction to user's account
-                DataGeneratorStubUtil.postTransaction(currUser, transferTransaction);
-
-                // Add the funds to the destination account
-                destination.getAccount().setBalance(destination.getAccount().getBalance() + transferAmt);
+                // Perform the transfer: debit, credit and both transactions happen atomically
+                Transaction transferTransaction;
+                try {
+                    transferTransaction = engine.transfer(currUser, source, destination, target, transferAmt);
+                } catch (ArithmeticException e) {
+                    printAmountTooLarge();
+                    return;
+                }
 
-                // Post transaction to the destination account
-                DataGeneratorStubUtil.postTransaction(destination, DataGeneratorStubUtil.transferFromStub(transferAmt, currUser, destination.getAccount()));
+                if (transferTransaction == null) {
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Insufficient Funds!");
+                    return;
+                }
 
-                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, transferTransaction);
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, DataGeneratorStubUtil.renderTransaction(transferTransaction, destination));
             }
 
         // There are no other users in the system
@@ -316,24 +502,78 @@ public class DollarsBankController {
     public void printRecentTransactions() {
         ConsolePrinterUtility.printRecentTransHeader();
 
-        for (String transaction : currUser.getTransactions()) {
-            System.out.println(transaction + "\n");
+        // Transactions are only rendered to text here, when they are actually displayed
+        for (Transaction transaction : engine.recentTransactions(currUser)) {
+            Customer counterparty = transaction.getCounterparty() != null ? customers.get(transaction.getCounterparty()) : null;
+            ConsolePrinterUtility.out().println(DataGeneratorStubUtil.renderTransaction(transaction, counterparty) + "\n");
+        }
+
+    }
+
+    // Customer's full transaction history, a page at a time starting with the most recent
+    public void printTransactionHistory(Scanner sc) {
+        String accountId = selectAccount(sc, currUser, "Show the history of which account?", null).getAccountId();
+        long end = ledger.getCount(accountId);
+
+        ConsolePrinterUtility.printTransactionHistoryHeader();
+
+        if (end == 0) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, "No transactions yet.");
+            return;
         }
 
+        do {
+            long start = Math.max(0, end - HISTORY_PAGE_SIZE);
+
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS,
+                String.format("Transactions %d - %d of %d", start + 1, end, ledger.getCount(accountId)));
+
+            for (Transaction transaction : ledger.getPage(accountId, start, (int) (end - start))) {
+                Customer counterparty = transaction.getCounterparty() != null ? customers.get(transaction.getCounterparty()) : null;
+                ConsolePrinterUtility.out().println(DataGeneratorStubUtil.renderTransaction(transaction, counterparty) + "\n");
+            }
+
+            end = start;
+        } while (end > 0 && ValidationUtility.getConfirmation(sc, "Show older transactions?"));
     }
 
     // Displays the customers information
     public void printCustomerInformation() {
-        String defaultDisplayFormat = "%s%-16s %s%s%n";
+        StringBuilder sb = new StringBuilder(512);
+
+        // Composed in one go and printed at once, rather than a printf per line
+        appendInfoLine(sb, "Name:", currUser.getFullName());
+        appendInfoLine(sb, "Username:", currUser.getUsername());
+        appendInfoLine(sb, "Address:", currUser.getAddress());
+        appendInfoLine(sb, "Email:", currUser.getEmail());
+        appendInfoLine(sb, "Contact Number:", currUser.getPhoneNumber());
+
+        for (Account account : currUser.getAccounts()) {
+            appendInfoLine(sb, "Account Id:", account.getAccountId() + " (" + accountKind(account) + ")");
+            appendInfoLine(sb, "Account Balance:", Money.format(account.getBalance()));
+        }
 
         ConsolePrinterUtility.printCustomerInfoHeader();
-        System.out.printf("%s%-16s %s%s %s%n", ConsolePrinterUtility.MSG_SYS, "Name:", ConsolePrinterUtility.RESET_TEXT, currUser.getFName(), currUser.getLName());
-        System.out.printf(defaultDisplayFormat, ConsolePrinterUtility.MSG_SYS, "Username:", ConsolePrinterUtility.RESET_TEXT, currUser.getUsername());
-        System.out.printf(defaultDisplayFormat, ConsolePrinterUtility.MSG_SYS, "Address:", ConsolePrinterUtility.RESET_TEXT, currUser.getAddress());
-        System.out.printf(defaultDisplayFormat, ConsolePrinterUtility.MSG_SYS, "Email:", ConsolePrinterUtility.RESET_TEXT, currUser.getEmail());
-        System.out.printf(defaultDisplayFormat, ConsolePrinterUtility.MSG_SYS, "Contact Number:", ConsolePrinterUtility.RESET_TEXT, currUser.getPhoneNumber());
-        System.out.printf(defaultDisplayFormat, ConsolePrinterUtility.MSG_SYS, "Account Id:", ConsolePrinterUtility.RESET_TEXT, currUser.getAccount().getAccountId());
-        System.out.printf("%s%-16s %s%.2f%n", ConsolePrinterUtility.MSG_SYS, "Account Balance:", ConsolePrinterUtility.RESET_TEXT, currUser.getAccount().getBalance());
+        ConsolePrinterUtility.out().print(sb);
+    }
+
+    // Open another account for the current user, checking or savings
+    public void openAnotherAccount(Scanner sc) {
+        int kind = ValidationUtility.getValidatedIntInput(sc, "Which kind of account would you like to open?\n1. Checking\n2. Savings", 2);
+
+        long initialDeposit = Money.parse(ValidationUtility.getValidatedStrInput(sc, "Initial Deposit Amount:", StringUtil.MONETARY));
+
+        // Savings accounts get the default terms
+        Account account = kind == 2 ? new SavingsAccount() : new Account();
+        account.setBalance(initialDeposit);
+
+        if (!engine.openAccount(currUser, account, initialDeposit)) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Account id is unavailable. Account was not opened.");
+            return;
+        }
+
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS,
+            String.format("%s account %s has been successfully opened.", accountKind(account), account.getAccountId()));
     }
 
     // Sign the current user out
@@ -344,24 +584,74 @@ public class DollarsBankController {
         // User confirms intent to sign out
         if (confirm) {
             setCurrUser(null);
-            System.out.println(ConsolePrinterUtility.MSG_SYS + "\nSigning out..." + ConsolePrinterUtility.RESET_TEXT);
+            ConsolePrinterUtility.out().println(ConsolePrinterUtility.MSG_SYS + "\nSigning out..." + ConsolePrinterUtility.RESET_TEXT);
+        }
+    }
+
+    // The amount would overflow a balance; nothing was changed
+    private static void printAmountTooLarge() {
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_VALIDATION, "Amount too large. Nothing was changed.");
+    }
+
+    // One line of customer information: the label padded to 16 characters, then the value
+    private static void appendInfoLine(StringBuilder sb, String label, String value) {
+        sb.append(ConsolePrinterUtility.MSG_SYS).append(label);
+
+        for (int i = label.length(); i < 16; i++) {
+            sb.append(' ');
+        }
+
+        sb.append(' ').append(ConsolePrinterUtility.RESET_TEXT).append(value).append(System.lineSeparator());
+    }
+
+    // One of the customer's accounts other than the excluded one; only asks if there is more than one to choose from.
+    // The user's own accounts are listed with their balances.
+    private Account selectAccount(Scanner sc, Customer customer, String instr, Account exclude) {
+        List<Account> choices = new ArrayList<>(customer.getAccounts());
+        choices.remove(exclude);
+
+        if (choices.size() == 1) {
+            return choices.get(0);
+        }
+
+        StringBuilder sb = new StringBuilder(instr);
+
+        for (int i = 0; i < choices.size(); i++) {
+            Account account = choices.get(i);
+            sb.append('\n').append(i + 1).append(". ").append(account.getAccountId()).append(' ').append(accountKind(account));
+
+            if (customer == currUser) {
+                sb.append(" $").append(Money.format(account.getBalance()));
+            }
         }
+
+        return choices.get(ValidationUtility.getValidatedIntInput(sc, sb.toString(), choices.size()) - 1);
     }
 
-    // Retrieve list of accounts
-    private void getAccounts(Customer current) {
+    private static String accountKind(Account account) {
+        return account instanceof SavingsAccount ? "Savings" : "Checking";
+    }
+
+    // Print one page of accounts
+    private void getAccounts(CustomerDirectory.Page page) {
         String format = "%s  %-15s  %s";
         String color;
+        int shown = page.getCustomers().size();
 
         // Header
         ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_HEADER, "\n" + String.format(format, "Account", "Username", "Customer"));
 
-        // Print list of accounts in the system
-        for (Customer customer : customers.values()) {
+        // Print the accounts on this page
+        for (Customer customer : page.getCustomers()) {
             // Use red for user's account, green for the other user accounts
             color = customer == currUser ? ColorsUtility.ANSI_RED.value : ConsolePrinterUtility.RESET_TEXT;
             ConsolePrinterUtility.printMessage(color, String.format(format, customer.getAccount().getAccountId(), customer.getUsername(), customer.getFullName()));
         }
+
+        if (shown > 0) {
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_SYS, String.format("Accounts %d - %d%s",
+                page.getStart() + 1, page.getStart() + shown, page.hasMore() ? ", more available" : ""));
+        }
     }
 
 
@@ -0,0 +1,181 @@
+package com.dollarsbank.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies of one operation in nanoseconds, bucketed like an HDR histogram: every value below 32 ns has its own
+// bucket, and above that each power of two is split into 32 buckets, so a percentile is off by at most 1/32 (~3%).
+// 1888 buckets cover every positive long.
+//
+// Recording is an increment in a fixed array plus an adder and a max, with no locks and nothing allocated, so it
+// can stay on in production. Percentiles are read from a snapshot, which copies the counts.
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    // RECORDING
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(nanos));
+        totalNanos.add(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    // Time since a System.nanoTime() taken when the operation began
+    public void recordSince(long beginNanos) {
+        record(System.nanoTime() - beginNanos);
+    }
+
+    // READING
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        return new Snapshot(name, copy, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot().getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return snapshot().getMeanNanos() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return snapshot().getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return snapshot().getPercentile(90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return snapshot().getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return snapshot().getPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+
+    // Helpers
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+
+        // The top SUB_BITS + 1 bits pick the bucket within the value's power of two
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((nanos >>> shift) & (SUB_COUNT - 1));
+    }
+
+    // Largest value that falls in the bucket
+    static long highestIn(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long top = (bucket & (SUB_COUNT - 1)) | SUB_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    // Counts of a histogram at one moment
+    public static class Snapshot {
+
+        private final String name;
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(String name, long[] counts, long count, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos;
+        }
+
+        // Value at or below which the given percent of the recorded values fall, to the bucket's precision
+        public long getPercentile(double percent) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= rank) {
+                    return Math.min(highestIn(i), maxNanos);
+                }
+            }
+
+            return maxNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.dollarsbank.metrics;
+
+// One operation's latencies over JMX, as com.dollarsbank:type=Latency,name=<operation>
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+}
@@ -0,0 +1,208 @@
+package com.dollarsbank.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.dollarsbank.utility.ConsolePrinterUtility;
+
+// Latency histograms of the hot operations, counters of bytes going to and from disk, and gauges of the bank's size,
+// shared by the whole process.
+//
+// Recording never allocates or locks, see LatencyHistogram; counters are LongAdders, which only allocate the first
+// time two threads collide on one. Gauges are read when a report is made.
+//
+// Everything is published over JMX under com.dollarsbank, and report() is what the admin menu, dump() and
+// -Ddollarsbank.metrics.file=<path> (written at shutdown) show.
+public class Metrics {
+
+    // Written at shutdown when set
+    public static final String DUMP_FILE = System.getProperty("dollarsbank.metrics.file");
+
+    private static final String DOMAIN = "com.dollarsbank";
+
+    private static final List<LatencyHistogram> HISTOGRAMS = new ArrayList<>();
+    private static final Map<String, LongAdder> COUNTERS = new LinkedHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    // Balance changes, timed by the engine whichever session or batch makes them
+    public static final LatencyHistogram OPEN_ACCOUNT = histogram("open account");
+    public static final LatencyHistogram DEPOSIT = histogram("deposit");
+    public static final LatencyHistogram WITHDRAWAL = histogram("withdrawal");
+    public static final LatencyHistogram TRANSFER = histogram("transfer");
+
+    // Checking a username and password
+    public static final LatencyHistogram SIGN_IN = histogram("sign in");
+
+    // A password hashed or checked on the credential pool, waiting for it included
+    public static final LatencyHistogram PASSWORD_HASH = histogram("password hash");
+
+    // Persistence
+    public static final LatencyHistogram IMPORT = histogram("import data");
+    public static final LatencyHistogram EXPORT = histogram("export data");
+    public static final LatencyHistogram CHECKPOINT = histogram("checkpoint");
+    public static final LatencyHistogram JOURNAL_SYNC = histogram("journal sync");
+
+    public static final LongAdder JOURNAL_BYTES = counter("journal bytes written");
+    public static final LongAdder CHECKPOINT_BYTES = counter("checkpoint bytes written");
+    public static final LongAdder EXPORT_BYTES = counter("snapshot bytes written");
+    public static final LongAdder IMPORT_BYTES = counter("snapshot bytes read");
+
+    public static final LongAdder CREDENTIAL_CACHE_HITS = counter("credentials from cache");
+    public static final LongAdder CREDENTIAL_REJECTED = counter("credential checks refused");
+    public static final LongAdder SIGN_INS_THROTTLED = counter("sign-ins throttled");
+    public static final LongAdder SESSIONS_EXPIRED = counter("sessions expired");
+
+    private static boolean registered = false;
+
+    private Metrics() {
+    }
+
+    // Report the value under the name from now on, replacing any gauge registered under it before
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(HISTOGRAMS);
+    }
+
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+
+        return values;
+    }
+
+    public static Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+
+        return values;
+    }
+
+    // Every histogram, counter and gauge as a table, latencies in microseconds
+    public static String report() {
+        StringBuilder sb = new StringBuilder(2048);
+
+        sb.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s%n", "Latency (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+
+            sb.append(String.format("%-16s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", s.getName(), s.getCount(), s.getMeanNanos() / 1e3,
+                s.getPercentile(50) / 1e3, s.getPercentile(90) / 1e3, s.getPercentile(99) / 1e3, s.getPercentile(99.9) / 1e3, s.getMaxNanos() / 1e3));
+        }
+
+        sb.append(System.lineSeparator());
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            sb.append(String.format("%-28s %14d%n", counter.getKey(), counter.getValue()));
+        }
+
+        sb.append(System.lineSeparator());
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            sb.append(String.format("%-28s %14d%n", gauge.getKey(), gauge.getValue()));
+        }
+
+        return sb.toString();
+    }
+
+    // Write the report to a file; returns whether it was written
+    public static boolean dump(String path) {
+        File file = new File(path);
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(report());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write metrics.");
+            return false;
+        }
+    }
+
+    // Publish everything over JMX; later calls do nothing
+    public static synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+
+        registered = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            server.registerMBean(new Bean(), new ObjectName(DOMAIN + ":type=Metrics"));
+
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=Latency,name=" + ObjectName.quote(histogram.getName())));
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to publish metrics over JMX.");
+        }
+    }
+
+    // Helpers
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    private static LongAdder counter(String name) {
+        LongAdder counter = new LongAdder();
+        COUNTERS.put(name, counter);
+        return counter;
+    }
+
+    private static class Bean implements MetricsMXBean {
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return Metrics.getCounters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return Metrics.getGauges();
+        }
+
+        @Override
+        public String getReport() {
+            return Metrics.report();
+        }
+
+        @Override
+        public boolean dump(String path) {
+            return Metrics.dump(path);
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.dollarsbank.metrics;
+
+import java.util.Map;
+
+// Counters, gauges and the full report over JMX, as com.dollarsbank:type=Metrics
+public interface MetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    String getReport();
+
+    // Write the report to a file; returns whether it was written
+    boolean dump(String path);
+
+}
@@ -1,28 +1,40 @@
 package com.dollarsbank.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
 public class Account implements Serializable {
     
-    private static final long serialVersionUID = 1L;
+    // Version 2: balance is stored in cents; version 1 data is converted through model.legacy
+    private static final long serialVersionUID = 2L;
 
-    static int accountCnt = 0;
+    // Account numbers are shared by every kind of account; the id is the number as U000123
+    private static final IdAllocator NUMBERS = new IdAllocator();
+    private static final char ID_PREFIX = 'U';
 
     private String accountId;
-    private double balance;
+    // Balance in cents, see Money
+    private long balance;
     private LocalDateTime openDate;
 
     public Account() {
-        this.accountId = String.format("U%06d", ++accountCnt);
-        this.balance = 0;
+        this(0);
+    }
+
+    public Account(long balance) {
+        this.accountId = idOf(NUMBERS.next());
+        this.balance = balance;
         this.openDate = LocalDateTime.now();
     }
 
-    public Account(double balance) {
-        this.accountId = String.format("U%06d", ++accountCnt);
+    // An account that already has an id, e.g. one being restored
+    public Account(String accountId, long balance) {
+        this.accountId = accountId;
         this.balance = balance;
         this.openDate = LocalDateTime.now();
+        NUMBERS.reserve(numberOf(accountId));
     }
 
     public String getAccountId() {
@@ -31,13 +43,19 @@ public class Account implements Serializable {
 
     public void setAccountId(String accountId) {
         this.accountId = accountId;
+        NUMBERS.reserve(numberOf(accountId));
+    }
+
+    // The digits of the id, used as the account's key in the account store
+    public int getAccountNo() {
+        return numberOf(this.accountId);
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return this.balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
@@ -49,16 +67,31 @@ public class Account implements Serializable {
         this.openDate = openDate;
     }
 
-    // Used by FileStorageUtility to properly update the account count that doesn't get incremented by object deserialization
-    public static void incrAccountCnt() {
-        accountCnt++;
+    public static IdAllocator getNumbers() {
+        return NUMBERS;
+    }
+
+    // Id of an account number, e.g. U000123
+    public static String idOf(int accountNo) {
+        return IdAllocator.format(ID_PREFIX, accountNo);
+    }
+
+    // Number of an account id like U000123, or -1 if it isn't one
+    public static int numberOf(String accountId) {
+        return IdAllocator.parse(ID_PREFIX, accountId);
+    }
+
+    // Deserialization doesn't run a constructor, so the loaded number is reserved here
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        NUMBERS.reserve(numberOf(this.accountId));
     }
 
     @Override
     public String toString() {
         return "{" +
             " accountId='" + getAccountId() + "'" +
-            ", balance='" + getBalance() + "'" +
+            ", balance='" + Money.format(getBalance()) + "'" +
             ", openDate='" + getOpenDate() + "'" +
             "}";
     }
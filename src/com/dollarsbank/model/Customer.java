@@ -1,15 +1,23 @@
 package com.dollarsbank.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.concurrent.ArrayBlockingQueue;
-
-// import java.util.List;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Customer implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    // Version 2: transactions are stored as Transaction records
+    // Version 3: recent transactions are kept in a TransactionHistory ring buffer
+    // Still version 3: accounts was added compatibly, older data gets it in readObject; so was profileChanges
+    private static final long serialVersionUID = 3L;
+
+    // Number of recent transactions kept with the customer, the rest live in the account ledger
+    public static final int RECENT_TRANSACTIONS = 5;
 
-    static int customerCnt = 0;
+    private static final IdAllocator IDS = new IdAllocator();
     
     private int customerId;
     private String username;
@@ -20,30 +28,26 @@ public class Customer implements Serializable {
     private String phoneNumber;
     private String email;
     
-    // For now, a customer can have only one account
-    // private List<Account> accounts;
+    // The account opened with the customer; transfers by username go to it
     private Account account;
+
+    // Every account of the customer, the primary one first
+    private List<Account> accounts;
+
+    // Counts changes to the customer's details and list of accounts, so storage can tell whether to write them again
+    private volatile int profileChanges;
     
-    private ArrayBlockingQueue<String> transactions;
-    
-    // private String[] transactions;
-
-    // Keep constructor for later when expanding functionality to have multiple accounts
-    // public Customer(String username, String password, String fName, String lName, String address, String phoneNumber, String email, List<Account> accounts, String[] transactions) {
-    //     this.customerId = ++customerCnt;
-    //     this.username = username;
-    //     this.password = password;
-    //     this.fName = fName;
-    //     this.lName = lName;
-    //     this.address = address;
-    //     this.phoneNumber = phoneNumber;
-    //     this.email = email;
-    //     this.accounts = accounts;
-    //     this.transactions = transactions;
-    // }
+    private TransactionHistory transactions;
 
     public Customer(String username, String password, String fName, String lName, String address, String phoneNumber, String email, Account account) {
-        this.customerId = ++customerCnt;
+        this(IDS.next(), username, password, fName, lName, address, phoneNumber, email, account);
+    }
+
+    // Customer read back from storage, keeping its id rather than taking a new one
+    public Customer(int customerId, String username, String password, String fName, String lName, String address, String phoneNumber, String email, Account account) {
+        IDS.reserve(customerId);
+
+        this.customerId = customerId;
         this.username = username;
         this.password = password;
         this.fName = fName;
@@ -52,7 +56,8 @@ public class Customer implements Serializable {
         this.phoneNumber = phoneNumber;
         this.email = email;
         this.account = account;
-        this.transactions = new ArrayBlockingQueue<>(5);
+        this.accounts = new CopyOnWriteArrayList<>(Collections.singletonList(account));
+        this.transactions = new TransactionHistory(RECENT_TRANSACTIONS);
     }
 
     public int getCustomerId() {
@@ -61,6 +66,7 @@ public class Customer implements Serializable {
 
     public void setCustomerId(int customerId) {
         this.customerId = customerId;
+        IDS.reserve(customerId);
     }
 
     public String getUsername() {
@@ -69,6 +75,7 @@ public class Customer implements Serializable {
 
     public void setUsername(String username) {
         this.username = username;
+        profileChanged();
     }
 
     public String getPassword() {
@@ -77,6 +84,7 @@ public class Customer implements Serializable {
 
     public void setPassword(String password) {
         this.password = password;
+        profileChanged();
     }
 
     public String getFName() {
@@ -85,6 +93,7 @@ public class Customer implements Serializable {
 
     public void setFName(String fName) {
         this.fName = fName;
+        profileChanged();
     }
 
     public String getLName() {
@@ -93,6 +102,7 @@ public class Customer implements Serializable {
 
     public void setLName(String lName) {
         this.lName = lName;
+        profileChanged();
     }
 
     public String getFullName() {
@@ -105,6 +115,7 @@ public class Customer implements Serializable {
 
     public void setAddress(String address) {
         this.address = address;
+        profileChanged();
     }
 
     public String getPhoneNumber() {
@@ -113,6 +124,7 @@ public class Customer implements Serializable {
 
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        profileChanged();
     }
 
     public String getEmail() {
@@ -121,35 +133,81 @@ public class Customer implements Serializable {
 
     public void setEmail(String email) {
         this.email = email;
+        profileChanged();
+    }
+
+    public List<Account> getAccounts() {
+        return Collections.unmodifiableList(this.accounts);
     }
 
-    // public List<Account> getAccounts() {
-    //     return this.accounts;
-    // }
+    // The account with the given id, or null if it isn't one of this customer's
+    public Account getAccount(String accountId) {
+        for (Account owned : this.accounts) {
+            if (owned.getAccountId().equals(accountId)) {
+                return owned;
+            }
+        }
 
-    // public void setAccounts(List<Account> accounts) {
-    //     this.accounts = accounts;
-    // }
+        return null;
+    }
+
+    // Only TransferEngine and restoring from storage add accounts, so the account store stays in step
+    public void addAccount(Account account) {
+        this.accounts.add(account);
+        profileChanged();
+    }
+
+    public boolean owns(Account account) {
+        return this.accounts.contains(account);
+    }
 
     public Account getAccount() {
         return this.account;
     }
 
     public void setAccount(Account account) {
+        this.accounts.remove(this.account);
+        this.accounts.add(0, account);
         this.account = account;
+        profileChanged();
     }
 
-    public ArrayBlockingQueue<String> getTransactions() {
+    public TransactionHistory getTransactions() {
         return this.transactions;
     }
 
-    public void setTransactions(ArrayBlockingQueue<String> transactions) {
+    public void setTransactions(TransactionHistory transactions) {
         this.transactions = transactions;
+        profileChanged();
+    }
+
+    public int getProfileChanges() {
+        return this.profileChanges;
+    }
+
+    // Setters count their own changes; anyone else changing what the profile holds counts theirs here
+    public void profileChanged() {
+        this.profileChanges++;
+    }
+
+    // Restoring from storage: carry on counting from the stored profile's count
+    public void setProfileChanges(int profileChanges) {
+        this.profileChanges = profileChanges;
     }
 
-    // Used by FileStorageUtility to properly update the customer count that doesn't get incremented by object deserialization
-    public static void incrCustomerCnt() {
-        customerCnt++;
+    public static IdAllocator getIds() {
+        return IDS;
+    }
+
+    // Deserialization doesn't run a constructor: reserve the loaded id, and give data saved
+    // before customers had several accounts its one account
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        IDS.reserve(this.customerId);
+
+        if (this.accounts == null) {
+            this.accounts = new CopyOnWriteArrayList<>(Collections.singletonList(this.account));
+        }
     }
 
     @Override
@@ -157,14 +215,12 @@ public class Customer implements Serializable {
         return "{" +
             " customerId='" + getCustomerId() + "'" +
             ", username='" + getUsername() + "'" +
-            ", password='" + getPassword() + "'" +
             ", fName='" + getFName() + "'" +
             ", lName='" + getLName() + "'" +
             ", address='" + getAddress() + "'" +
             ", phoneNumber='" + getPhoneNumber() + "'" +
             ", email='" + getEmail() + "'" +
-            // ", accounts='" + getAccounts() + "'" +
-            ", account='" + getAccount() + "'" +
+            ", accounts='" + getAccounts() + "'" +
             ", transactions='" + getTransactions() + "'" +
             "}";
     }
@@ -0,0 +1,143 @@
+package com.dollarsbank.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out increasing ids from any number of threads without a lock.
+//
+// Ids are leased a block at a time: before the first id of a block is handed out, the end of the block
+// is written to the allocator's lease store, so a restart carries on after everything that may have been
+// used, even ids that never reached the journal. Only the thread crossing into a new block writes; the
+// others take an id with a single atomic increment. Unused ids at the end of a block are skipped after a restart.
+//
+// Ids that come back from storage are reserved as they are read, so a fresh id never
+// collides with a loaded one, whatever order customers and accounts are loaded in.
+//
+// format() and parse() turn ids into fixed-width strings like U000123 and back for any model class.
+public class IdAllocator {
+
+    // Ids leased per write to the lease store
+    private static final int BLOCK_SIZE = Integer.getInteger("dollarsbank.ids.block", 1024);
+
+    // Digits in a formatted id; longer ids use as many as they need
+    private static final int ID_WIDTH = 6;
+
+    // Where leases are kept, e.g. a file next to the bank's data
+    public interface LeaseStore {
+
+        // End of the last lease written, 0 if there is none
+        int readLease();
+
+        // Must be durable before returning
+        void writeLease(int end);
+
+    }
+
+    private final AtomicInteger last = new AtomicInteger();
+    private final int blockSize;
+
+    // Every id up to here may be handed out; written to the store first
+    private volatile int leaseEnd;
+    private LeaseStore store;
+
+    public IdAllocator() {
+        this(BLOCK_SIZE);
+    }
+
+    public IdAllocator(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    public int next() {
+        int id = last.incrementAndGet();
+
+        if (id <= 0) {
+            throw new IllegalStateException("No ids left");
+        }
+
+        if (id > leaseEnd) {
+            extendLease(id);
+        }
+        return id;
+    }
+
+    // Make sure the given id is never handed out. Reserved ids are already stored, so they need no lease;
+    // the next id handed out past the lease leases a new block.
+    public void reserve(int id) {
+        last.accumulateAndGet(id, Math::max);
+    }
+
+    public int getLast() {
+        return last.get();
+    }
+
+    // Keep leases in the given store from now on. Everything below the stored lease may have been
+    // handed out before, so it is skipped; the next id starts a new lease.
+    public synchronized void attach(LeaseStore store) {
+        int stored = store.readLease();
+
+        this.store = store;
+        reserve(stored);
+        this.leaseEnd = Math.max(stored, last.get());
+    }
+
+    // Zero-padded id such as U000123, without going through String.format
+    public static String format(char prefix, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+
+        int digits = 1;
+        for (int rest = id / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        char[] chars = new char[1 + Math.max(ID_WIDTH, digits)];
+        chars[0] = prefix;
+
+        // Fill from the right; once the number runs out the rest are zeros
+        for (int i = chars.length - 1; i > 0; i--) {
+            chars[i] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+
+        return new String(chars);
+    }
+
+    // Id formatted by format(), or -1 if the string isn't one
+    public static int parse(char prefix, String id) {
+        int length = id == null ? 0 : id.length();
+
+        if (length < 2 || length > 11 || id.charAt(0) != prefix) {
+            return -1;
+        }
+
+        long number = 0;
+        for (int i = 1; i < length; i++) {
+            char c = id.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        return number <= Integer.MAX_VALUE ? (int) number : -1;
+    }
+
+    // Helpers
+
+    // Lease a block that covers the id; threads that raced past the lease wait here for it
+    private synchronized void extendLease(int id) {
+        if (id <= leaseEnd) {
+            return;
+        }
+
+        int end = (int) Math.min(Integer.MAX_VALUE, (long) id + blockSize - 1);
+
+        if (store != null) {
+            store.writeLease(end);
+        }
+        leaseEnd = end;
+    }
+
+}
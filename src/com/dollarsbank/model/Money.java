@@ -0,0 +1,109 @@
+package com.dollarsbank.model;
+
+// Fixed-point money amounts held as a long number of cents.
+// All operations work on primitive longs so balances can be updated, parsed and printed
+// without boxing, rounding errors or String.format.
+public final class Money {
+
+    public static final long ZERO = 0;
+
+    private static final int CENTS_PER_DOLLAR = 100;
+
+    private Money() {
+        // private constructor to make class un-instantiable
+    }
+
+    // ARITHMETIC
+
+    public static long add(long cents, long amount) {
+        return Math.addExact(cents, amount);
+    }
+
+    public static long subtract(long cents, long amount) {
+        return Math.subtractExact(cents, amount);
+    }
+
+    public static long ofDollars(long dollars) {
+        return Math.multiplyExact(dollars, CENTS_PER_DOLLAR);
+    }
+
+    // PARSING
+
+    // Parse an amount matching StringUtil.MONETARY ("\d{1,12}(\.\d\d)?") in a single pass; longer runs of digits
+    // parse too, up to an ArithmeticException once they overflow
+    public static long parse(CharSequence str) {
+        int len = str.length();
+        int i = 0;
+        long dollars = 0;
+
+        if (len == 0) {
+            throw new NumberFormatException("Empty monetary value");
+        }
+
+        // Whole dollars
+        while (i < len && str.charAt(i) != '.') {
+            int digit = str.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid monetary value: " + str);
+            }
+
+            dollars = Math.addExact(Math.multiplyExact(dollars, 10), digit);
+            i++;
+        }
+
+        if (i == 0) {
+            throw new NumberFormatException("Invalid monetary value: " + str);
+        }
+
+        long cents = 0;
+
+        // Optional cents, exactly two digits
+        if (i < len) {
+            if (len - i != 3) {
+                throw new NumberFormatException("Invalid monetary value: " + str);
+            }
+
+            int tens = str.charAt(i + 1) - '0';
+            int ones = str.charAt(i + 2) - '0';
+
+            if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+                throw new NumberFormatException("Invalid monetary value: " + str);
+            }
+
+            cents = tens * 10 + ones;
+        }
+
+        return Math.addExact(ofDollars(dollars), cents);
+    }
+
+    // FORMATTING
+
+    // Format as dollars with two decimals, e.g. 12345 -> "123.45"
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    // Append the formatted amount to an existing builder without creating intermediate strings
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+
+            // Long.MIN_VALUE has no positive counterpart
+            if (cents == Long.MIN_VALUE) {
+                return sb.append(-(Long.MIN_VALUE / CENTS_PER_DOLLAR)).append(".08");
+            }
+
+            cents = -cents;
+        }
+
+        long remainder = cents % CENTS_PER_DOLLAR;
+
+        sb.append(cents / CENTS_PER_DOLLAR).append('.');
+        sb.append((char) ('0' + remainder / 10));
+        sb.append((char) ('0' + remainder % 10));
+
+        return sb;
+    }
+
+}
@@ -2,28 +2,35 @@ package com.dollarsbank.model;
 
 public class SavingsAccount extends Account {
 
-    private static final long serialVersionUID = 1L;
-
-    static int savingsAcctCnt = 0;
+    // Still version 2: withdrawalsThisMonth was added compatibly and reads as 0 from older data
+    private static final long serialVersionUID = 2L;
 
     private double interestRate;
+    // Withdrawals allowed each month, and how many were made so far this month
     private int monthlyWithdrawals;
-    private double withdrawalFee;
+    private int withdrawalsThisMonth;
+    // Fee in cents, see Money
+    private long withdrawalFee;
 
     public SavingsAccount() {
         super();
         this.interestRate = 0.01;
         this.monthlyWithdrawals = 5;
-        this.withdrawalFee = 5;
-        savingsAcctCnt++;
+        this.withdrawalFee = Money.ofDollars(5);
     }
 
-    public SavingsAccount(double balance, double interestRate, int monthlyWithdrawals, double withdrawalFee) {
+    public SavingsAccount(long balance, double interestRate, int monthlyWithdrawals, long withdrawalFee) {
         super(balance);
         this.interestRate = interestRate;
         this.monthlyWithdrawals = monthlyWithdrawals;
         this.withdrawalFee = withdrawalFee;
-        savingsAcctCnt++;
+    }
+
+    public SavingsAccount(String accountId, long balance, double interestRate, int monthlyWithdrawals, long withdrawalFee) {
+        super(accountId, balance);
+        this.interestRate = interestRate;
+        this.monthlyWithdrawals = monthlyWithdrawals;
+        this.withdrawalFee = withdrawalFee;
     }
 
     public double getInterestRate() {
@@ -42,11 +49,28 @@ public class SavingsAccount extends Account {
         this.monthlyWithdrawals = monthlyWithdrawals;
     }
 
-    public double getWithdrawalFee() {
+    public int getWithdrawalsThisMonth() {
+        return this.withdrawalsThisMonth;
+    }
+
+    public void setWithdrawalsThisMonth(int withdrawalsThisMonth) {
+        this.withdrawalsThisMonth = withdrawalsThisMonth;
+    }
+
+    public void recordWithdrawal() {
+        this.withdrawalsThisMonth++;
+    }
+
+    // One month of interest on the current balance, in cents; interestRate is yearly
+    public long getMonthlyInterest() {
+        return Math.round(getBalance() * this.interestRate / 12);
+    }
+
+    public long getWithdrawalFee() {
         return this.withdrawalFee;
     }
 
-    public void setWithdrawalFee(double withdrawalFee) {
+    public void setWithdrawalFee(long withdrawalFee) {
         this.withdrawalFee = withdrawalFee;
     }
 
@@ -55,7 +79,8 @@ public class SavingsAccount extends Account {
         return super.toString() +
             " interestRate='" + getInterestRate() + "'" +
             ", monthlyWithdrawals='" + getMonthlyWithdrawals() + "'" +
-            ", withdrawalFee='" + getWithdrawalFee() + "'" +
+            ", withdrawalsThisMonth='" + getWithdrawalsThisMonth() + "'" +
+            ", withdrawalFee='" + Money.format(getWithdrawalFee()) + "'" +
             "}";
     }
 
@@ -0,0 +1,100 @@
+package com.dollarsbank.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+// A single posted transaction, kept in structured form and only rendered to text when displayed.
+// String fields reference the ids/usernames already held by the accounts and customers involved.
+public final class Transaction implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionType type;
+
+    // Amount and resulting balance in cents, see Money
+    private final long amount;
+    private final long balance;
+
+    private final long timestamp;
+
+    private final String accountId;
+
+    // Other side of a transfer, null for deposits and withdrawals
+    private final String counterparty;
+    private final String counterpartyAccountId;
+
+    public Transaction(TransactionType type, long amount, String accountId, String counterparty, String counterpartyAccountId, long timestamp, long balance) {
+        this.type = type;
+        this.amount = amount;
+        this.accountId = accountId;
+        this.counterparty = counterparty;
+        this.counterpartyAccountId = counterpartyAccountId;
+        this.timestamp = timestamp;
+        this.balance = balance;
+    }
+
+    public TransactionType getType() {
+        return this.type;
+    }
+
+    public long getAmount() {
+        return this.amount;
+    }
+
+    public long getBalance() {
+        return this.balance;
+    }
+
+    // Epoch milliseconds
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public String getAccountId() {
+        return this.accountId;
+    }
+
+    public String getCounterparty() {
+        return this.counterparty;
+    }
+
+    public String getCounterpartyAccountId() {
+        return this.counterpartyAccountId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof Transaction)) {
+            return false;
+        }
+
+        Transaction other = (Transaction) o;
+        return type == other.type && amount == other.amount && balance == other.balance && timestamp == other.timestamp
+            && Objects.equals(accountId, other.accountId)
+            && Objects.equals(counterparty, other.counterparty)
+            && Objects.equals(counterpartyAccountId, other.counterpartyAccountId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, amount, balance, timestamp, accountId, counterparty, counterpartyAccountId);
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+            " type='" + getType() + "'" +
+            ", amount='" + Money.format(getAmount()) + "'" +
+            ", accountId='" + getAccountId() + "'" +
+            ", counterparty='" + getCounterparty() + "'" +
+            ", counterpartyAccountId='" + getCounterpartyAccountId() + "'" +
+            ", timestamp='" + getTimestamp() + "'" +
+            ", balance='" + Money.format(getBalance()) + "'" +
+            "}";
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.dollarsbank.model;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Fixed-size ring buffer of a customer's most recent transactions.
+// Adding to a full buffer overwrites the oldest entry; iteration goes from oldest to newest.
+// The full history lives in the account ledger.
+public class TransactionHistory implements Iterable<Transaction>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Transaction[] entries;
+
+    // Index of the oldest entry and number of entries held
+    private int head;
+    private int size;
+
+    public TransactionHistory(int capacity) {
+        this.entries = new Transaction[capacity];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    public void add(Transaction transaction) {
+        if (size < entries.length) {
+            entries[(head + size) % entries.length] = transaction;
+            size++;
+        } else {
+            entries[head] = transaction;
+            head = (head + 1) % entries.length;
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.entries.length;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    // Entry i, where 0 is the oldest
+    public Transaction get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+
+        return entries[(head + i) % entries.length];
+    }
+
+    public boolean contains(Transaction transaction) {
+        for (int i = 0; i < size; i++) {
+            if (get(i).equals(transaction)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<Transaction>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "" : ", ").append(get(i));
+        }
+
+        return sb.append("]").toString();
+    }
+
+}
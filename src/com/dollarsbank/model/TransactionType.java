@@ -0,0 +1,16 @@
+package com.dollarsbank.model;
+
+public enum TransactionType {
+    INITIAL_DEPOSIT("Initial Deposit Amount"),
+    DEPOSIT("Deposit"),
+    WITHDRAWAL("Withdrawal"),
+    TRANSFER_OUT("Transfer"),
+    TRANSFER_IN("Transfer"),
+    INTEREST("Interest");
+
+    public final String label;
+
+    private TransactionType(String label) {
+        this.label = label;
+    }
+}
@@ -0,0 +1,28 @@
+package com.dollarsbank.model.legacy;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// An account as saved by version 1, with its balance in dollars as a double. Only ever read back from an old
+// data file, and replaced by the current account as soon as it has been.
+public class Account implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    String accountId;
+    double balance;
+    LocalDateTime openDate;
+
+    private Object readResolve() throws ObjectStreamException {
+        com.dollarsbank.model.Account account = new com.dollarsbank.model.Account(this.accountId, cents(this.balance));
+        account.setOpenDate(this.openDate);
+        return account;
+    }
+
+    // Dollars held as a double, rounded to the nearest cent
+    static long cents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+}
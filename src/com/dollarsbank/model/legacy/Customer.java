@@ -0,0 +1,115 @@
+package com.dollarsbank.model.legacy;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
+
+// A customer as saved by version 1, with one account and its recent transactions as text. Only ever read back
+// from an old data file, and replaced by the current customer as soon as it has been.
+public class Customer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Transactions as version 1 wrote them, each followed by a line with the balance after it
+    private static final Pattern STUB = Pattern.compile("(Initial Deposit Amount|Deposit|Withdrawal) of \\$(\\d+\\.\\d\\d) in \\[(\\w+)\\]\\.");
+    private static final Pattern TRANSFER_TO = Pattern.compile("Transfer of \\$(\\d+\\.\\d\\d) from \\[(\\w+)\\] to (.*) \\[(\\w+)\\]\\.");
+    private static final Pattern TRANSFER_FROM = Pattern.compile("Transfer of \\$(\\d+\\.\\d\\d) from (.*) \\[(\\w+)\\] to \\[(\\w+)\\]\\.");
+    private static final Pattern BALANCE = Pattern.compile("Balance - \\$(-?)(\\d+\\.\\d\\d) as of (.*)");
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("E, dd MMM yyyy HH:mm:ss z");
+
+    int customerId;
+    String username;
+    String password;
+    String fName;
+    String lName;
+    String address;
+    String phoneNumber;
+    String email;
+    com.dollarsbank.model.Account account;
+    ArrayBlockingQueue<String> transactions;
+
+    private Object readResolve() throws ObjectStreamException {
+        com.dollarsbank.model.Customer customer = new com.dollarsbank.model.Customer(this.customerId, this.username, this.password, this.fName,
+            this.lName, this.address, this.phoneNumber, this.email, this.account);
+
+        if (this.transactions != null) {
+            for (String text : this.transactions) {
+                Transaction transaction = parse(text);
+
+                // Only the most recent ones are kept as text, the display can do without one it can't read
+                if (transaction != null) {
+                    customer.getTransactions().add(transaction);
+                }
+            }
+        }
+
+        return customer;
+    }
+
+    // The transaction a version 1 text describes; transfers keep the other customer's full name as the counterparty,
+    // which is what's displayed when no such username is found. Null if the text isn't one version 1 wrote.
+    static Transaction parse(String text) {
+        String[] lines = text.split("\\R", 2);
+        Matcher balance = lines.length == 2 ? BALANCE.matcher(lines[1].trim()) : null;
+
+        if (balance == null || !balance.matches()) {
+            return null;
+        }
+
+        long after = Money.parse(balance.group(2));
+        if (!balance.group(1).isEmpty()) {
+            after = -after;
+        }
+
+        long timestamp = timestampOf(balance.group(3));
+
+        Matcher stub = STUB.matcher(lines[0]);
+        if (stub.matches()) {
+            return new Transaction(typeOf(stub.group(1)), Money.parse(stub.group(2)), stub.group(3), null, null, timestamp, after);
+        }
+
+        Matcher to = TRANSFER_TO.matcher(lines[0]);
+        if (to.matches()) {
+            return new Transaction(TransactionType.TRANSFER_OUT, Money.parse(to.group(1)), to.group(2), to.group(3), to.group(4), timestamp, after);
+        }
+
+        Matcher from = TRANSFER_FROM.matcher(lines[0]);
+        if (from.matches()) {
+            return new Transaction(TransactionType.TRANSFER_IN, Money.parse(from.group(1)), from.group(4), from.group(2), from.group(3), timestamp, after);
+        }
+
+        return null;
+    }
+
+    private static TransactionType typeOf(String label) {
+        switch (label) {
+            case "Initial Deposit Amount":
+                return TransactionType.INITIAL_DEPOSIT;
+            case "Deposit":
+                return TransactionType.DEPOSIT;
+            default:
+                return TransactionType.WITHDRAWAL;
+        }
+    }
+
+    // Version 1 printed the week-based year, which is the calendar year on all but a few days; if the time can't be
+    // read it becomes the time of the migration
+    private static long timestampOf(String text) {
+        try {
+            return ZonedDateTime.parse(text, TIMESTAMP).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+}
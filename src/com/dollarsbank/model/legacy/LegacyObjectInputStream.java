@@ -0,0 +1,35 @@
+package com.dollarsbank.model.legacy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Map;
+
+// Reads customers saved by any version. Classes saved as version 1 are read as the classes of this package, which
+// have the same simple names and the old fields, and turn into the current ones once read.
+public class LegacyObjectInputStream extends ObjectInputStream {
+
+    private static final long VERSION_1 = 1L;
+
+    private static final Map<String, Class<?>> VERSION_1_CLASSES = Map.of(
+        "com.dollarsbank.model.Account", Account.class,
+        "com.dollarsbank.model.SavingsAccount", SavingsAccount.class,
+        "com.dollarsbank.model.Customer", Customer.class);
+
+    public LegacyObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        Class<?> legacy = VERSION_1_CLASSES.get(desc.getName());
+
+        if (legacy != null && desc.getSerialVersionUID() == VERSION_1) {
+            return legacy;
+        }
+
+        return super.resolveClass(desc);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.dollarsbank.model.legacy;
+
+import java.io.ObjectStreamException;
+
+// A savings account as saved by version 1, see Account
+public class SavingsAccount extends Account {
+
+    private static final long serialVersionUID = 1L;
+
+    double interestRate;
+    int monthlyWithdrawals;
+    double withdrawalFee;
+
+    private Object readResolve() throws ObjectStreamException {
+        com.dollarsbank.model.SavingsAccount account = new com.dollarsbank.model.SavingsAccount(this.accountId, cents(this.balance),
+            this.interestRate, this.monthlyWithdrawals, cents(this.withdrawalFee));
+        account.setOpenDate(this.openDate);
+        return account;
+    }
+
+}
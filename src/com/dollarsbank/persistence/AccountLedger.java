@@ -0,0 +1,867 @@
+package com.dollarsbank.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Full, unbounded transaction history of every account, kept on disk rather than on the heap.
+//
+// Entries of every account are appended to shared segment files of encoded transactions (see TransactionCodec),
+// a new segment started once one reaches SEGMENT_SIZE. Each account has a chain of index blocks in a shared index
+// file, every block twice the size of the one before up to MAX_BLOCK_ENTRIES, so entry n is found by walking back
+// a handful of blocks and a date by binary search over the timestamps. The directory holds each account's entry
+// count and last block, found through an in-memory hash of the account ids.
+//
+// Segment entry:  [int length][encoded transaction], located by [int segment][int offset] packed into a long
+// Index block:    [long previousBlock][long firstEntry][int capacity][int reserved] capacity x [long location][long timestamp]
+// Directory:      [int magic][int version][int complete][int accountCount] then per account
+//                 [long count][long lastBlock][int idLength][id (UTF-8)]
+//
+// Appends are buffered in memory and written per account by flush(), or by a background flusher once
+// MAX_PENDING_BYTES are buffered, so a busy account costs one write per flush rather than one per transaction and
+// appending never waits for the disk unless the flusher falls a whole buffer behind. A flush syncs the segment and
+// the index before the directory that counts their entries, so syncing is three files however many accounts
+// changed. Anything not yet flushed is still in the journal, which is only truncated after a flush.
+//
+// Two locks: the ledger's monitor guards the buffered appends and is only ever held briefly, the io
+// lock guards the files. A flush holds io while it writes and syncs, without blocking appends.
+public class AccountLedger {
+
+    public static final String LEDGERDIR = FileStorageUtility.DATADIR + "/ledger";
+
+    private static final String DIRECTORY_FILE = "ledger.dir";
+    private static final String INDEX_FILE = "ledger.blk";
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x44424C47;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_COMPLETE = 8;
+    private static final int H_ACCOUNT_COUNT = 12;
+
+    private static final int DIRECTORY_RECORD_SIZE = 48;
+    private static final int D_COUNT = 0;
+    private static final int D_LAST_BLOCK = 8;
+    private static final int D_ID_LENGTH = 16;
+    private static final int D_ID = 20;
+    private static final int MAX_ID_LENGTH = DIRECTORY_RECORD_SIZE - D_ID;
+
+    private static final int BLOCK_HEADER_SIZE = 24;
+    private static final int B_PREVIOUS = 0;
+    private static final int B_FIRST = 8;
+    private static final int B_CAPACITY = 16;
+
+    private static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES;
+    private static final int FIRST_BLOCK_ENTRIES = 16;
+    private static final int MAX_BLOCK_ENTRIES = 65536;
+
+    // Size at which a new segment is started
+    private static final int SEGMENT_SIZE = Integer.getInteger("dollarsbank.ledger.segment", 64 * 1024 * 1024);
+
+    // Maximum number of older segments kept open for reading
+    private static final int MAX_OPEN = Integer.getInteger("dollarsbank.ledger.open", 64);
+
+    // Buffered appends are handed to the flusher (which writes them without a sync) once they reach this size
+    private static final int MAX_PENDING_BYTES = Integer.getInteger("dollarsbank.ledger.buffer", 32 * 1024 * 1024);
+
+    // Transactions a replay thread buffers before writing them out
+    private static final int REPLAY_BATCH = 65536;
+
+    private final File dir;
+
+    private final Object io = new Object();
+
+    // Appends not written yet, by account; guarded by this
+    private Map<String, Pending> pending = new HashMap<String, Pending>();
+    private int pendingBytes = 0;
+
+    // Set when the buffer is full and the flusher should write it out; guarded by this
+    private boolean flushWanted = false;
+    private boolean closed = false;
+
+    private final Thread flusher;
+
+    // Files, all guarded by io
+    private final RecordFile directory;
+    private final SlotIndex byId = new SlotIndex();
+    private final FileChannel index;
+    private long indexEnd;
+
+    // Segment being appended to
+    private FileChannel active;
+    private int activeNumber;
+    private long activeSize;
+
+    // Older segments open for reading, least recently used first
+    private final Map<Integer, FileChannel> open = new LinkedHashMap<Integer, FileChannel>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FileChannel> eldest) {
+            if (size() > MAX_OPEN) {
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public AccountLedger() {
+        this(LEDGERDIR);
+    }
+
+    public AccountLedger(String path) {
+        this.dir = new File(path);
+        this.dir.mkdirs();
+
+        try {
+            File directoryFile = new File(dir, DIRECTORY_FILE);
+            boolean legacy = LegacyLedger.exists(dir);
+
+            // A directory that never completed belongs to an import the crash interrupted; it starts over
+            if (legacy && directoryFile.length() >= RecordFile.HEADER_SIZE && !isComplete(directoryFile)) {
+                deleteFiles();
+            }
+
+            boolean isNew = directoryFile.length() < RecordFile.HEADER_SIZE;
+
+            this.directory = new RecordFile(directoryFile, DIRECTORY_RECORD_SIZE);
+            this.index = new RandomAccessFile(new File(dir, INDEX_FILE), "rw").getChannel();
+            this.indexEnd = index.size();
+            openActiveSegment();
+
+            MappedByteBuffer header = directory.buffer;
+
+            if (isNew) {
+                header.putInt(H_MAGIC, MAGIC);
+                header.putInt(H_VERSION, FORMAT_VERSION);
+                header.putInt(H_COMPLETE, legacy ? 0 : 1);
+                header.putInt(H_ACCOUNT_COUNT, 0);
+                header.force();
+            } else if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != FORMAT_VERSION) {
+                throw new IOException("Unrecognized account ledger in " + dir);
+            }
+
+            for (int slot = 0; slot < header.getInt(H_ACCOUNT_COUNT); slot++) {
+                byId.add(idAt(slot).hashCode(), slot);
+            }
+
+            if (header.getInt(H_COMPLETE) == 0) {
+                importLegacy();
+            } else if (legacy) {
+                // Left behind by a crash after the import completed
+                LegacyLedger.delete(dir);
+            }
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open account ledger in " + dir, e);
+        }
+
+        this.flusher = new Thread(this::runFlusher, "ledger-flush");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Encoded appends of one account waiting to be written
+    private static class Pending {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(256);
+
+        // [offset within data, timestamp] per entry
+        long[] entries = new long[16];
+        int count = 0;
+
+        void add(byte[] encoded, long timestamp) {
+            if (2 * count + 2 > entries.length) {
+                long[] bigger = new long[entries.length * 2];
+                System.arraycopy(entries, 0, bigger, 0, entries.length);
+                entries = bigger;
+            }
+
+            entries[2 * count] = data.size();
+            entries[2 * count + 1] = timestamp;
+            count++;
+
+            data.write(encoded.length >>> 24);
+            data.write(encoded.length >>> 16);
+            data.write(encoded.length >>> 8);
+            data.write(encoded.length);
+            data.write(encoded, 0, encoded.length);
+        }
+
+        int size() {
+            return data.size() + count * INDEX_ENTRY_SIZE;
+        }
+    }
+
+    // APPEND
+
+    // Append a transaction to its account's history; it becomes visible to queries immediately
+    public void append(Transaction transaction) {
+        byte[] encoded = encode(transaction);
+
+        if (encoded == null) {
+            return;
+        }
+
+        synchronized (this) {
+            Pending buffered = pending.get(transaction.getAccountId());
+            if (buffered == null) {
+                buffered = new Pending();
+                pending.put(transaction.getAccountId(), buffered);
+            }
+
+            buffered.add(encoded, transaction.getTimestamp());
+            pendingBytes += encoded.length + Integer.BYTES + INDEX_ENTRY_SIZE;
+
+            if (pendingBytes >= MAX_PENDING_BYTES && !flushWanted) {
+                flushWanted = true;
+                notifyAll();
+            }
+
+            // Only once the flusher is a whole buffer behind does appending wait for it, rather than run out of memory
+            while (pendingBytes >= 2 * MAX_PENDING_BYTES && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (this) {
+                while (!flushWanted && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                flushWanted = false;
+            }
+
+            write(false);
+        }
+    }
+
+    // Buffer for the transactions one thread replays from the journal, see Replay
+    public Replay startReplay() {
+        return new Replay();
+    }
+
+    // Transactions replayed from the journal by one thread, buffered by account and written out a batch at a
+    // time: encoded without any lock, then one write per account under a single hold of io, so replay threads
+    // don't take turns on it for every record. Entries at or before the last one written are ignored, so
+    // replaying the journal after a crash doesn't duplicate history that had already reached the ledger.
+    //
+    // Each account must be replayed by one thread only, in order; finish() writes out whatever is left.
+    public final class Replay {
+
+        private final Map<String, List<Transaction>> byAccount = new HashMap<String, List<Transaction>>();
+        private int buffered = 0;
+
+        private Replay() {
+        }
+
+        public void append(Transaction transaction) {
+            List<Transaction> transactions = byAccount.get(transaction.getAccountId());
+            if (transactions == null) {
+                transactions = new ArrayList<Transaction>();
+                byAccount.put(transaction.getAccountId(), transactions);
+            }
+
+            transactions.add(transaction);
+
+            if (++buffered >= REPLAY_BATCH) {
+                finish();
+            }
+        }
+
+        public void finish() {
+            if (buffered == 0) {
+                return;
+            }
+
+            Map<String, byte[][]> encoded = new HashMap<String, byte[][]>(byAccount.size() * 2);
+            for (Map.Entry<String, List<Transaction>> entry : byAccount.entrySet()) {
+                List<Transaction> transactions = entry.getValue();
+                byte[][] bytes = new byte[transactions.size()][];
+
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = encode(transactions.get(i));
+                }
+                encoded.put(entry.getKey(), bytes);
+            }
+
+            synchronized (io) {
+                for (Map.Entry<String, List<Transaction>> entry : byAccount.entrySet()) {
+                    try {
+                        writeReplayed(entry.getKey(), entry.getValue(), encoded.get(entry.getKey()));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write to account ledger.");
+                    }
+                }
+            }
+
+            byAccount.clear();
+            buffered = 0;
+        }
+
+    }
+
+    // Must be called while holding io
+    private void writeReplayed(String accountId, List<Transaction> transactions, byte[][] encoded) throws IOException {
+        writePending(accountId, takePending(accountId));
+
+        // Entries already in the ledger are a prefix of the ones replayed
+        int slot = slotOf(accountId, false);
+        Pending batch = new Pending();
+        boolean caughtUp = false;
+
+        for (int i = 0; i < encoded.length; i++) {
+            Transaction transaction = transactions.get(i);
+
+            if (!caughtUp && slot >= 0 && isAlreadyWritten(slot, transaction)) {
+                continue;
+            }
+
+            caughtUp = true;
+            if (encoded[i] != null) {
+                batch.add(encoded[i], transaction.getTimestamp());
+            }
+        }
+
+        writePending(accountId, batch);
+    }
+
+    private static byte[] encode(Transaction transaction) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            TransactionCodec.write(new DataOutputStream(bytes), transaction);
+            return bytes.toByteArray();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write to account ledger.");
+            return null;
+        }
+    }
+
+    // Compare against every trailing entry from the same millisecond, not just the last one
+    private boolean isAlreadyWritten(int slot, Transaction transaction) throws IOException {
+        long count = countOf(slot);
+
+        if (count == 0) {
+            return false;
+        }
+
+        long lastTimestamp = timestampAt(slot, count - 1);
+
+        if (transaction.getTimestamp() != lastTimestamp) {
+            return transaction.getTimestamp() < lastTimestamp;
+        }
+
+        for (long i = count - 1; i >= 0 && timestampAt(slot, i) == transaction.getTimestamp(); i--) {
+            if (transaction.equals(read(slot, i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Make every appended entry durable; called before a checkpoint so history is never behind it
+    public void flush() {
+        write(true);
+    }
+
+    public void close() {
+        synchronized (io) {
+            write(true);
+
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+
+            try {
+                for (FileChannel segment : open.values()) {
+                    segment.close();
+                }
+                open.clear();
+
+                active.close();
+                index.close();
+                directory.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Write every buffered append, syncing the files if asked
+    private void write(boolean force) {
+        synchronized (io) {
+            Map<String, Pending> batch;
+
+            synchronized (this) {
+                if (closed || (pending.isEmpty() && !force)) {
+                    return;
+                }
+
+                batch = pending;
+                pending = new HashMap<String, Pending>();
+                pendingBytes = 0;
+
+                // Appends waiting for room can go on
+                notifyAll();
+            }
+
+            for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+                try {
+                    writePending(entry.getKey(), entry.getValue());
+
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write to account ledger.");
+                }
+            }
+
+            if (force) {
+                sync();
+            }
+        }
+    }
+
+    // Segment and index first, so the directory never counts entries that aren't on disk.
+    // Must be called while holding io.
+    private void sync() {
+        try {
+            active.force(false);
+            index.force(false);
+            directory.buffer.force();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write to account ledger.");
+        }
+    }
+
+    // Must be called while holding io
+    private synchronized Pending takePending(String accountId) {
+        Pending buffered = pending.remove(accountId);
+
+        if (buffered != null) {
+            pendingBytes -= buffered.size();
+        }
+
+        return buffered;
+    }
+
+    // Data first, then the index entries pointing at it, then the directory counting them.
+    // Must be called while holding io.
+    private void writePending(String accountId, Pending buffered) throws IOException {
+        if (buffered == null || buffered.count == 0) {
+            return;
+        }
+
+        int slot = slotOf(accountId, true);
+        long base = appendData(buffered.data.toByteArray());
+
+        int record = directory.offset(slot);
+        long count = directory.buffer.getLong(record + D_COUNT);
+        long block = directory.buffer.getLong(record + D_LAST_BLOCK);
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+        for (int i = 0; i < buffered.count; ) {
+            long first = count;
+            int capacity = FIRST_BLOCK_ENTRIES;
+
+            if (block >= 0) {
+                readFully(index, header.clear(), block, "Truncated ledger index");
+                first = header.getLong(B_FIRST);
+                capacity = header.getInt(B_CAPACITY);
+            }
+
+            // Start another block once the last one is full
+            if (block < 0 || count - first == capacity) {
+                capacity = block < 0 ? FIRST_BLOCK_ENTRIES : Math.min(2 * capacity, MAX_BLOCK_ENTRIES);
+                block = allocateBlock(block, count, capacity);
+                first = count;
+            }
+
+            int taken = (int) Math.min(capacity - (count - first), buffered.count - i);
+            ByteBuffer entries = ByteBuffer.allocate(taken * INDEX_ENTRY_SIZE);
+
+            for (int j = i; j < i + taken; j++) {
+                entries.putLong(base + buffered.entries[2 * j]).putLong(buffered.entries[2 * j + 1]);
+            }
+            entries.flip();
+
+            writeFully(index, entries, block + BLOCK_HEADER_SIZE + (count - first) * INDEX_ENTRY_SIZE);
+            count += taken;
+            i += taken;
+        }
+
+        directory.buffer.putLong(record + D_LAST_BLOCK, block);
+        directory.buffer.putLong(record + D_COUNT, count);
+    }
+
+    // Append entries to the active segment, starting a new one if they don't fit; returns the location of the
+    // first byte. Must be called while holding io.
+    private long appendData(byte[] bytes) throws IOException {
+        if (activeSize > 0 && activeSize + bytes.length > SEGMENT_SIZE) {
+            active.force(false);
+            open.put(activeNumber, active);
+
+            activeNumber++;
+            active = new RandomAccessFile(segmentFile(activeNumber), "rw").getChannel();
+            activeSize = 0;
+        }
+
+        long location = (long) activeNumber << 32 | activeSize;
+
+        writeFully(active, ByteBuffer.wrap(bytes), activeSize);
+        activeSize += bytes.length;
+        return location;
+    }
+
+    // Must be called while holding io
+    private long allocateBlock(long previous, long first, int capacity) throws IOException {
+        long block = indexEnd;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+        header.putLong(B_PREVIOUS, previous).putLong(B_FIRST, first).putInt(B_CAPACITY, capacity);
+        writeFully(index, header, block);
+
+        // The last byte too, so the file already covers the whole block when it is next opened
+        indexEnd = block + BLOCK_HEADER_SIZE + (long) capacity * INDEX_ENTRY_SIZE;
+        writeFully(index, ByteBuffer.allocate(1), indexEnd - 1);
+
+        return block;
+    }
+
+    // DIRECTORY
+
+    // Directory slot of the account, or -1 if it has no entries and create is false.
+    // Must be called while holding io.
+    private int slotOf(String accountId, boolean create) throws IOException {
+        int slot = byId.find(accountId.hashCode(), candidate -> accountId.equals(idAt(candidate)));
+
+        if (slot >= 0 || !create) {
+            return slot;
+        }
+
+        byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_LENGTH) {
+            throw new IOException("Account id too long for the ledger: " + accountId);
+        }
+
+        MappedByteBuffer header = directory.buffer;
+        slot = header.getInt(H_ACCOUNT_COUNT);
+        directory.ensure(slot + 1);
+
+        MappedByteBuffer records = directory.buffer;
+        int record = directory.offset(slot);
+
+        records.putLong(record + D_COUNT, 0);
+        records.putLong(record + D_LAST_BLOCK, -1);
+        records.putInt(record + D_ID_LENGTH, id.length);
+        records.put(record + D_ID, id);
+        records.putInt(H_ACCOUNT_COUNT, slot + 1);
+
+        byId.add(accountId.hashCode(), slot);
+        return slot;
+    }
+
+    private String idAt(int slot) {
+        int record = directory.offset(slot);
+        byte[] id = new byte[directory.buffer.getInt(record + D_ID_LENGTH)];
+
+        directory.buffer.get(record + D_ID, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private long countOf(int slot) {
+        return directory.buffer.getLong(directory.offset(slot) + D_COUNT);
+    }
+
+    // QUERIES
+
+    // Queries first write out the account's buffered appends so they see every entry
+
+    public long getCount(String accountId) {
+        synchronized (io) {
+            try {
+                int slot = writeOut(accountId);
+                return slot >= 0 ? countOf(slot) : 0;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                return 0;
+            }
+        }
+    }
+
+    // Entries [offset, offset + limit) of the history, oldest first
+    public List<Transaction> getPage(String accountId, long offset, int limit) {
+        List<Transaction> page = new ArrayList<Transaction>(Math.max(0, limit));
+
+        synchronized (io) {
+            try {
+                int slot = writeOut(accountId);
+                long end = slot >= 0 ? Math.min(countOf(slot), offset + limit) : 0;
+
+                for (long i = Math.max(0, offset); i < end; i++) {
+                    page.add(read(slot, i));
+                }
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to read account ledger.");
+            }
+        }
+
+        return page;
+    }
+
+    // Up to limit entries with from <= timestamp < to, oldest first
+    public List<Transaction> getRange(String accountId, long from, long to, int limit) {
+        List<Transaction> page = new ArrayList<Transaction>();
+
+        synchronized (io) {
+            try {
+                int slot = writeOut(accountId);
+                long count = slot >= 0 ? countOf(slot) : 0;
+
+                for (long i = slot >= 0 ? firstAtOrAfter(slot, from) : 0; i < count && page.size() < limit; i++) {
+                    if (timestampAt(slot, i) >= to) {
+                        break;
+                    }
+
+                    page.add(read(slot, i));
+                }
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to read account ledger.");
+            }
+        }
+
+        return page;
+    }
+
+    // Balance of the account as of the timestamp (inclusive), from the last entry at or before it; every entry
+    // records the balance it left behind. 0 if the account had no entries yet.
+    public long getBalanceAt(String accountId, long timestamp) {
+        synchronized (io) {
+            try {
+                int slot = writeOut(accountId);
+
+                if (slot < 0) {
+                    return 0;
+                }
+
+                // Entries are in time order, so the one before the first later entry is the last at or before it
+                long i = timestamp == Long.MAX_VALUE ? countOf(slot) : firstAtOrAfter(slot, timestamp + 1);
+
+                return i > 0 ? read(slot, i - 1).getBalance() : 0;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to read account ledger.");
+                return 0;
+            }
+        }
+    }
+
+    // Write out the account's buffered appends; returns its slot, or -1 if it has no entries.
+    // Must be called while holding io.
+    private int writeOut(String accountId) throws IOException {
+        writePending(accountId, takePending(accountId));
+        return slotOf(accountId, false);
+    }
+
+    // Binary search over the index for the first entry at or after the timestamp
+    private long firstAtOrAfter(int slot, long timestamp) throws IOException {
+        long low = 0;
+        long high = countOf(slot);
+
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+
+            if (timestampAt(slot, mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private long timestampAt(int slot, long i) throws IOException {
+        return readIndex(slot, i).getLong(Long.BYTES);
+    }
+
+    // Walk back from the account's last block to the one holding entry i
+    private ByteBuffer readIndex(int slot, long i) throws IOException {
+        long block = directory.buffer.getLong(directory.offset(slot) + D_LAST_BLOCK);
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+        while (true) {
+            if (block < 0) {
+                throw new IOException("Missing ledger index block");
+            }
+
+            readFully(index, header.clear(), block, "Truncated ledger index");
+
+            if (i >= header.getLong(B_FIRST)) {
+                break;
+            }
+
+            block = header.getLong(B_PREVIOUS);
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        readFully(index, entry, block + BLOCK_HEADER_SIZE + (i - header.getLong(B_FIRST)) * INDEX_ENTRY_SIZE, "Truncated ledger index");
+        return entry;
+    }
+
+    private Transaction read(int slot, long i) throws IOException {
+        long location = readIndex(slot, i).getLong(0);
+        FileChannel segment = segment((int) (location >>> 32));
+        long offset = location & 0xFFFFFFFFL;
+
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(segment, length, offset, "Truncated ledger segment");
+
+        ByteBuffer entry = ByteBuffer.allocate(length.getInt(0));
+        readFully(segment, entry, offset + Integer.BYTES, "Truncated ledger segment");
+        entry.flip();
+
+        return TransactionCodec.read(entry);
+    }
+
+    // FILES
+
+    // Must be called while holding io
+    private FileChannel segment(int number) throws IOException {
+        if (number == activeNumber) {
+            return active;
+        }
+
+        FileChannel segment = open.get(number);
+
+        if (segment == null) {
+            segment = new RandomAccessFile(segmentFile(number), "r").getChannel();
+            open.put(number, segment);
+        }
+
+        return segment;
+    }
+
+    private File segmentFile(int number) {
+        return new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // Appends go on at the end of the newest segment
+    private void openActiveSegment() throws IOException {
+        activeNumber = 0;
+
+        for (File file : segmentFiles()) {
+            String name = file.getName();
+            activeNumber = Math.max(activeNumber, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+        }
+
+        active = new RandomAccessFile(segmentFile(activeNumber), "rw").getChannel();
+        activeSize = active.size();
+    }
+
+    private File[] segmentFiles() {
+        File[] files = dir.listFiles((parent, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private void deleteFiles() {
+        new File(dir, DIRECTORY_FILE).delete();
+        new File(dir, INDEX_FILE).delete();
+
+        for (File file : segmentFiles()) {
+            file.delete();
+        }
+    }
+
+    private static boolean isComplete(File directoryFile) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(directoryFile, "r")) {
+            in.seek(H_COMPLETE);
+            return in.readInt() != 0;
+        }
+    }
+
+    // Copy the history of every account from the ledger files of before, one data and index file per account,
+    // then mark the directory complete and delete them. Until then a crash just imports them again.
+    private void importLegacy() throws IOException {
+        LegacyLedger.read(dir, (accountId, encoded, timestamps, count) -> {
+            Pending batch = new Pending();
+
+            for (int i = 0; i < count; i++) {
+                batch.add(encoded[i], timestamps[i]);
+            }
+
+            writePending(accountId, batch);
+        });
+
+        sync();
+        directory.buffer.putInt(H_COMPLETE, 1);
+        directory.buffer.force();
+
+        LegacyLedger.delete(dir);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, String truncated) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(truncated);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.dollarsbank.persistence;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+
+// Accounts as kept by a storage backend, looked up by id or by owner.
+public interface AccountRepository {
+
+    // Null if there is no such account
+    Account findById(String accountId) throws IOException;
+
+    // Username of the account's owner, or null if there is no such account
+    String findOwner(String accountId) throws IOException;
+
+    // A customer's accounts, the primary one first
+    List<Account> findByOwner(String username) throws IOException;
+
+    // Insert or update every account of the customers
+    void saveAll(Collection<Customer> owners) throws IOException;
+
+}
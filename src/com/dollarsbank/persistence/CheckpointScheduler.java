@@ -0,0 +1,249 @@
+package com.dollarsbank.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Tracks which customers changed and writes only those to disk from a background thread,
+// either every interval or as soon as enough customers are dirty.
+//
+// Balance changes must hold the read side of getLock(), then the lock stripe of every customer they change. A
+// checkpoint takes the write side only to take the dirty customers and the journal position together and claim every
+// stripe. Once it lets go, changes wait only for the stripes still held, each released as soon as its customers are
+// serialized.
+public class CheckpointScheduler {
+
+    // Configurable through system properties
+    private static final long INTERVAL_MILLIS = Long.getLong("dollarsbank.checkpoint.interval", 30000);
+    private static final int DIRTY_THRESHOLD = Integer.getInteger("dollarsbank.checkpoint.threshold", 1000);
+    private static final int COMPACT_AFTER = Integer.getInteger("dollarsbank.checkpoint.compact", 16);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TransactionJournal journal;
+    private final AccountLedger ledger;
+    private final ScheduledExecutorService executor;
+
+    // Customers changed since the last checkpoint, keyed by username
+    private volatile Map<String, Customer> dirty = new ConcurrentHashMap<>();
+
+    // Customers captured by the checkpoint being written, until they are on disk
+    private volatile Map<String, Customer> writing = Collections.emptyMap();
+
+    // Number of dirty customers that triggers a checkpoint before the interval is up
+    private volatile int dirtyThreshold = DIRTY_THRESHOLD;
+
+    // Set once a threshold checkpoint is queued so a burst of changes only queues one
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+
+    // Checkpoints written so far; only the checkpoint thread increments it
+    private volatile long written = 0;
+
+    // Lock stripes of the engine applying changes and the stripe of each customer; until attached, customers are
+    // serialized under the write lock
+    private volatile Lock[] stripes;
+    private volatile ToIntFunction<Customer> stripeOf;
+
+    public CheckpointScheduler(TransactionJournal journal, AccountLedger ledger) {
+        this.journal = journal;
+        this.ledger = ledger;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.executor.scheduleWithFixedDelay(this::checkpoint, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public ReadWriteLock getLock() {
+        return this.lock;
+    }
+
+    // Called by the engine once its stripes exist
+    public void attach(Lock[] stripes, ToIntFunction<Customer> stripeOf) {
+        this.stripeOf = stripeOf;
+        this.stripes = stripes;
+    }
+
+    public int getDirtyThreshold() {
+        return this.dirtyThreshold;
+    }
+
+    // Bulk loads raise this so they checkpoint on the interval only, rather than every few thousand changes
+    public void setDirtyThreshold(int dirtyThreshold) {
+        this.dirtyThreshold = dirtyThreshold;
+    }
+
+    // Record that a customer changed; callers hold the read side of getLock()
+    public void markDirty(Customer customer) {
+        Map<String, Customer> current = dirty;
+        current.put(customer.getUsername(), customer);
+
+        if (current.size() >= dirtyThreshold) {
+            requestCheckpoint();
+        }
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    public long getWrittenCount() {
+        return this.written;
+    }
+
+    // True while the customer has changes that aren't on disk yet, i.e. it is dirty or being written
+    public boolean isPending(String username) {
+        return dirty.containsKey(username) || writing.containsKey(username);
+    }
+
+    // Write the dirty customers out soon, e.g. so a cache can let go of them; a request already queued covers this one
+    public void requestCheckpoint() {
+        if (queued.compareAndSet(false, true)) {
+            executor.execute(this::checkpoint);
+        }
+    }
+
+    // Capture the dirty customers under the lock, then serialize them stripe by stripe and write them out
+    private void checkpoint() {
+        Lock[] stripes = this.stripes;
+        Map<String, Customer> captured;
+        byte[] serialized = null;
+        long journalSeq;
+
+        lock.writeLock().lock();
+        try {
+            queued.set(false);
+
+            if (dirty.isEmpty()) {
+                return;
+            }
+
+            captured = dirty;
+            writing = captured;
+            dirty = new ConcurrentHashMap<>();
+            journalSeq = journal != null ? journal.getLastSequence() : 0;
+
+            if (stripes == null) {
+                serialized = FileStorageUtility.serializeCustomers(storable(captured.values()));
+            } else {
+                // In stripe order, like every other holder of several; nothing holds one while it waits for this lock
+                for (Lock stripe : stripes) {
+                    stripe.lock();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (serialized == null) {
+            serialized = serializeByStripe(stripes, storable(captured.values()));
+        }
+
+        // History must be on disk before the checkpoint that lets the journal go
+        if (ledger != null) {
+            ledger.flush();
+        }
+
+        if (!FileStorageUtility.writeCheckpoint(serialized, journalSeq)) {
+            // Try these customers again next time, unless they've changed since
+            for (Customer customer : captured.values()) {
+                dirty.putIfAbsent(customer.getUsername(), customer);
+            }
+
+            writing = Collections.emptyMap();
+            return;
+        }
+
+        writing = Collections.emptyMap();
+        written++;
+
+        // The journal is only needed for changes newer than this checkpoint
+        if (journal != null) {
+            journal.truncate(journalSeq);
+        }
+
+        if (FileStorageUtility.getCheckpointCount() >= COMPACT_AFTER) {
+            FileStorageUtility.compactCheckpoints();
+        }
+    }
+
+    // Serialize customers while every stripe is held, letting each go once its customers are written; the held
+    // stripes keep them as they were at the journal position taken with them
+    private byte[] serializeByStripe(Lock[] stripes, List<Customer> customers) {
+        List<List<Customer>> byStripe = new ArrayList<>(stripes.length);
+        int[] released = { 0 };
+
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                byStripe.add(new ArrayList<>());
+            }
+
+            for (Customer customer : customers) {
+                byStripe.get(stripeOf.applyAsInt(customer)).add(customer);
+            }
+
+            return FileStorageUtility.serializeCustomers(byStripe, stripe -> {
+                stripes[stripe].unlock();
+                released[0] = stripe + 1;
+            });
+        } finally {
+            for (int i = released[0]; i < stripes.length; i++) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    // A customer the storage engine can't hold would fail this checkpoint and every retry of it, holding back every
+    // other customer and the journal with it. Registration refuses such customers, so this only catches one from
+    // before it did; it is reported and left out.
+    private static List<Customer> storable(Collection<Customer> customers) {
+        List<Customer> storable = new ArrayList<>(customers.size());
+
+        for (Customer customer : customers) {
+            if (FileStorageUtility.fits(customer)) {
+                storable.add(customer);
+            } else {
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save " + customer.getUsername() + ", details too long to store.");
+            }
+        }
+
+        return storable;
+    }
+
+    // Flush whatever is still dirty and wait for it to reach the disk
+    public void checkpointNow() {
+        try {
+            executor.submit(this::checkpoint).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save data.");
+        }
+    }
+
+    public void shutdown() {
+        checkpointNow();
+        executor.shutdown();
+    }
+
+}
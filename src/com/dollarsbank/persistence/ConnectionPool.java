@@ -0,0 +1,107 @@
+package com.dollarsbank.persistence;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bounded pool of JDBC connections. Connections are opened on demand up to the limit; past it,
+// borrowers wait for one to be released. Opening an embedded database connection costs far more
+// than a query, so they are kept open until the pool is closed.
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final int maxSize;
+
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.idle = new ArrayBlockingQueue<>(this.maxSize);
+    }
+
+    public Connection borrow() throws SQLException {
+        while (true) {
+            if (closed) {
+                throw new SQLException("Connection pool is closed");
+            }
+
+            Connection connection = idle.poll();
+            if (connection != null) {
+                return connection;
+            }
+
+            // Open another one if the pool isn't full yet
+            if (opened.incrementAndGet() <= maxSize) {
+                try {
+                    return DriverManager.getConnection(url, user, password);
+                } catch (SQLException e) {
+                    opened.decrementAndGet();
+                    throw e;
+                }
+            }
+            opened.decrementAndGet();
+
+            // Wait a while for one to come back; a broken one is dropped instead, freeing room to open another
+            try {
+                connection = idle.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection", e);
+            }
+
+            if (connection != null) {
+                return connection;
+            }
+        }
+    }
+
+    // Hand a connection back; one left mid-transaction is rolled back first
+    public void release(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+
+            if (!closed && idle.offer(connection)) {
+                return;
+            }
+        } catch (SQLException e) {
+            // Broken, drop it below
+        }
+
+        opened.decrementAndGet();
+        closeQuietly(connection);
+    }
+
+    public void close() {
+        closed = true;
+
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            opened.decrementAndGet();
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
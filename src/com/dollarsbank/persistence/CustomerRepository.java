@@ -0,0 +1,32 @@
+package com.dollarsbank.persistence;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.dollarsbank.model.Customer;
+
+// Customers as kept by a storage backend, each with every account and their recent transactions.
+// Lookups go through the backend's indexes, so a single customer can be read without loading the rest.
+public interface CustomerRepository {
+
+    // Each returns null if there is no such customer
+    Customer findByUsername(String username) throws IOException;
+
+    Customer findByEmail(String email) throws IOException;
+
+    Customer findByAccountId(String accountId) throws IOException;
+
+    int count() throws IOException;
+
+    // Every customer, e.g. to load the whole bank at start-up
+    List<Customer> findAll() throws IOException;
+
+    // Username and full name of every customer, without reading the rest of them
+    void forEachName(BiConsumer<String, String> action) throws IOException;
+
+    // Insert or update the customers along with their accounts
+    void saveAll(Collection<Customer> customers) throws IOException;
+
+}
@@ -0,0 +1,113 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.IdAllocator;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Lease store of an IdAllocator: the end of the last block of ids it leased.
+//
+// The file holds two slots, written alternately, so a crash while writing one leaves the other intact.
+// Reading takes the valid slot with the higher generation.
+//
+// Slot: [long generation][int leaseEnd][int crc32]
+public class IdLeaseFile implements IdAllocator.LeaseStore {
+
+    public static final String IDDIR = FileStorageUtility.DATADIR + "/ids";
+
+    private static final int SLOT_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final File file;
+
+    // Generation of the newest slot on disk
+    private long generation;
+
+    public IdLeaseFile(String path) {
+        this.file = new File(path);
+    }
+
+    // Lease customer ids and account numbers from files in the data directory
+    public static void attachAll() {
+        Customer.getIds().attach(new IdLeaseFile(IDDIR + "/customers.seq"));
+        Account.getNumbers().attach(new IdLeaseFile(IDDIR + "/accounts.seq"));
+    }
+
+    @Override
+    public synchronized int readLease() {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int leaseEnd = 0;
+
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate(2 * SLOT_SIZE);
+            int read = 0;
+
+            // A file cut short by a crash just has fewer slots
+            while (buf.hasRemaining() && read >= 0) {
+                read = channel.read(buf);
+            }
+            buf.flip();
+
+            while (buf.remaining() >= SLOT_SIZE) {
+                long slotGeneration = buf.getLong();
+                int slotEnd = buf.getInt();
+                int crc = buf.getInt();
+
+                if (crc == checksum(slotGeneration, slotEnd) && slotGeneration > generation) {
+                    generation = slotGeneration;
+                    leaseEnd = slotEnd;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to read id leases.");
+        }
+
+        return leaseEnd;
+    }
+
+    // Overwrite the older slot and force it to disk
+    @Override
+    public synchronized void writeLease(int leaseEnd) {
+        long next = generation + 1;
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate(SLOT_SIZE);
+            buf.putLong(next).putInt(leaseEnd).putInt(checksum(next, leaseEnd)).flip();
+
+            long position = (next % 2) * SLOT_SIZE;
+            while (buf.hasRemaining()) {
+                channel.write(buf, position + buf.position());
+            }
+
+            channel.force(false);
+            generation = next;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save id leases.");
+        }
+    }
+
+    // Helpers
+
+    private static int checksum(long generation, int leaseEnd) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(generation).putInt(leaseEnd).flip());
+        return (int) crc.getValue();
+    }
+
+}
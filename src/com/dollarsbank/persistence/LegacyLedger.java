@@ -0,0 +1,104 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Reads the account ledger as it was kept before segments, so it can be imported into the current format.
+//
+// Every account had an append-only data file <accountId>.dat of encoded transactions and an index file
+// <accountId>.idx of fixed-width [long dataOffset][long timestamp] entries, an entry running up to the next
+// one or the end of the data file.
+class LegacyLedger {
+
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES;
+
+    // Entries read at a time, so a long history isn't read into memory all at once
+    private static final int BATCH = 4096;
+
+    interface Entries {
+        void accept(String accountId, byte[][] encoded, long[] timestamps, int count) throws IOException;
+    }
+
+    private LegacyLedger() {
+    }
+
+    static boolean exists(File dir) {
+        return indexFiles(dir).length > 0;
+    }
+
+    // Every entry of every account, oldest first, a batch at a time
+    static void read(File dir, Entries entries) throws IOException {
+        byte[][] encoded = new byte[BATCH][];
+        long[] timestamps = new long[BATCH];
+
+        for (File indexFile : indexFiles(dir)) {
+            String accountId = accountId(indexFile);
+            File dataFile = new File(dir, accountId + DATA_SUFFIX);
+
+            if (!dataFile.exists()) {
+                continue;
+            }
+
+            try (FileChannel index = new RandomAccessFile(indexFile, "r").getChannel();
+                    FileChannel data = new RandomAccessFile(dataFile, "r").getChannel()) {
+                // Entries cut short by a crash mid-append are left out
+                long count = index.size() / INDEX_ENTRY_SIZE;
+                long dataSize = data.size();
+
+                for (long first = 0; first < count; first += BATCH) {
+                    int batch = (int) Math.min(BATCH, count - first);
+
+                    // One more entry than the batch where there is one, for where the last entry ends
+                    int read = (int) Math.min(batch + 1, count - first);
+                    ByteBuffer offsets = ByteBuffer.allocate(read * INDEX_ENTRY_SIZE);
+                    readFully(index, offsets, first * INDEX_ENTRY_SIZE);
+
+                    for (int i = 0; i < batch; i++) {
+                        long offset = offsets.getLong(i * INDEX_ENTRY_SIZE);
+                        long end = i + 1 < read ? offsets.getLong((i + 1) * INDEX_ENTRY_SIZE) : dataSize;
+
+                        ByteBuffer entry = ByteBuffer.allocate((int) (end - offset));
+                        readFully(data, entry, offset);
+
+                        encoded[i] = entry.array();
+                        timestamps[i] = offsets.getLong(i * INDEX_ENTRY_SIZE + Long.BYTES);
+                    }
+
+                    entries.accept(accountId, encoded, timestamps, batch);
+                }
+            }
+        }
+    }
+
+    static void delete(File dir) {
+        for (File indexFile : indexFiles(dir)) {
+            new File(dir, accountId(indexFile) + DATA_SUFFIX).delete();
+            indexFile.delete();
+        }
+    }
+
+    private static File[] indexFiles(File dir) {
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(INDEX_SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private static String accountId(File indexFile) {
+        String name = indexFile.getName();
+        return name.substring(0, name.length() - INDEX_SUFFIX.length());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated ledger file");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.model.Transaction;
+
+// Reads a version 3 account store so it can be converted to the current format.
+//
+// Version 3 kept one record per customer holding the primary account, with the customer's other accounts and
+// recent transactions in the profile:
+//
+// Header:  [int magic][int version][int active][int count][long journalSeq][long reserved]
+// Record:  [int accountNo][int customerId][long openDate]
+//          2 x [long balanceCents][long profileOffset][int profileLength][int profileChanges]
+// Profile: [username...email (7 length-prefixed UTF-8 strings)][int txCount] txCount x transactions
+//          savings or several accounts only: [kind of the primary account], then if there are more accounts
+//          [int count] count x ([int accountNo][long openDate][long balanceCents][kind])
+// Kind:    [byte CHECKING], or [byte SAVINGS][double interestRate][int monthlyWithdrawals][long withdrawalFee][int withdrawalsThisMonth]
+class LegacyMappedStore {
+
+    private static final int VERSION_3 = 3;
+
+    private static final int H_ACTIVE = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_JOURNAL_SEQ = 16;
+
+    private static final int RECORD_SIZE = 64;
+    private static final int R_ACCOUNT_NO = 0;
+    private static final int R_CUSTOMER_ID = 4;
+    private static final int R_OPEN_DATE = 8;
+    private static final int R_VERSIONS = 16;
+    private static final int VERSION_SIZE = 24;
+    private static final int V_BALANCE = 0;
+    private static final int V_PROFILE_OFFSET = 8;
+    private static final int V_PROFILE_LENGTH = 16;
+
+    private static final byte SAVINGS = 1;
+
+    // Customers converted per snapshot of the new store
+    private static final int BATCH = 4096;
+
+    private final MappedByteBuffer records;
+    private final FileChannel accountChannel;
+    private final FileChannel profileChannel;
+
+    private LegacyMappedStore(File accountFile, File profileFile) throws IOException {
+        this.accountChannel = new RandomAccessFile(accountFile, "r").getChannel();
+        this.profileChannel = new RandomAccessFile(profileFile, "r").getChannel();
+        this.records = accountChannel.map(FileChannel.MapMode.READ_ONLY, 0, accountChannel.size());
+    }
+
+    static boolean isLegacy(String accountPath) throws IOException {
+        File file = new File(accountPath);
+
+        if (file.length() < MappedAccountStore.HEADER_SIZE) {
+            return false;
+        }
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.readInt() == MappedAccountStore.MAGIC && in.readInt() == VERSION_3;
+        }
+    }
+
+    // Write every customer of the version 3 store into a new store, then move the new account file over the old
+    // one. Until that move the old store is untouched, so a crash part way just converts it again at the next start.
+    // Recent transactions the ledger doesn't have yet are added to it, older than anything it has are left out.
+    static void upgrade(String accountPath, String legacyProfilePath, String customerPath, String profilePath, AccountLedger ledger) throws IOException {
+        File accountFile = new File(accountPath);
+        File temp = new File(accountPath + ".tmp");
+
+        // Left behind by an earlier attempt
+        temp.delete();
+        new File(customerPath).delete();
+        new File(profilePath).delete();
+
+        LegacyMappedStore legacy = new LegacyMappedStore(accountFile, new File(legacyProfilePath));
+        MappedAccountStore target = new MappedAccountStore(temp.getPath(), customerPath, profilePath, null);
+
+        try {
+            AccountLedger.Replay history = ledger != null ? ledger.startReplay() : null;
+            List<Customer> batch = new ArrayList<>(BATCH);
+            long journalSeq = legacy.records.getLong(H_JOURNAL_SEQ);
+            int count = legacy.records.getInt(H_COUNT);
+
+            for (int slot = 0; slot < count; slot++) {
+                Customer customer = legacy.readCustomer(slot);
+                batch.add(customer);
+
+                if (history != null) {
+                    for (Transaction transaction : customer.getTransactions()) {
+                        history.append(transaction);
+                    }
+                }
+
+                if (batch.size() == BATCH) {
+                    target.snapshot(batch, journalSeq);
+                    batch.clear();
+                }
+            }
+
+            target.snapshot(batch, journalSeq);
+
+            if (history != null) {
+                history.finish();
+                ledger.flush();
+            }
+        } finally {
+            target.close();
+            legacy.close();
+        }
+
+        Files.move(temp.toPath(), accountFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        new File(legacyProfilePath).delete();
+    }
+
+    private Customer readCustomer(int slot) throws IOException {
+        int record = MappedAccountStore.HEADER_SIZE + slot * RECORD_SIZE;
+        int version = record + R_VERSIONS + records.getInt(H_ACTIVE) * VERSION_SIZE;
+
+        ByteBuffer profile = ByteBuffer.allocate(records.getInt(version + V_PROFILE_LENGTH));
+        long position = records.getLong(version + V_PROFILE_OFFSET);
+
+        while (profile.hasRemaining()) {
+            if (profileChannel.read(profile, position + profile.position()) < 0) {
+                throw new IOException("Truncated profile segment");
+            }
+        }
+        profile.flip();
+
+        String[] fields = new String[7];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = TransactionCodec.getUtf(profile);
+        }
+
+        Transaction[] transactions = new Transaction[profile.getInt()];
+        for (int i = 0; i < transactions.length; i++) {
+            transactions[i] = TransactionCodec.read(profile);
+        }
+
+        String accountId = Account.idOf(records.getInt(record + R_ACCOUNT_NO));
+        long balance = records.getLong(version + V_BALANCE);
+
+        Account account = profile.hasRemaining() ? readAccount(profile, accountId, balance) : new Account(accountId, balance);
+        account.setOpenDate(MappedAccountStore.toDate(records.getLong(record + R_OPEN_DATE)));
+
+        Customer customer = new Customer(records.getInt(record + R_CUSTOMER_ID), fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6], account);
+
+        int others = profile.hasRemaining() ? profile.getInt() : 0;
+        for (int i = 0; i < others; i++) {
+            accountId = Account.idOf(profile.getInt());
+            long openDate = profile.getLong();
+            balance = profile.getLong();
+
+            Account other = readAccount(profile, accountId, balance);
+            other.setOpenDate(MappedAccountStore.toDate(openDate));
+            customer.addAccount(other);
+        }
+
+        for (Transaction transaction : transactions) {
+            customer.getTransactions().add(transaction);
+        }
+
+        return customer;
+    }
+
+    private static Account readAccount(ByteBuffer profile, String accountId, long balance) {
+        if (profile.get() != SAVINGS) {
+            return new Account(accountId, balance);
+        }
+
+        SavingsAccount savings = new SavingsAccount(accountId, balance, profile.getDouble(), profile.getInt(), profile.getLong());
+        savings.setWithdrawalsThisMonth(profile.getInt());
+        return savings;
+    }
+
+    private void close() throws IOException {
+        profileChannel.close();
+        accountChannel.close();
+    }
+
+}
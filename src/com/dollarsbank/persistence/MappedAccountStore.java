@@ -0,0 +1,696 @@
+package com.dollarsbank.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Binary storage engine that keeps every account in a fixed-width record file and every customer in another,
+// both accessed through a MappedByteBuffer, with customer profiles in a separate append-only segment.
+//
+// Customers are read one at a time as they are needed (see CustomerCache). Opening the store only scans the
+// records to index them by account number, customer id and the hashes of usernames and emails; a hash lookup
+// reads the candidate's profile to confirm it. Balances are read straight from the account records.
+//
+// Every record holds two versions of its mutable columns. A snapshot writes the inactive version of
+// each changed record and then flips the active version in the header, so a crash mid-snapshot always
+// leaves the previous snapshot intact.
+//
+// Header:   [int magic][int version][int active][int accountCount][long journalSeq][int customerCount][int reserved]
+// Account:  [int accountNo][int customerSlot][long openDate][int kind][int reserved]
+//           2 x [long balanceCents][long withdrawalFee][double interestRate][int monthlyWithdrawals][int withdrawalsThisMonth]
+// Customer: [int customerId][int usernameHash]
+//           2 x [long profileOffset][int profileLength][int profileChanges][int emailHash][int reserved]
+// The customer file leaves the same 32 bytes unused at its start.
+// Profile:  [username, email, password, first name, last name, address, phone (length-prefixed UTF-8)]
+//           [int accountCount] accountCount x [int accountNo], the primary account first
+//
+// Only the balance columns change as money moves, so a transaction never appends to the profile segment.
+// Recent transactions aren't stored here at all, they are read back from the account ledger.
+public class MappedAccountStore implements CustomerRepository, AccountRepository {
+
+    public static final String ACCOUNTFILE = FileStorageUtility.DATADIR + "/accounts.dat";
+    public static final String CUSTOMERFILE = FileStorageUtility.DATADIR + "/customers.dat";
+    public static final String PROFILEFILE = FileStorageUtility.DATADIR + "/customer-profiles.dat";
+
+    // Profiles of a version 3 store, see LegacyMappedStore
+    public static final String LEGACY_PROFILEFILE = FileStorageUtility.DATADIR + "/profiles.dat";
+
+    static final int MAGIC = 0x44424B41;
+    // Version 2: balances are stored in cents instead of double bits
+    // Version 3: transactions are stored as structured records instead of rendered text
+    // Version 4: every account has a record of its own, and recent transactions come from the ledger
+    static final int FORMAT_VERSION = 4;
+
+    static final int HEADER_SIZE = RecordFile.HEADER_SIZE;
+    private static final int H_ACTIVE = 8;
+    private static final int H_ACCOUNT_COUNT = 12;
+    private static final int H_JOURNAL_SEQ = 16;
+    private static final int H_CUSTOMER_COUNT = 24;
+
+    private static final int ACCOUNT_RECORD_SIZE = 88;
+    private static final int A_ACCOUNT_NO = 0;
+    private static final int A_CUSTOMER_SLOT = 4;
+    private static final int A_OPEN_DATE = 8;
+    private static final int A_KIND = 16;
+    private static final int A_VERSIONS = 24;
+    private static final int ACCOUNT_VERSION_SIZE = 32;
+    private static final int AV_BALANCE = 0;
+    private static final int AV_WITHDRAWAL_FEE = 8;
+    private static final int AV_INTEREST_RATE = 16;
+    private static final int AV_MONTHLY_WITHDRAWALS = 24;
+    private static final int AV_WITHDRAWALS_THIS_MONTH = 28;
+
+    private static final int CUSTOMER_RECORD_SIZE = 56;
+    private static final int C_CUSTOMER_ID = 0;
+    private static final int C_USERNAME_HASH = 4;
+    private static final int C_VERSIONS = 8;
+    private static final int CUSTOMER_VERSION_SIZE = 24;
+    private static final int CV_PROFILE_OFFSET = 0;
+    private static final int CV_PROFILE_LENGTH = 8;
+    private static final int CV_PROFILE_CHANGES = 12;
+    private static final int CV_EMAIL_HASH = 16;
+
+    private static final int CHECKING = 0;
+    private static final int SAVINGS = 1;
+
+    private final RecordFile accounts;
+    private final RecordFile customers;
+    private final FileChannel profileChannel;
+
+    // Where recent transactions are read from; without one customers come back with none
+    private final AccountLedger ledger;
+
+    // Readers hold the read lock while they read the active version; a snapshot takes the write lock only to
+    // publish new records and flip the active version
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock; written only by snapshots
+    private final SlotIndex byAccountNo = new SlotIndex();
+    private final SlotIndex byCustomerId = new SlotIndex();
+    private final SlotIndex byUsername = new SlotIndex();
+    private final SlotIndex byEmail = new SlotIndex();
+
+    // Slots written by the last snapshot, whose inactive version is now out of date; null until the first
+    // snapshot since opening, which brings every slot up to date
+    private BitSet staleAccounts = null;
+    private BitSet staleCustomers = null;
+
+    public MappedAccountStore(String accountPath, String customerPath, String profilePath, AccountLedger ledger) throws IOException {
+        File accountFile = new File(accountPath);
+
+        if (accountFile.getParentFile() != null) {
+            accountFile.getParentFile().mkdirs();
+        }
+
+        boolean isNew = accountFile.length() < HEADER_SIZE;
+
+        this.accounts = new RecordFile(accountFile, ACCOUNT_RECORD_SIZE);
+        this.customers = new RecordFile(new File(customerPath), CUSTOMER_RECORD_SIZE);
+        this.profileChannel = new RandomAccessFile(new File(profilePath), "rw").getChannel();
+        this.ledger = ledger;
+
+        MappedByteBuffer header = accounts.buffer;
+
+        if (isNew) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, FORMAT_VERSION);
+            header.putInt(H_ACTIVE, 0);
+            header.putInt(H_ACCOUNT_COUNT, 0);
+            header.putLong(H_JOURNAL_SEQ, 0);
+            header.putInt(H_CUSTOMER_COUNT, 0);
+            header.force();
+        } else {
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not an account store: " + accountPath);
+            }
+
+            if (header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unsupported account store version: " + header.getInt(4));
+            }
+        }
+
+        buildIndexes();
+    }
+
+    // Open the store in the data directory, converting a version 3 store first
+    public static MappedAccountStore open(AccountLedger ledger) throws IOException {
+        if (LegacyMappedStore.isLegacy(ACCOUNTFILE)) {
+            LegacyMappedStore.upgrade(ACCOUNTFILE, LEGACY_PROFILEFILE, CUSTOMERFILE, PROFILEFILE, ledger);
+        }
+
+        return new MappedAccountStore(ACCOUNTFILE, CUSTOMERFILE, PROFILEFILE, ledger);
+    }
+
+    // Index every record from its fixed-width columns alone, reserving the stored ids as it goes
+    private void buildIndexes() {
+        MappedByteBuffer accountRecords = accounts.buffer;
+        MappedByteBuffer customerRecords = customers.buffer;
+        int active = activeVersion();
+
+        for (int slot = 0; slot < getAccountCount(); slot++) {
+            int accountNo = accountRecords.getInt(accounts.offset(slot) + A_ACCOUNT_NO);
+            byAccountNo.add(accountNo, slot);
+            Account.getNumbers().reserve(accountNo);
+        }
+
+        for (int slot = 0; slot < getCustomerCount(); slot++) {
+            int record = customers.offset(slot);
+            int customerId = customerRecords.getInt(record + C_CUSTOMER_ID);
+
+            byCustomerId.add(customerId, slot);
+            byUsername.add(customerRecords.getInt(record + C_USERNAME_HASH), slot);
+            byEmail.add(customerRecords.getInt(customerVersion(slot, active) + CV_EMAIL_HASH), slot);
+            Customer.getIds().reserve(customerId);
+        }
+    }
+
+    public long getJournalSequence() {
+        return accounts.buffer.getLong(H_JOURNAL_SEQ);
+    }
+
+    private int getAccountCount() {
+        return accounts.buffer.getInt(H_ACCOUNT_COUNT);
+    }
+
+    private int getCustomerCount() {
+        return accounts.buffer.getInt(H_CUSTOMER_COUNT);
+    }
+
+    private int activeVersion() {
+        return accounts.buffer.getInt(H_ACTIVE);
+    }
+
+    private int accountVersion(int slot, int version) {
+        return accounts.offset(slot) + A_VERSIONS + version * ACCOUNT_VERSION_SIZE;
+    }
+
+    private int customerVersion(int slot, int version) {
+        return customers.offset(slot) + C_VERSIONS + version * CUSTOMER_VERSION_SIZE;
+    }
+
+    // CUSTOMERS
+
+    @Override
+    public Customer findByUsername(String username) throws IOException {
+        Customer customer;
+
+        lock.readLock().lock();
+        try {
+            int slot = byUsername.find(username.hashCode(), candidate -> username.equals(readUsername(candidate)));
+            customer = slot >= 0 ? readCustomer(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return withRecent(customer);
+    }
+
+    @Override
+    public Customer findByEmail(String email) throws IOException {
+        String key = emailKey(email);
+        Customer customer;
+
+        lock.readLock().lock();
+        try {
+            int active = activeVersion();
+
+            // Entries for emails a customer has since changed are left behind, so the active one is checked too
+            int slot = byEmail.find(key.hashCode(), candidate ->
+                customers.buffer.getInt(customerVersion(candidate, active) + CV_EMAIL_HASH) == key.hashCode()
+                    && key.equals(emailKey(readEmail(candidate))));
+
+            customer = slot >= 0 ? readCustomer(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return withRecent(customer);
+    }
+
+    @Override
+    public Customer findByAccountId(String accountId) throws IOException {
+        Customer customer;
+
+        lock.readLock().lock();
+        try {
+            int slot = byAccountNo.find(Account.numberOf(accountId));
+            customer = slot >= 0 ? readCustomer(accounts.buffer.getInt(accounts.offset(slot) + A_CUSTOMER_SLOT)) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return withRecent(customer);
+    }
+
+    @Override
+    public int count() {
+        lock.readLock().lock();
+        try {
+            return getCustomerCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> findAll() throws IOException {
+        List<Customer> all = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < getCustomerCount(); slot++) {
+                all.add(readCustomer(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (Customer customer : all) {
+            withRecent(customer);
+        }
+
+        return all;
+    }
+
+    @Override
+    public void forEachName(BiConsumer<String, String> action) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < getCustomerCount(); slot++) {
+                ByteBuffer profile = readProfile(slot);
+                String username = TransactionCodec.getUtf(profile);
+
+                // Email and password
+                TransactionCodec.getUtf(profile);
+                TransactionCodec.getUtf(profile);
+
+                action.accept(username, TransactionCodec.getUtf(profile) + " " + TransactionCodec.getUtf(profile));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Changed customers are written by the next snapshot anyway; this writes them now, at the current journal position
+    @Override
+    public void saveAll(Collection<Customer> changed) throws IOException {
+        snapshot(changed, getJournalSequence());
+    }
+
+    // ACCOUNTS
+
+    @Override
+    public Account findById(String accountId) throws IOException {
+        lock.readLock().lock();
+        try {
+            int slot = byAccountNo.find(Account.numberOf(accountId));
+            return slot >= 0 ? readAccount(slot, activeVersion()) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String findOwner(String accountId) throws IOException {
+        lock.readLock().lock();
+        try {
+            int slot = byAccountNo.find(Account.numberOf(accountId));
+            return slot >= 0 ? readUsername(accounts.buffer.getInt(accounts.offset(slot) + A_CUSTOMER_SLOT)) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Account> findByOwner(String username) throws IOException {
+        List<Account> owned = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            int slot = byUsername.find(username.hashCode(), candidate -> username.equals(readUsername(candidate)));
+
+            if (slot >= 0) {
+                ByteBuffer profile = readProfile(slot);
+                skipDetails(profile);
+                owned.addAll(readAccounts(profile));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return owned;
+    }
+
+    // READING
+    // Callers hold the read lock
+
+    private Customer readCustomer(int slot) throws IOException {
+        int active = activeVersion();
+        ByteBuffer profile = readProfile(slot);
+
+        String username = TransactionCodec.getUtf(profile);
+        String email = TransactionCodec.getUtf(profile);
+        String password = TransactionCodec.getUtf(profile);
+        String fName = TransactionCodec.getUtf(profile);
+        String lName = TransactionCodec.getUtf(profile);
+        String address = TransactionCodec.getUtf(profile);
+        String phoneNumber = TransactionCodec.getUtf(profile);
+
+        List<Account> owned = readAccounts(profile);
+        int customerId = customers.buffer.getInt(customers.offset(slot) + C_CUSTOMER_ID);
+
+        Customer customer = new Customer(customerId, username, password, fName, lName, address, phoneNumber, email, owned.get(0));
+        for (int i = 1; i < owned.size(); i++) {
+            customer.addAccount(owned.get(i));
+        }
+
+        // Counting on from the stored profile, so any later change tells the next snapshot to write it again
+        customer.setProfileChanges(customers.buffer.getInt(customerVersion(slot, active) + CV_PROFILE_CHANGES));
+        return customer;
+    }
+
+    // Accounts listed in a profile, positioned just after the customer's details
+    private List<Account> readAccounts(ByteBuffer profile) throws IOException {
+        int active = activeVersion();
+        int count = profile.getInt();
+        List<Account> owned = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int accountNo = profile.getInt();
+            int slot = byAccountNo.find(accountNo);
+
+            if (slot < 0) {
+                throw new IOException("No record of account " + Account.idOf(accountNo));
+            }
+
+            owned.add(readAccount(slot, active));
+        }
+
+        return owned;
+    }
+
+    private Account readAccount(int slot, int active) {
+        MappedByteBuffer records = accounts.buffer;
+        int record = accounts.offset(slot);
+        int version = accountVersion(slot, active);
+
+        String accountId = Account.idOf(records.getInt(record + A_ACCOUNT_NO));
+        long balance = records.getLong(version + AV_BALANCE);
+        Account account;
+
+        if (records.getInt(record + A_KIND) == SAVINGS) {
+            SavingsAccount savings = new SavingsAccount(accountId, balance, records.getDouble(version + AV_INTEREST_RATE),
+                    records.getInt(version + AV_MONTHLY_WITHDRAWALS), records.getLong(version + AV_WITHDRAWAL_FEE));
+            savings.setWithdrawalsThisMonth(records.getInt(version + AV_WITHDRAWALS_THIS_MONTH));
+            account = savings;
+        } else {
+            account = new Account(accountId, balance);
+        }
+
+        account.setOpenDate(toDate(records.getLong(record + A_OPEN_DATE)));
+        return account;
+    }
+
+    private String readUsername(int slot) throws IOException {
+        return TransactionCodec.getUtf(readProfile(slot));
+    }
+
+    private String readEmail(int slot) throws IOException {
+        ByteBuffer profile = readProfile(slot);
+        TransactionCodec.getUtf(profile);
+        return TransactionCodec.getUtf(profile);
+    }
+
+    private ByteBuffer readProfile(int slot) throws IOException {
+        int version = customerVersion(slot, activeVersion());
+
+        ByteBuffer profile = ByteBuffer.allocate(customers.buffer.getInt(version + CV_PROFILE_LENGTH));
+        long position = customers.buffer.getLong(version + CV_PROFILE_OFFSET);
+
+        while (profile.hasRemaining()) {
+            if (profileChannel.read(profile, position + profile.position()) < 0) {
+                throw new IOException("Truncated profile segment");
+            }
+        }
+        profile.flip();
+
+        return profile;
+    }
+
+    private static void skipDetails(ByteBuffer profile) {
+        for (int i = 0; i < 7; i++) {
+            TransactionCodec.getUtf(profile);
+        }
+    }
+
+    // Fill in the most recent transactions of every account from the ledger, without holding the lock
+    private Customer withRecent(Customer customer) {
+        if (customer == null || ledger == null) {
+            return customer;
+        }
+
+        int capacity = customer.getTransactions().capacity();
+        List<Transaction> recent = new ArrayList<>();
+
+        for (Account account : customer.getAccounts()) {
+            long count = ledger.getCount(account.getAccountId());
+            recent.addAll(ledger.getPage(account.getAccountId(), Math.max(0, count - capacity), capacity));
+        }
+
+        // Stable, so entries of one account in the same millisecond keep their order
+        recent.sort(Comparator.comparingLong(Transaction::getTimestamp));
+
+        for (Transaction transaction : recent.subList(Math.max(0, recent.size() - capacity), recent.size())) {
+            customer.getTransactions().add(transaction);
+        }
+
+        return customer;
+    }
+
+    // SNAPSHOT
+
+    // Write the changed customers into the inactive version, then make it the active one.
+    // Of the unchanged records only those the last snapshot wrote have their columns copied across,
+    // the inactive version of every other one already matches; nothing is re-encoded.
+    // Only one snapshot runs at a time.
+    public void snapshot(Collection<Customer> changed, long journalSeq) throws IOException {
+        int active = activeVersion();
+        int inactive = 1 - active;
+        int accountCount = getAccountCount();
+        int customerCount = getCustomerCount();
+
+        BitSet writtenAccounts = new BitSet();
+        BitSet writtenCustomers = new BitSet();
+
+        // [key, slot] pairs published with the new version
+        List<int[]> newAccounts = new ArrayList<>();
+        List<int[]> newCustomers = new ArrayList<>();
+        List<int[]> newUsernames = new ArrayList<>();
+        List<int[]> newEmails = new ArrayList<>();
+
+        copyStale(staleAccounts, accountCount, active, inactive, true);
+        copyStale(staleCustomers, customerCount, active, inactive, false);
+
+        // Should this snapshot fail, the next one can't tell which inactive versions it left behind
+        staleAccounts = null;
+        staleCustomers = null;
+
+        for (Customer customer : changed) {
+            int slot = byCustomerId.find(customer.getCustomerId());
+            boolean isNew = slot < 0;
+
+            // New customers get a fresh record at the end of the file
+            if (isNew) {
+                slot = customerCount++;
+                customers.ensure(customerCount);
+
+                int record = customers.offset(slot);
+                customers.buffer.putInt(record + C_CUSTOMER_ID, customer.getCustomerId());
+                customers.buffer.putInt(record + C_USERNAME_HASH, customer.getUsername().hashCode());
+
+                newCustomers.add(new int[] { customer.getCustomerId(), slot });
+                newUsernames.add(new int[] { customer.getUsername().hashCode(), slot });
+            }
+
+            int from = customerVersion(slot, active);
+            int to = customerVersion(slot, inactive);
+            int profileChanges = customer.getProfileChanges();
+
+            // Profile segment is only appended to when something in the profile changed since it was last written
+            if (!isNew && customers.buffer.getInt(from + CV_PROFILE_CHANGES) == profileChanges) {
+                customers.buffer.putLong(to + CV_PROFILE_OFFSET, customers.buffer.getLong(from + CV_PROFILE_OFFSET));
+                customers.buffer.putInt(to + CV_PROFILE_LENGTH, customers.buffer.getInt(from + CV_PROFILE_LENGTH));
+                customers.buffer.putInt(to + CV_EMAIL_HASH, customers.buffer.getInt(from + CV_EMAIL_HASH));
+            } else {
+                ByteBuffer profile = encodeProfile(customer);
+                long position = profileChannel.size();
+                int length = profile.remaining();
+                int emailHash = emailKey(customer.getEmail()).hashCode();
+
+                while (profile.hasRemaining()) {
+                    profileChannel.write(profile, position + profile.position());
+                }
+
+                customers.buffer.putLong(to + CV_PROFILE_OFFSET, position);
+                customers.buffer.putInt(to + CV_PROFILE_LENGTH, length);
+                customers.buffer.putInt(to + CV_EMAIL_HASH, emailHash);
+                newEmails.add(new int[] { emailHash, slot });
+            }
+
+            customers.buffer.putInt(to + CV_PROFILE_CHANGES, profileChanges);
+            writtenCustomers.set(slot);
+
+            for (Account account : customer.getAccounts()) {
+                int accountSlot = byAccountNo.find(account.getAccountNo());
+
+                if (accountSlot < 0) {
+                    accountSlot = accountCount++;
+                    accounts.ensure(accountCount);
+
+                    int record = accounts.offset(accountSlot);
+                    accounts.buffer.putInt(record + A_ACCOUNT_NO, account.getAccountNo());
+                    accounts.buffer.putInt(record + A_CUSTOMER_SLOT, slot);
+                    accounts.buffer.putLong(record + A_OPEN_DATE, toMillis(account.getOpenDate()));
+                    accounts.buffer.putInt(record + A_KIND, account instanceof SavingsAccount ? SAVINGS : CHECKING);
+
+                    newAccounts.add(new int[] { account.getAccountNo(), accountSlot });
+                }
+
+                writeAccount(accountVersion(accountSlot, inactive), account);
+                writtenAccounts.set(accountSlot);
+            }
+        }
+
+        // Profile data has to reach the disk before any record points at it
+        profileChannel.force(false);
+        customers.buffer.force();
+        accounts.buffer.force();
+
+        // Commit: record counts, journal position and active version all live in the header
+        lock.writeLock().lock();
+        try {
+            publish(byAccountNo, newAccounts);
+            publish(byCustomerId, newCustomers);
+            publish(byUsername, newUsernames);
+            publish(byEmail, newEmails);
+
+            MappedByteBuffer header = accounts.buffer;
+            header.putInt(H_ACCOUNT_COUNT, accountCount);
+            header.putInt(H_CUSTOMER_COUNT, customerCount);
+            header.putLong(H_JOURNAL_SEQ, journalSeq);
+            header.putInt(H_ACTIVE, inactive);
+            header.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        staleAccounts = writtenAccounts;
+        staleCustomers = writtenCustomers;
+    }
+
+    // Copy the active version of the slots the last snapshot wrote over their inactive one
+    private void copyStale(BitSet stale, int count, int active, int inactive, boolean isAccount) {
+        BitSet copied = stale;
+
+        if (copied == null) {
+            copied = new BitSet(count);
+            copied.set(0, count);
+        }
+
+        MappedByteBuffer records = isAccount ? accounts.buffer : customers.buffer;
+        int size = isAccount ? ACCOUNT_VERSION_SIZE : CUSTOMER_VERSION_SIZE;
+
+        for (int slot = copied.nextSetBit(0); slot >= 0 && slot < count; slot = copied.nextSetBit(slot + 1)) {
+            int from = isAccount ? accountVersion(slot, active) : customerVersion(slot, active);
+            int to = isAccount ? accountVersion(slot, inactive) : customerVersion(slot, inactive);
+
+            for (int i = 0; i < size; i += Long.BYTES) {
+                records.putLong(to + i, records.getLong(from + i));
+            }
+        }
+    }
+
+    private void writeAccount(int version, Account account) {
+        MappedByteBuffer records = accounts.buffer;
+
+        records.putLong(version + AV_BALANCE, account.getBalance());
+
+        if (account instanceof SavingsAccount) {
+            SavingsAccount savings = (SavingsAccount) account;
+            records.putLong(version + AV_WITHDRAWAL_FEE, savings.getWithdrawalFee());
+            records.putDouble(version + AV_INTEREST_RATE, savings.getInterestRate());
+            records.putInt(version + AV_MONTHLY_WITHDRAWALS, savings.getMonthlyWithdrawals());
+            records.putInt(version + AV_WITHDRAWALS_THIS_MONTH, savings.getWithdrawalsThisMonth());
+        }
+    }
+
+    private static void publish(SlotIndex index, List<int[]> entries) {
+        for (int[] entry : entries) {
+            index.add(entry[0], entry[1]);
+        }
+    }
+
+    public void close() throws IOException {
+        profileChannel.force(true);
+        profileChannel.close();
+        customers.close();
+        accounts.close();
+    }
+
+    private static ByteBuffer encodeProfile(Customer customer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        TransactionCodec.putUtf(out, customer.getUsername());
+        TransactionCodec.putUtf(out, customer.getEmail());
+        TransactionCodec.putUtf(out, customer.getPassword());
+        TransactionCodec.putUtf(out, customer.getFName());
+        TransactionCodec.putUtf(out, customer.getLName());
+        TransactionCodec.putUtf(out, customer.getAddress());
+        TransactionCodec.putUtf(out, customer.getPhoneNumber());
+
+        List<Account> owned = customer.getAccounts();
+        out.writeInt(owned.size());
+
+        for (Account account : owned) {
+            out.writeInt(account.getAccountNo());
+        }
+
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    static long toMillis(LocalDateTime date) {
+        return date.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime toDate(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Fixed-width records after a header, mapped with room to grow
+class RecordFile {
+
+    // Room left at the start of the file for the owner's header
+    static final int HEADER_SIZE = 32;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final FileChannel channel;
+    private final int recordSize;
+
+    // Replaced as the file grows; an old mapping still shows the same file
+    volatile MappedByteBuffer buffer;
+    private int capacity;
+
+    RecordFile(File file, int recordSize) throws IOException {
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.recordSize = recordSize;
+        map((int) Math.max(0, (channel.size() - HEADER_SIZE) / recordSize));
+    }
+
+    private void map(int newCapacity) throws IOException {
+        this.capacity = Math.max(newCapacity, INITIAL_CAPACITY);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * recordSize);
+    }
+
+    void ensure(int count) throws IOException {
+        if (count > capacity) {
+            map(Math.max(count, capacity * 2));
+        }
+    }
+
+    int offset(int slot) {
+        return HEADER_SIZE + slot * recordSize;
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.dollarsbank.persistence;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Open-addressing multimap from an int key to slots. Where the keys are hashes several slots share one,
+// so lookups check each candidate.
+class SlotIndex {
+
+    private int[] keys = new int[16];
+    private int[] slots = emptySlots(16);
+    private int size = 0;
+
+    interface Match {
+        boolean test(int slot) throws IOException;
+    }
+
+    void add(int key, int slot) {
+        if ((size + 1) * 4 > slots.length * 3) {
+            grow();
+        }
+
+        int mask = slots.length - 1;
+        int i = bucket(key, mask);
+
+        for (; slots[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key && slots[i] == slot) {
+                return;
+            }
+        }
+
+        keys[i] = key;
+        slots[i] = slot;
+        size++;
+    }
+
+    // First slot under the key that matches, or -1
+    int find(int key, Match match) throws IOException {
+        int mask = slots.length - 1;
+
+        for (int i = bucket(key, mask); slots[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key && match.test(slots[i])) {
+                return slots[i];
+            }
+        }
+
+        return -1;
+    }
+
+    int find(int key) {
+        int mask = slots.length - 1;
+
+        for (int i = bucket(key, mask); slots[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return slots[i];
+            }
+        }
+
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldSlots = slots;
+
+        keys = new int[oldSlots.length * 2];
+        slots = emptySlots(oldSlots.length * 2);
+        size = 0;
+
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] >= 0) {
+                add(oldKeys[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private static int bucket(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int[] emptySlots(int length) {
+        int[] slots = new int[length];
+        Arrays.fill(slots, -1);
+        return slots;
+    }
+
+}
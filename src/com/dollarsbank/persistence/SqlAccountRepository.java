@@ -0,0 +1,201 @@
+package com.dollarsbank.persistence;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.SavingsAccount;
+
+// Accounts in the accounts table, one row per account keyed by account number, see SqlStore for the schema.
+// position orders a customer's accounts, 0 being the primary one.
+public class SqlAccountRepository implements AccountRepository {
+
+    // Rows sent to the database per batch
+    static final int BATCH_SIZE = 1000;
+
+    private static final byte CHECKING = 0;
+    private static final byte SAVINGS = 1;
+
+    static final String COLUMNS = "account_no, owner, position, kind, balance, open_date, interest_rate, monthly_withdrawals, withdrawal_fee, withdrawals_this_month";
+
+    private static final String FIND_BY_ID = "SELECT " + COLUMNS + " FROM accounts WHERE account_no = ?";
+    private static final String FIND_OWNER = "SELECT owner FROM accounts WHERE account_no = ?";
+    private static final String FIND_BY_OWNER = "SELECT " + COLUMNS + " FROM accounts WHERE owner = ? ORDER BY position";
+    private static final String MERGE = "MERGE INTO accounts (" + COLUMNS + ") KEY (account_no) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final ConnectionPool pool;
+
+    public SqlAccountRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Account findById(String accountId) throws IOException {
+        int accountNo = Account.numberOf(accountId);
+        if (accountNo <= 0) {
+            return null;
+        }
+
+        try {
+            Connection connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID)) {
+                statement.setInt(1, accountNo);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? readAccount(rows) : null;
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read account " + accountId, e);
+        }
+    }
+
+    @Override
+    public String findOwner(String accountId) throws IOException {
+        int accountNo = Account.numberOf(accountId);
+        if (accountNo <= 0) {
+            return null;
+        }
+
+        try {
+            Connection connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(FIND_OWNER)) {
+                statement.setInt(1, accountNo);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? rows.getString(1) : null;
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read account " + accountId, e);
+        }
+    }
+
+    @Override
+    public List<Account> findByOwner(String username) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try {
+                return findByOwner(connection, username);
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read the accounts of " + username, e);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Customer> owners) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try {
+                connection.setAutoCommit(false);
+                saveAll(connection, owners);
+                connection.commit();
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to save accounts", e);
+        }
+    }
+
+    // On the caller's connection, so it can be part of a larger transaction
+
+    List<Account> findByOwner(Connection connection, String username) throws SQLException {
+        List<Account> accounts = new ArrayList<>(2);
+
+        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_OWNER)) {
+            statement.setString(1, username);
+
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    accounts.add(readAccount(rows));
+                }
+            }
+        }
+
+        return accounts;
+    }
+
+    void saveAll(Connection connection, Collection<Customer> owners) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(MERGE)) {
+            int pending = 0;
+
+            for (Customer owner : owners) {
+                List<Account> accounts = owner.getAccounts();
+
+                for (int position = 0; position < accounts.size(); position++) {
+                    bindAccount(statement, owner.getUsername(), position, accounts.get(position));
+                    statement.addBatch();
+
+                    if (++pending == BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    // Account from a row holding COLUMNS, in that order
+    static Account readAccount(ResultSet rows) throws SQLException {
+        String accountId = Account.idOf(rows.getInt(1));
+        long balance = rows.getLong(5);
+        Account account;
+
+        if (rows.getByte(4) == SAVINGS) {
+            SavingsAccount savings = new SavingsAccount(accountId, balance, rows.getDouble(7), rows.getInt(8), rows.getLong(9));
+            savings.setWithdrawalsThisMonth(rows.getInt(10));
+            account = savings;
+        } else {
+            account = new Account(accountId, balance);
+        }
+
+        account.setOpenDate(LocalDateTime.ofInstant(Instant.ofEpochMilli(rows.getLong(6)), ZoneOffset.UTC));
+        return account;
+    }
+
+    private static void bindAccount(PreparedStatement statement, String owner, int position, Account account) throws SQLException {
+        statement.setInt(1, account.getAccountNo());
+        statement.setString(2, owner);
+        statement.setInt(3, position);
+        statement.setLong(5, account.getBalance());
+        statement.setLong(6, account.getOpenDate().toInstant(ZoneOffset.UTC).toEpochMilli());
+
+        if (account instanceof SavingsAccount) {
+            SavingsAccount savings = (SavingsAccount) account;
+            statement.setByte(4, SAVINGS);
+            statement.setDouble(7, savings.getInterestRate());
+            statement.setInt(8, savings.getMonthlyWithdrawals());
+            statement.setLong(9, savings.getWithdrawalFee());
+            statement.setInt(10, savings.getWithdrawalsThisMonth());
+        } else {
+            statement.setByte(4, CHECKING);
+            statement.setDouble(7, 0);
+            statement.setInt(8, 0);
+            statement.setLong(9, 0);
+            statement.setInt(10, 0);
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.dollarsbank.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionHistory;
+
+// Customers in the customers table keyed by username, their accounts in the accounts table, see SqlStore for the schema.
+// Recent transactions are kept in one column per customer, encoded as in the mapped store's profiles:
+// [int txCount] txCount x transactions, see TransactionCodec
+public class SqlCustomerRepository implements CustomerRepository {
+
+    private static final String COLUMNS = "username, customer_id, password, first_name, last_name, address, phone, email, email_key, recent";
+
+    private static final String FIND_BY_USERNAME = "SELECT " + COLUMNS + " FROM customers WHERE username = ?";
+    private static final String FIND_BY_EMAIL = "SELECT " + COLUMNS + " FROM customers WHERE email_key = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM customers";
+    private static final String FIND_ALL = "SELECT " + COLUMNS + " FROM customers";
+    private static final String FIND_NAMES = "SELECT username, first_name, last_name FROM customers";
+    private static final String FIND_ALL_ACCOUNTS = "SELECT " + SqlAccountRepository.COLUMNS + " FROM accounts ORDER BY owner, position";
+    private static final String MERGE = "MERGE INTO customers (" + COLUMNS + ") KEY (username) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private final SqlAccountRepository accounts;
+
+    public SqlCustomerRepository(ConnectionPool pool, SqlAccountRepository accounts) {
+        this.pool = pool;
+        this.accounts = accounts;
+    }
+
+    @Override
+    public Customer findByUsername(String username) throws IOException {
+        return findOne(FIND_BY_USERNAME, username);
+    }
+
+    // Emails are matched ignoring case, like the sign-up check
+    @Override
+    public Customer findByEmail(String email) throws IOException {
+        return findOne(FIND_BY_EMAIL, email.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public Customer findByAccountId(String accountId) throws IOException {
+        String owner = accounts.findOwner(accountId);
+        return owner == null ? null : findByUsername(owner);
+    }
+
+    @Override
+    public int count() throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(COUNT)) {
+                rows.next();
+                return rows.getInt(1);
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to count customers", e);
+        }
+    }
+
+    // Two scans, one per table, matched up in memory rather than a query per customer
+    @Override
+    public List<Customer> findAll() throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try (Statement statement = connection.createStatement()) {
+                Map<String, List<Account>> owned = new HashMap<>();
+
+                try (ResultSet rows = statement.executeQuery(FIND_ALL_ACCOUNTS)) {
+                    while (rows.next()) {
+                        owned.computeIfAbsent(rows.getString(2), owner -> new ArrayList<>(2)).add(SqlAccountRepository.readAccount(rows));
+                    }
+                }
+
+                List<Customer> customers = new ArrayList<>(owned.size());
+
+                try (ResultSet rows = statement.executeQuery(FIND_ALL)) {
+                    while (rows.next()) {
+                        Customer customer = readCustomer(rows, owned.get(rows.getString(1)));
+                        if (customer != null) {
+                            customers.add(customer);
+                        }
+                    }
+                }
+
+                return customers;
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read customers", e);
+        }
+    }
+
+    @Override
+    public void forEachName(BiConsumer<String, String> action) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(FIND_NAMES)) {
+                while (rows.next()) {
+                    action.accept(rows.getString(1), rows.getString(2) + " " + rows.getString(3));
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read customer names", e);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Customer> customers) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try {
+                connection.setAutoCommit(false);
+                saveAll(connection, customers);
+                connection.commit();
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to save customers", e);
+        }
+    }
+
+    // On the caller's connection, so it can be part of a larger transaction
+    void saveAll(Connection connection, Collection<Customer> customers) throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(MERGE)) {
+            int pending = 0;
+
+            for (Customer customer : customers) {
+                statement.setString(1, customer.getUsername());
+                statement.setInt(2, customer.getCustomerId());
+                statement.setString(3, customer.getPassword());
+                statement.setString(4, customer.getFName());
+                statement.setString(5, customer.getLName());
+                statement.setString(6, customer.getAddress());
+                statement.setString(7, customer.getPhoneNumber());
+                statement.setString(8, customer.getEmail());
+                statement.setString(9, customer.getEmail().toLowerCase(Locale.ROOT));
+                statement.setBytes(10, encodeRecent(customer.getTransactions()));
+                statement.addBatch();
+
+                if (++pending == SqlAccountRepository.BATCH_SIZE) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+
+        accounts.saveAll(connection, customers);
+    }
+
+    // Helpers
+
+    private Customer findOne(String query, String key) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, key);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    if (!rows.next()) {
+                        return null;
+                    }
+
+                    String username = rows.getString(1);
+                    return readCustomer(rows, accounts.findByOwner(connection, username));
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read customer " + key, e);
+        }
+    }
+
+    // Customer from a row holding COLUMNS, or null if none of its accounts were found
+    private static Customer readCustomer(ResultSet rows, List<Account> owned) throws SQLException {
+        if (owned == null || owned.isEmpty()) {
+            return null;
+        }
+
+        Customer customer = new Customer(rows.getInt(2), rows.getString(1), rows.getString(3), rows.getString(4), rows.getString(5),
+                rows.getString(6), rows.getString(7), rows.getString(8), owned.get(0));
+
+        for (int i = 1; i < owned.size(); i++) {
+            customer.addAccount(owned.get(i));
+        }
+
+        ByteBuffer recent = ByteBuffer.wrap(rows.getBytes(10));
+        int count = recent.getInt();
+
+        for (int i = 0; i < count; i++) {
+            customer.getTransactions().add(TransactionCodec.read(recent));
+        }
+
+        return customer;
+    }
+
+    private static byte[] encodeRecent(TransactionHistory history) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(history.size());
+        for (Transaction transaction : history) {
+            TransactionCodec.write(out, transaction);
+        }
+
+        return bytes.toByteArray();
+    }
+
+}
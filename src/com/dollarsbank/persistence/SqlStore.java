@@ -0,0 +1,182 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Storage engine keeping customers and accounts in an embedded SQL database, reached through JDBC.
+// The database driver is only needed at run time, on the class path next to the application.
+//
+// customers: username PK, customer_id, password, first_name, last_name, address, phone, email,
+//            email_key (lower-case email, indexed), recent (encoded transactions)
+// accounts:  account_no PK, owner (indexed with position), position, kind, balance, open_date,
+//            interest_rate, monthly_withdrawals, withdrawal_fee, withdrawals_this_month
+// meta:      name PK, amount; holds the journal sequence of the last snapshot
+//
+// A snapshot writes the changed customers and the journal sequence in one transaction, so a crash
+// leaves either all of it or none of it.
+public class SqlStore {
+
+    // Defaults to a database file in the data directory
+    public static final String URL = System.getProperty("dollarsbank.sql.url",
+            "jdbc:h2:file:" + new File(FileStorageUtility.DATADIR, "bank").getAbsolutePath());
+
+    private static final String USER = System.getProperty("dollarsbank.sql.user", "sa");
+    private static final String PASSWORD = System.getProperty("dollarsbank.sql.password", "");
+
+    // Connections kept open at once
+    private static final int POOL_SIZE = Integer.getInteger("dollarsbank.sql.pool", 4);
+
+    // Characters each text column holds. A customer with a longer value would fail every snapshot it is part of,
+    // so one is refused when it signs up, see fits().
+    private static final int MAX_TEXT = 255;
+    private static final int MAX_ADDRESS = 1024;
+    private static final int MAX_PHONE = 64;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS customers (username VARCHAR(" + MAX_TEXT + ") PRIMARY KEY, customer_id INT NOT NULL,"
+                + " password VARCHAR(" + MAX_TEXT + "), first_name VARCHAR(" + MAX_TEXT + "), last_name VARCHAR(" + MAX_TEXT + "),"
+                + " address VARCHAR(" + MAX_ADDRESS + "), phone VARCHAR(" + MAX_PHONE + "), email VARCHAR(" + MAX_TEXT + "),"
+                + " email_key VARCHAR(" + MAX_TEXT + "), recent VARBINARY(65535))",
+        "CREATE INDEX IF NOT EXISTS customers_email ON customers (email_key)",
+        "CREATE INDEX IF NOT EXISTS customers_phone ON customers (phone)",
+        "CREATE TABLE IF NOT EXISTS accounts (account_no INT PRIMARY KEY, owner VARCHAR(" + MAX_TEXT + ") NOT NULL,"
+                + " position INT NOT NULL, kind TINYINT NOT NULL, balance BIGINT NOT NULL, open_date BIGINT NOT NULL,"
+                + " interest_rate DOUBLE PRECISION, monthly_withdrawals INT, withdrawal_fee BIGINT, withdrawals_this_month INT)",
+        "CREATE INDEX IF NOT EXISTS accounts_owner ON accounts (owner, position)",
+        "CREATE TABLE IF NOT EXISTS meta (name VARCHAR(64) PRIMARY KEY, amount BIGINT NOT NULL)"
+    };
+
+    private static final String JOURNAL_SEQ = "journal_seq";
+
+    private static final String READ_META = "SELECT amount FROM meta WHERE name = ?";
+    private static final String WRITE_META = "MERGE INTO meta (name, amount) KEY (name) VALUES (?, ?)";
+
+    private final ConnectionPool pool;
+    private final SqlAccountRepository accounts;
+    private final SqlCustomerRepository customers;
+
+    // H2 writes committed data out in the background; it is forced to disk after a snapshot
+    private final boolean checkpointSync;
+
+    public SqlStore(String url, String user, String password, int poolSize) throws IOException {
+        this.pool = new ConnectionPool(url, user, password, poolSize);
+        this.accounts = new SqlAccountRepository(pool);
+        this.customers = new SqlCustomerRepository(pool, accounts);
+        this.checkpointSync = url.startsWith("jdbc:h2:");
+
+        try {
+            Connection connection = pool.borrow();
+            try (Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            pool.close();
+            throw new IOException("Unable to open database " + url, e);
+        }
+    }
+
+    public static SqlStore open() throws IOException {
+        return new SqlStore(URL, USER, PASSWORD, POOL_SIZE);
+    }
+
+    // Whether every field of the customer fits its column
+    public static boolean fits(Customer customer) {
+        return fits(customer.getUsername(), MAX_TEXT) && fits(customer.getPassword(), MAX_TEXT)
+            && fits(customer.getFName(), MAX_TEXT) && fits(customer.getLName(), MAX_TEXT)
+            && fits(customer.getAddress(), MAX_ADDRESS) && fitsContact(customer.getEmail(), customer.getPhoneNumber());
+    }
+
+    public static boolean fitsContact(String email, String phoneNumber) {
+        return fits(email, MAX_TEXT) && fits(phoneNumber, MAX_PHONE);
+    }
+
+    private static boolean fits(String value, int maxLength) {
+        return value == null || value.length() <= maxLength;
+    }
+
+    public CustomerRepository customers() {
+        return this.customers;
+    }
+
+    public AccountRepository accounts() {
+        return this.accounts;
+    }
+
+    public long getJournalSequence() throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(READ_META)) {
+                statement.setString(1, JOURNAL_SEQ);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? rows.getLong(1) : 0;
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to read the journal sequence", e);
+        }
+    }
+
+    public Map<String, Customer> loadAll() throws IOException {
+        Map<String, Customer> users = new HashMap<>();
+
+        for (Customer customer : customers.findAll()) {
+            users.put(customer.getUsername(), customer);
+        }
+
+        return users;
+    }
+
+    // Write the changed customers with their accounts and the journal position in one transaction,
+    // then sync it to disk before returning like the other engines
+    public void snapshot(Collection<Customer> changed, long journalSeq) throws IOException {
+        try {
+            Connection connection = pool.borrow();
+            try {
+                connection.setAutoCommit(false);
+                customers.saveAll(connection, changed);
+
+                try (PreparedStatement statement = connection.prepareStatement(WRITE_META)) {
+                    statement.setString(1, JOURNAL_SEQ);
+                    statement.setLong(2, journalSeq);
+                    statement.executeUpdate();
+                }
+
+                connection.commit();
+                connection.setAutoCommit(true);
+
+                if (checkpointSync) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("CHECKPOINT SYNC");
+                    }
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Unable to save customers", e);
+        }
+    }
+
+    public void close() {
+        pool.close();
+    }
+
+}
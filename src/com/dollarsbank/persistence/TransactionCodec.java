@@ -0,0 +1,68 @@
+package com.dollarsbank.persistence;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
+
+// Binary encoding of a Transaction shared by the storage engines:
+// [byte type][long amount][long timestamp][long balance][accountId][counterparty][counterpartyAccountId]
+// Strings are length-prefixed UTF-8, with a length of -1 for null.
+class TransactionCodec {
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private TransactionCodec() {
+        // private constructor to make class un-instantiable
+    }
+
+    static void write(DataOutputStream out, Transaction transaction) throws IOException {
+        out.writeByte(transaction.getType().ordinal());
+        out.writeLong(transaction.getAmount());
+        out.writeLong(transaction.getTimestamp());
+        out.writeLong(transaction.getBalance());
+        putUtf(out, transaction.getAccountId());
+        putUtf(out, transaction.getCounterparty());
+        putUtf(out, transaction.getCounterpartyAccountId());
+    }
+
+    static Transaction read(ByteBuffer buf) {
+        TransactionType type = TYPES[buf.get()];
+        long amount = buf.getLong();
+        long timestamp = buf.getLong();
+        long balance = buf.getLong();
+
+        String accountId = getUtf(buf);
+        String counterparty = getUtf(buf);
+        String counterpartyAccountId = getUtf(buf);
+
+        return new Transaction(type, amount, accountId, counterparty, counterpartyAccountId, timestamp, balance);
+    }
+
+    static void putUtf(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String getUtf(ByteBuffer buf) {
+        int len = buf.getInt();
+
+        if (len < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
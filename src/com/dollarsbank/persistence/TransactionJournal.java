@@ -0,0 +1,959 @@
+package com.dollarsbank.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import com.dollarsbank.metrics.Metrics;
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.DataGeneratorStubUtil;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Append-only write-ahead log of every balance changing operation.
+// Records are appended to an in-memory buffer and made durable by a single sync thread
+// that writes and fsyncs everything pending at once (group commit), so each operation
+// costs a few dozen bytes instead of a rewrite of every customer.
+//
+// The log is segmented: once the active file reaches -Ddollarsbank.journal.segment bytes (64 MB by default) it is
+// renamed to journal-<last seq>.dat and a new one started. A checkpoint deletes the segments it covers, so the
+// journal stays short even when operations never stop long enough for the active file to be emptied.
+//
+// Record layout: [int length][long seq][long timestamp][byte op][payload...][int crc32]
+// Amounts are stored in cents.
+public class TransactionJournal {
+
+    public static final String JOURNALFILE = FileStorageUtility.DATADIR + "/journal.dat";
+
+    // Operation codes stored in each record
+    public static final byte OP_CREATE = 1;
+    public static final byte OP_DEPOSIT = 2;
+    public static final byte OP_WITHDRAWAL = 3;
+    public static final byte OP_TRANSFER = 4;
+    public static final byte OP_CONTACT = 5;
+    public static final byte OP_CREATE_SAVINGS = 6;
+    public static final byte OP_INTEREST = 7;
+    public static final byte OP_OPEN_ACCOUNT = 8;
+    public static final byte OP_OPEN_SAVINGS = 9;
+    public static final byte OP_ACCOUNT_DEPOSIT = 10;
+    public static final byte OP_ACCOUNT_WITHDRAWAL = 11;
+    public static final byte OP_ACCOUNT_TRANSFER = 12;
+
+    // OP_DEPOSIT, OP_WITHDRAWAL and OP_TRANSFER name only customers. They were written before customers could
+    // have several accounts and replay against the primary account; new records name the account as well.
+
+    // How long the sync thread waits to gather more records into one fsync
+    private static final long GROUP_COMMIT_MILLIS = 2;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Long.BYTES + Byte.BYTES;
+
+    // Strings are prefixed with an unsigned short length
+    private static final int MAX_FIELD = 0xFFFF;
+
+    private static final long SEGMENT_BYTES = Long.getLong("dollarsbank.journal.segment", 64L * 1024 * 1024);
+    private static final String SEQ_PADDING = "00000000000000000000";
+
+    // Partitions replayed at once, one thread each
+    private static final int REPLAY_THREADS = Integer.getInteger("dollarsbank.replay.threads", Runtime.getRuntime().availableProcessors());
+
+    private final File file;
+
+    // The active segment; replaced under the lock when it is rolled
+    private FileChannel channel;
+
+    // Rolled segments by the last sequence number in them; guarded by lock
+    private final TreeMap<Long, File> segments;
+
+    private final Object lock = new Object();
+
+    // Offset of the record currently being encoded into the pending buffer
+    private int recordStart;
+
+    // Records waiting for the next group commit, and the buffer currently being written out
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+
+    // Last sequence number handed out and last sequence number known to be on disk
+    private long appendedSeq;
+    private long durableSeq;
+
+    private boolean closed = false;
+    private IOException failure = null;
+
+    private final Thread syncThread;
+
+    public TransactionJournal(String path, long startSeq) throws IOException {
+        this.file = new File(path);
+
+        if (this.file.getParentFile() != null) {
+            this.file.getParentFile().mkdirs();
+        }
+
+        this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+        this.channel.position(this.channel.size());
+        this.segments = rolledSegments(this.file);
+        this.appendedSeq = startSeq;
+        this.durableSeq = startSeq;
+
+        this.syncThread = new Thread(this::syncLoop, "journal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    // Open the default journal and replay it on top of a freshly imported snapshot
+    public static TransactionJournal recover(Map<String, Customer> customers, AccountLedger ledger) {
+        return recover(JOURNALFILE, customers, FileStorageUtility.getSnapshotSequence(), ledger);
+    }
+
+    // Without a journal no change could be made durable, so the bank doesn't start
+    public static TransactionJournal recover(String path, Map<String, Customer> customers, long snapshotSeq, AccountLedger ledger) {
+        long lastSeq = replay(path, customers, snapshotSeq, ledger);
+
+        try {
+            return new TransactionJournal(path, Math.max(lastSeq, snapshotSeq));
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to open transaction journal " + path + ". The bank cannot start.");
+            throw new IllegalStateException("Unable to open transaction journal " + path, e);
+        }
+    }
+
+    public long getLastSequence() {
+        synchronized (lock) {
+            return this.appendedSeq;
+        }
+    }
+
+    // LOGGING
+
+    // Whether every field of the customer fits in a create record, checked before the customer is registered
+    public static boolean fits(Customer customer) {
+        String[] fields = {
+            customer.getUsername(), customer.getPassword(), customer.getFName(), customer.getLName(),
+            customer.getAddress(), customer.getPhoneNumber(), customer.getEmail()
+        };
+
+        for (String field : fields) {
+            // UTF-8 takes at most three bytes per char
+            if (field.length() * 3 > MAX_FIELD && field.getBytes(StandardCharsets.UTF_8).length > MAX_FIELD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long logCreate(Customer customer, long initialDeposit) {
+        byte[][] fields = {
+            utf(customer.getUsername()), utf(customer.getPassword()),
+            utf(customer.getFName()), utf(customer.getLName()),
+            utf(customer.getAddress()), utf(customer.getPhoneNumber()),
+            utf(customer.getEmail()), utf(customer.getAccount().getAccountId())
+        };
+
+        int size = Long.BYTES;
+        for (byte[] field : fields) {
+            size += Short.BYTES + field.length;
+        }
+
+        // Savings accounts also carry their terms: [double interestRate][int monthlyWithdrawals][long withdrawalFee]
+        SavingsAccount savings = customer.getAccount() instanceof SavingsAccount ? (SavingsAccount) customer.getAccount() : null;
+        if (savings != null) {
+            size += Double.BYTES + Integer.BYTES + Long.BYTES;
+        }
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(savings != null ? OP_CREATE_SAVINGS : OP_CREATE, size);
+            for (byte[] field : fields) {
+                putUtf(buf, field);
+            }
+            buf.putLong(initialDeposit);
+
+            if (savings != null) {
+                buf.putDouble(savings.getInterestRate());
+                buf.putInt(savings.getMonthlyWithdrawals());
+                buf.putLong(savings.getWithdrawalFee());
+            }
+            return endRecord(buf);
+        }
+    }
+
+    // Another account for an existing customer: [username][accountId][long initialDeposit], plus the terms of a savings account
+    public long logOpenAccount(String username, Account account, long initialDeposit) {
+        byte[] userBytes = utf(username);
+        byte[] accountBytes = utf(account.getAccountId());
+        int size = 2 * Short.BYTES + userBytes.length + accountBytes.length + Long.BYTES;
+
+        SavingsAccount savings = account instanceof SavingsAccount ? (SavingsAccount) account : null;
+        if (savings != null) {
+            size += Double.BYTES + Integer.BYTES + Long.BYTES;
+        }
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(savings != null ? OP_OPEN_SAVINGS : OP_OPEN_ACCOUNT, size);
+            putUtf(buf, userBytes);
+            putUtf(buf, accountBytes);
+            buf.putLong(initialDeposit);
+
+            if (savings != null) {
+                buf.putDouble(savings.getInterestRate());
+                buf.putInt(savings.getMonthlyWithdrawals());
+                buf.putLong(savings.getWithdrawalFee());
+            }
+            return endRecord(buf);
+        }
+    }
+
+    public long logDeposit(String username, String accountId, long amount) {
+        return logSingle(OP_ACCOUNT_DEPOSIT, username, accountId, amount);
+    }
+
+    public long logWithdrawal(String username, String accountId, long amount) {
+        return logSingle(OP_ACCOUNT_WITHDRAWAL, username, accountId, amount);
+    }
+
+    // [from][fromAccountId][to][toAccountId][long amount]
+    public long logTransfer(String from, String fromAccountId, String to, String toAccountId, long amount) {
+        byte[][] fields = { utf(from), utf(fromAccountId), utf(to), utf(toAccountId) };
+
+        int size = Long.BYTES;
+        for (byte[] field : fields) {
+            size += Short.BYTES + field.length;
+        }
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(OP_ACCOUNT_TRANSFER, size);
+            for (byte[] field : fields) {
+                putUtf(buf, field);
+            }
+            buf.putLong(amount);
+            return endRecord(buf);
+        }
+    }
+
+    public long logContactUpdate(String username, String email, String phoneNumber) {
+        byte[] userBytes = utf(username);
+        byte[] emailBytes = utf(email);
+        byte[] phoneBytes = utf(phoneNumber);
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(OP_CONTACT, 3 * Short.BYTES + userBytes.length + emailBytes.length + phoneBytes.length);
+            putUtf(buf, userBytes);
+            putUtf(buf, emailBytes);
+            putUtf(buf, phoneBytes);
+            return endRecord(buf);
+        }
+    }
+
+    // Month-end for many savings accounts in one record: [int count] count x ([username][accountId][long interest]).
+    // Replaying it credits the interest and resets each account's withdrawal count.
+    public long logInterest(String[] usernames, String[] accountIds, long[] amounts, int count) {
+        byte[][] userBytes = new byte[count][];
+        byte[][] accountBytes = new byte[count][];
+        int size = Integer.BYTES;
+
+        for (int i = 0; i < count; i++) {
+            userBytes[i] = utf(usernames[i]);
+            accountBytes[i] = utf(accountIds[i]);
+            size += 2 * Short.BYTES + userBytes[i].length + accountBytes[i].length + Long.BYTES;
+        }
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(OP_INTEREST, size);
+            buf.putInt(count);
+            for (int i = 0; i < count; i++) {
+                putUtf(buf, userBytes[i]);
+                putUtf(buf, accountBytes[i]);
+                buf.putLong(amounts[i]);
+            }
+            return endRecord(buf);
+        }
+    }
+
+    private long logSingle(byte op, String username, String accountId, long amount) {
+        byte[] userBytes = utf(username);
+        byte[] accountBytes = utf(accountId);
+
+        synchronized (lock) {
+            ByteBuffer buf = beginRecord(op, 2 * Short.BYTES + userBytes.length + accountBytes.length + Long.BYTES);
+            putUtf(buf, userBytes);
+            putUtf(buf, accountBytes);
+            buf.putLong(amount);
+            return endRecord(buf);
+        }
+    }
+
+    // Block until the given record (and everything before it) has been fsynced
+    public void awaitDurable(long seq) {
+        synchronized (lock) {
+            while (durableSeq < seq && failure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            if (failure != null) {
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write to transaction journal.");
+            }
+        }
+    }
+
+    // Discard every record up to and including seq; called once a snapshot containing them has been written.
+    // Rolled segments go as soon as they are covered. If newer records were appended to the active segment in
+    // the meantime it is kept, replay skips the old ones anyway.
+    public void truncate(long seq) {
+        synchronized (lock) {
+            Map<Long, File> covered = segments.headMap(seq, true);
+
+            for (File segment : covered.values()) {
+                if (!segment.delete() && segment.exists()) {
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to delete journal segment.");
+                }
+            }
+            covered.clear();
+
+            awaitDurable(appendedSeq);
+
+            if (appendedSeq != seq) {
+                return;
+            }
+
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to truncate transaction journal.");
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (lock) {
+            awaitDurable(appendedSeq);
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            syncThread.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Must be called while holding the lock
+    private ByteBuffer beginRecord(byte op, int payloadSize) {
+        int recordSize = HEADER_SIZE + payloadSize + Integer.BYTES;
+
+        // Grow the pending buffer if this record doesn't fit
+        if (pending.remaining() < recordSize) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + recordSize));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+
+        recordStart = pending.position();
+        pending.putInt(recordSize);
+        pending.putLong(appendedSeq + 1);
+        pending.putLong(System.currentTimeMillis());
+        pending.put(op);
+
+        return pending;
+    }
+
+    // Must be called while holding the lock
+    private long endRecord(ByteBuffer buf) {
+        int start = recordStart + Integer.BYTES;
+
+        // Checksum everything after the length prefix
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), start, buf.position() - start);
+        buf.putInt((int) crc.getValue());
+
+        lock.notifyAll();
+        return ++appendedSeq;
+    }
+
+    // Sync thread: swap buffers, write them out and fsync once per batch
+    private void syncLoop() {
+        while (true) {
+            long batchSeq;
+
+            synchronized (lock) {
+                while (appendedSeq == durableSeq && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (closed && appendedSeq == durableSeq) {
+                    return;
+                }
+            }
+
+            // Give concurrent writers a moment to join this commit
+            try {
+                Thread.sleep(GROUP_COMMIT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (lock) {
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                pending.clear();
+                batchSeq = appendedSeq;
+            }
+
+            try {
+                long begin = System.nanoTime();
+
+                writing.flip();
+                Metrics.JOURNAL_BYTES.add(writing.remaining());
+
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+
+                Metrics.JOURNAL_SYNC.recordSince(begin);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableSeq = batchSeq;
+                lock.notifyAll();
+
+                try {
+                    if (channel.size() >= SEGMENT_BYTES) {
+                        roll(batchSeq);
+                    }
+                } catch (IOException e) {
+                    // Keep appending to the active segment, it is still intact
+                    e.printStackTrace();
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to start a new journal segment.");
+                }
+            }
+        }
+    }
+
+    // Must be called while holding the lock, by the sync thread, with everything up to lastSeq written out
+    private void roll(long lastSeq) throws IOException {
+        File rolled = segmentFile(file, lastSeq);
+
+        channel.close();
+        Files.move(file.toPath(), rolled.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        segments.put(lastSeq, rolled);
+
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    // journal-<last seq>.dat next to the active journal.dat, the sequence padded so names sort in order
+    private static File segmentFile(File active, long lastSeq) {
+        String digits = Long.toString(lastSeq);
+        return new File(active.getAbsoluteFile().getParentFile(), segmentPrefix(active) + SEQ_PADDING.substring(digits.length()) + digits + segmentSuffix(active));
+    }
+
+    // Rolled segments of the active journal, oldest first
+    private static TreeMap<Long, File> rolledSegments(File active) {
+        TreeMap<Long, File> rolled = new TreeMap<>();
+        String prefix = segmentPrefix(active);
+        String suffix = segmentSuffix(active);
+        File[] files = active.getAbsoluteFile().getParentFile().listFiles();
+
+        if (files == null) {
+            return rolled;
+        }
+
+        for (File candidate : files) {
+            String name = candidate.getName();
+
+            if (name.length() == prefix.length() + SEQ_PADDING.length() + suffix.length() && name.startsWith(prefix) && name.endsWith(suffix)) {
+                try {
+                    rolled.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), candidate);
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+
+        return rolled;
+    }
+
+    private static String segmentPrefix(File active) {
+        String name = active.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot < 0 ? name : name.substring(0, dot)) + "-";
+    }
+
+    private static String segmentSuffix(File active) {
+        String name = active.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    // REPLAY
+
+    // Re-apply every record newer than the snapshot, oldest segment first; returns the last sequence seen.
+    // Replayed transactions are also appended to the ledger, which ignores those it already has; each partition
+    // buffers its own and writes them out in batches, see AccountLedger.Replay.
+    //
+    // Within a segment the records are applied by up to -Ddollarsbank.replay.threads partitions at once (one per
+    // core by default), each taking the customers whose username hashes to it. All of a customer's records are
+    // applied by the same partition in log order, so every account ends with the same balance and history as if
+    // they had been applied one by one; a transfer between partitions is applied as its two halves, the
+    // withdrawal by the sender's partition and the deposit by the recipient's.
+    public static long replay(String path, Map<String, Customer> customers, long snapshotSeq, AccountLedger ledger) {
+        return replay(path, customers, snapshotSeq, ledger, REPLAY_THREADS);
+    }
+
+    public static long replay(String path, Map<String, Customer> customers, long snapshotSeq, AccountLedger ledger, int threads) {
+        File active = new File(path);
+        long lastSeq = snapshotSeq;
+
+        // Partitions need a map they can all add customers to at once
+        int partitions = customers instanceof ConcurrentMap ? Math.max(1, threads) : 1;
+        ExecutorService executor = partitions > 1 ? Executors.newFixedThreadPool(partitions, task -> new Thread(task, "journal-replay")) : null;
+
+        try {
+            for (Map.Entry<Long, File> segment : rolledSegments(active).entrySet()) {
+                // Everything in it is in the snapshot already
+                if (segment.getKey() > snapshotSeq) {
+                    lastSeq = Math.max(lastSeq, replaySegment(segment.getValue(), false, customers, snapshotSeq, ledger, executor, partitions));
+                }
+            }
+
+            return Math.max(lastSeq, replaySegment(active, true, customers, snapshotSeq, ledger, executor, partitions));
+
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static long replaySegment(File file, boolean active, Map<String, Customer> customers, long snapshotSeq, AccountLedger ledger,
+            ExecutorService executor, int partitions) {
+        long lastSeq = snapshotSeq;
+
+        if (file.length() == 0) {
+            return lastSeq;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel ch = raf.getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // Keep reading until the whole segment is in memory
+            }
+            buf.flip();
+
+            int validEnd = 0;
+
+            // Records naming only customers are replayed in order on one thread, see apply
+            boolean inOrder = false;
+
+            // Check every record first, so partitions don't each verify the whole segment
+            while (buf.remaining() >= Integer.BYTES) {
+                int start = buf.position();
+                int size = buf.getInt(start);
+
+                // Torn or corrupt tail from a crash mid-write
+                if (size < HEADER_SIZE + Integer.BYTES || size > buf.remaining()) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(buf.array(), start + Integer.BYTES, size - 2 * Integer.BYTES);
+                if ((int) crc.getValue() != buf.getInt(start + size - Integer.BYTES)) {
+                    break;
+                }
+
+                long seq = buf.getLong(start + Integer.BYTES);
+                byte op = buf.get(start + HEADER_SIZE - Byte.BYTES);
+
+                if (seq > snapshotSeq && op == OP_TRANSFER) {
+                    inOrder = true;
+                }
+
+                lastSeq = Math.max(lastSeq, seq);
+                buf.position(start + size);
+                validEnd = buf.position();
+            }
+
+            if (validEnd < ch.size()) {
+                if (active) {
+                    // Drop a partially written tail so new records start on a record boundary
+                    ch.truncate(validEnd);
+                } else {
+                    // Rolled segments were complete when they were synced
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Journal segment " + file.getName() + " is damaged, replaying what precedes the damage.");
+                }
+            }
+
+            if (executor == null || inOrder) {
+                applyPartition(buf, validEnd, customers, snapshotSeq, ledger, new Partition(0, 1));
+                return lastSeq;
+            }
+
+            List<Future<?>> results = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                Partition partition = new Partition(i, partitions);
+                int end = validEnd;
+
+                results.add(executor.submit(() -> applyPartition(buf, end, customers, snapshotSeq, ledger, partition)));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+        } catch (IOException | BufferUnderflowException | ExecutionException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to replay transaction journal.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to replay transaction journal.");
+        }
+
+        return lastSeq;
+    }
+
+    // Apply the partition's share of the checked records before end; reads through its own view of the segment
+    private static void applyPartition(ByteBuffer segment, int end, Map<String, Customer> customers, long snapshotSeq, AccountLedger ledger,
+            Partition partition) {
+        ByteBuffer buf = segment.duplicate();
+        buf.position(0);
+
+        AccountLedger.Replay history = ledger != null ? ledger.startReplay() : null;
+
+        try {
+            applyRecords(buf, end, customers, snapshotSeq, history, partition);
+        } finally {
+            if (history != null) {
+                history.finish();
+            }
+        }
+    }
+
+    private static void applyRecords(ByteBuffer buf, int end, Map<String, Customer> customers, long snapshotSeq, AccountLedger.Replay history,
+            Partition partition) {
+        while (buf.position() < end) {
+            int start = buf.position();
+            int size = buf.getInt(start);
+
+            buf.position(start + Integer.BYTES);
+            long seq = buf.getLong();
+            long timestamp = buf.getLong();
+            byte op = buf.get();
+
+            // A record that can't be applied, e.g. one that overflows a balance, changes nothing; the rest of the
+            // journal still is
+            if (seq > snapshotSeq) {
+                try {
+                    apply(op, timestamp, buf, customers, history, partition);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Journal record " + seq + " could not be applied and was skipped.");
+                }
+            }
+
+            buf.position(start + size);
+        }
+    }
+
+    // Customers whose username hashes to index out of count. The hash is taken over the encoded username, so
+    // records of other partitions are passed over without decoding them.
+    private static final class Partition {
+
+        private final int index;
+        private final int count;
+
+        Partition(int index, int count) {
+            this.index = index;
+            this.count = count;
+        }
+
+        // Whether the length-prefixed username at the buffer's position belongs here; doesn't move the position
+        boolean owns(ByteBuffer buf) {
+            if (count == 1) {
+                return true;
+            }
+
+            byte[] bytes = buf.array();
+            int from = buf.position() + Short.BYTES;
+            int to = from + Short.toUnsignedInt(buf.getShort(buf.position()));
+            int hash = 0;
+
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+
+            return Math.floorMod(hash ^ (hash >>> 16), count) == index;
+        }
+
+    }
+
+    private static void apply(byte op, long timestamp, ByteBuffer buf, Map<String, Customer> customers, AccountLedger.Replay history, Partition partition) {
+        Customer customer;
+        String accountId;
+        Account account;
+        long amount;
+
+        switch (op) {
+            case OP_CREATE:
+            case OP_CREATE_SAVINGS:
+                if (!partition.owns(buf)) {
+                    break;
+                }
+
+                String username = getUtf(buf);
+                String password = getUtf(buf);
+                String fName = getUtf(buf);
+                String lName = getUtf(buf);
+                String address = getUtf(buf);
+                String phoneNumber = getUtf(buf);
+                String email = getUtf(buf);
+                accountId = getUtf(buf);
+                amount = buf.getLong();
+
+                if (!customers.containsKey(username)) {
+                    account = op == OP_CREATE_SAVINGS ? new SavingsAccount(accountId, amount, buf.getDouble(), buf.getInt(), buf.getLong()) : new Account(accountId, amount);
+
+                    customer = new Customer(username, password, fName, lName, address, phoneNumber, email, account);
+                    post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INITIAL_DEPOSIT, amount, account, timestamp), history);
+                    customers.put(username, customer);
+                }
+                break;
+
+            case OP_OPEN_ACCOUNT:
+            case OP_OPEN_SAVINGS:
+                if (!partition.owns(buf)) {
+                    break;
+                }
+
+                customer = customers.get(getUtf(buf));
+                accountId = getUtf(buf);
+                amount = buf.getLong();
+
+                if (customer != null && customer.getAccount(accountId) == null) {
+                    account = op == OP_OPEN_SAVINGS ? new SavingsAccount(accountId, amount, buf.getDouble(), buf.getInt(), buf.getLong()) : new Account(accountId, amount);
+
+                    customer.addAccount(account);
+                    post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INITIAL_DEPOSIT, amount, account, timestamp), history);
+                }
+                break;
+
+            case OP_DEPOSIT:
+            case OP_ACCOUNT_DEPOSIT:
+                if (!partition.owns(buf)) {
+                    break;
+                }
+
+                customer = customers.get(getUtf(buf));
+                accountId = op == OP_ACCOUNT_DEPOSIT ? getUtf(buf) : null;
+                amount = buf.getLong();
+
+                account = accountOf(customer, accountId);
+
+                if (account != null) {
+                    account.setBalance(Money.add(account.getBalance(), amount));
+                    post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.DEPOSIT, amount, account, timestamp), history);
+                }
+                break;
+
+            case OP_WITHDRAWAL:
+            case OP_ACCOUNT_WITHDRAWAL:
+                if (!partition.owns(buf)) {
+                    break;
+                }
+
+                customer = customers.get(getUtf(buf));
+                accountId = op == OP_ACCOUNT_WITHDRAWAL ? getUtf(buf) : null;
+                amount = buf.getLong();
+
+                account = accountOf(customer, accountId);
+
+                if (account != null) {
+                    account.setBalance(Money.subtract(account.getBalance(), amount));
+                    post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.WITHDRAWAL, amount, account, timestamp), history);
+
+                    if (account instanceof SavingsAccount) {
+                        ((SavingsAccount) account).recordWithdrawal();
+                    }
+                }
+                break;
+
+            case OP_TRANSFER:
+            case OP_ACCOUNT_TRANSFER:
+                boolean sends = partition.owns(buf);
+                String fromName = getUtf(buf);
+                String fromAccountId = op == OP_ACCOUNT_TRANSFER ? getUtf(buf) : null;
+                boolean receives = partition.owns(buf);
+                String toName = getUtf(buf);
+                String toAccountId = op == OP_ACCOUNT_TRANSFER ? getUtf(buf) : null;
+                amount = buf.getLong();
+
+                Customer from = sends ? customers.get(fromName) : null;
+                Customer to = receives ? customers.get(toName) : null;
+                Account source = accountOf(from, fromAccountId);
+                Account destination = accountOf(to, toAccountId);
+
+                // With both halves here they are applied together or not at all, as the transfer was made. Split
+                // between partitions each half is applied on its own: transfers are only logged between accounts
+                // that exist, and OP_TRANSFER, which needs the other customer to find its account, is never split.
+                if (sends && receives && (source == null || destination == null)) {
+                    break;
+                }
+
+                // Checked before the debit, so a credit that overflows leaves both halves unapplied
+                if (destination != null) {
+                    Money.add(destination.getBalance(), amount);
+                }
+
+                if (source != null) {
+                    source.setBalance(Money.subtract(source.getBalance(), amount));
+                    post(from, new Transaction(TransactionType.TRANSFER_OUT, amount, source.getAccountId(), toName,
+                        destination != null ? destination.getAccountId() : toAccountId, timestamp, source.getBalance()), history);
+                }
+
+                if (destination != null) {
+                    destination.setBalance(Money.add(destination.getBalance(), amount));
+                    post(to, new Transaction(TransactionType.TRANSFER_IN, amount, destination.getAccountId(), fromName,
+                        source != null ? source.getAccountId() : fromAccountId, timestamp, destination.getBalance()), history);
+                }
+                break;
+
+            case OP_CONTACT:
+                if (!partition.owns(buf)) {
+                    break;
+                }
+
+                customer = customers.get(getUtf(buf));
+                String newEmail = getUtf(buf);
+                String newPhoneNumber = getUtf(buf);
+
+                // Replayed before the customer index is built, so only the customer changes
+                if (customer != null) {
+                    customer.setEmail(newEmail);
+                    customer.setPhoneNumber(newPhoneNumber);
+                }
+                break;
+
+            case OP_INTEREST:
+                int count = buf.getInt();
+
+                for (int i = 0; i < count; i++) {
+                    if (!partition.owns(buf)) {
+                        skipUtf(buf);
+                        skipUtf(buf);
+                        buf.getLong();
+                        continue;
+                    }
+
+                    customer = customers.get(getUtf(buf));
+                    accountId = getUtf(buf);
+                    amount = buf.getLong();
+
+                    if (customer != null && customer.getAccount(accountId) instanceof SavingsAccount) {
+                        SavingsAccount savings = (SavingsAccount) customer.getAccount(accountId);
+                        savings.setBalance(Money.add(savings.getBalance(), amount));
+                        savings.setWithdrawalsThisMonth(0);
+
+                        if (amount > 0) {
+                            post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INTEREST, amount, savings, timestamp), history);
+                        }
+                    }
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    // The named account, or the primary one for records that don't name one; null if the customer or account is gone
+    private static Account accountOf(Customer customer, String accountId) {
+        if (customer == null) {
+            return null;
+        }
+        return accountId != null ? customer.getAccount(accountId) : customer.getAccount();
+    }
+
+    // A customer whose recent transactions were read back from the ledger may already have this one
+    private static void post(Customer customer, Transaction transaction, AccountLedger.Replay history) {
+        if (!customer.getTransactions().contains(transaction)) {
+            DataGeneratorStubUtil.postTransaction(customer, transaction);
+        }
+
+        if (history != null) {
+            history.append(transaction);
+        }
+    }
+
+    // Helper functions for length-prefixed UTF-8 strings
+
+    // Every field is encoded before its record is begun, so one too long for its length prefix is refused
+    // before anything is written
+    private static byte[] utf(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > MAX_FIELD) {
+            throw new IllegalArgumentException("Field too long to journal: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putUtf(ByteBuffer buf, byte[] bytes) {
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static void skipUtf(ByteBuffer buf) {
+        buf.position(buf.position() + Short.BYTES + Short.toUnsignedInt(buf.getShort(buf.position())));
+    }
+
+    private static String getUtf(ByteBuffer buf) {
+        int len = Short.toUnsignedInt(buf.getShort());
+        String str = new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return str;
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.dollarsbank.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dollarsbank.metrics.Metrics;
+
+// Checks and hashes passwords for every session of a bank, see PasswordHasher.
+//
+// Hashing is deliberately slow, so it runs on a small pool of its own: however many users sign in at once, at most
+// -Ddollarsbank.password.threads hashes run in parallel (half the cores by default) and the rest of the CPU stays
+// free for banking. Up to -Ddollarsbank.password.queue requests wait their turn; beyond that the caller is told
+// to try again rather than piling up.
+//
+// After a password is verified, a keyed SHA-256 MAC of it is kept for its stored hash, under a key that only lives
+// in this process, so the same customer signing in again costs one MAC instead of a full hash. A wrong password
+// is never answered from the cache; it always costs a full hash.
+public class CredentialVerifier {
+
+    private static final int THREADS = Integer.getInteger("dollarsbank.password.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE = Integer.getInteger("dollarsbank.password.queue", 256);
+
+    // Verified credentials remembered, least recently used dropped first
+    private static final int CACHE_SIZE = Integer.getInteger("dollarsbank.password.cache", 10000);
+
+    private static final String MAC = "HmacSHA256";
+
+    public enum Result {
+        VALID,
+        INVALID,
+        // Too many hashes waiting, nothing was checked
+        BUSY
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    private final SecretKeySpec cacheKey;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, byte[]> verified;
+
+    public CredentialVerifier() {
+        this(THREADS, QUEUE, CACHE_SIZE);
+    }
+
+    public CredentialVerifier(int threads, int queue, int cacheSize) {
+        AtomicInteger next = new AtomicInteger();
+
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), task -> {
+            Thread thread = new Thread(task, "credentials-" + next.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, MAC);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+
+        this.verified = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    // Check a password against what is stored for the customer
+    public Result verify(String password, String stored) {
+        byte[] mac;
+
+        synchronized (verified) {
+            mac = verified.get(stored);
+        }
+
+        if (mac != null && MessageDigest.isEqual(mac, mac(password, stored))) {
+            Metrics.CREDENTIAL_CACHE_HITS.increment();
+            return Result.VALID;
+        }
+
+        // Plain passwords from before hashing cost nothing to compare
+        if (!PasswordHasher.isHashed(stored)) {
+            return PasswordHasher.matches(password, stored) ? Result.VALID : Result.INVALID;
+        }
+
+        Boolean matches = run(() -> PasswordHasher.matches(password, stored));
+
+        if (matches == null) {
+            return Result.BUSY;
+        }
+
+        if (matches) {
+            byte[] computed = mac(password, stored);
+
+            synchronized (verified) {
+                verified.put(stored, computed);
+            }
+        }
+
+        return matches ? Result.VALID : Result.INVALID;
+    }
+
+    // Hash a new password at the current cost; null if too many hashes are waiting
+    public String hash(String password) {
+        return run(() -> PasswordHasher.hash(password));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Helpers
+
+    // Run on the pool and wait; null if the pool is full or the wait was interrupted
+    private <T> T run(java.util.concurrent.Callable<T> task) {
+        long begin = System.nanoTime();
+
+        try {
+            Future<T> result = pool.submit(task);
+            return result.get();
+        } catch (RejectedExecutionException e) {
+            Metrics.CREDENTIAL_REJECTED.increment();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            Metrics.PASSWORD_HASH.recordSince(begin);
+        }
+    }
+
+    private byte[] mac(String password, String stored) {
+        Mac mac = macs.get();
+
+        mac.update(stored.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC);
+            mac.init(cacheKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // Every JDK has HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
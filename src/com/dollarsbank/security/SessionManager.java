@@ -0,0 +1,203 @@
+package com.dollarsbank.security;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.dollarsbank.metrics.Metrics;
+import com.dollarsbank.model.Customer;
+
+// Signed-in sessions of a bank by id, each signed out after -Ddollarsbank.session.idle seconds without activity
+// (15 minutes by default).
+//
+// Expiry uses a hashed timer wheel: a ring of slots one tick (a second) apart, walked by one background thread.
+// A session sits in the slot of its deadline; using it only stamps the time, and when its slot comes round a
+// session used since is moved to the slot of its new deadline instead of being signed out. Keeping thousands of
+// sessions alive costs one volatile write per action, and each tick only looks at the sessions due in it.
+public class SessionManager {
+
+    private static final long IDLE_SECONDS = Long.getLong("dollarsbank.session.idle", 900);
+
+    private static final long TICK_NANOS = 1000000000L;
+
+    // Deadlines further ahead than the wheel wraps round and are checked again a round later
+    private static final int SLOTS = 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long idleNanos;
+    private final long start = System.nanoTime();
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final List<Queue<Session>> wheel;
+    private final Thread expiry;
+
+    // Last tick whose slot was processed
+    private volatile long tick = 0;
+
+    public SessionManager() {
+        this(IDLE_SECONDS);
+    }
+
+    public SessionManager(long idleSeconds) {
+        this.idleNanos = idleSeconds * 1000000000L;
+        this.wheel = new ArrayList<>(SLOTS);
+
+        for (int i = 0; i < SLOTS; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+
+        this.expiry = new Thread(this::turn, "session-expiry");
+        expiry.setDaemon(true);
+        expiry.start();
+    }
+
+    // Sign the customer in from the source
+    public Session open(Customer customer, String source) {
+        byte[] id = new byte[16];
+        RANDOM.nextBytes(id);
+
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(id), customer, source, System.nanoTime());
+
+        sessions.put(session.id, session);
+        schedule(session);
+        return session;
+    }
+
+    // The open session with the id, or null
+    public Session get(String id) {
+        Session session = sessions.get(id);
+        return session != null && session.touch() ? session : null;
+    }
+
+    public void close(Session session) {
+        if (session != null) {
+            session.open = false;
+            sessions.remove(session.id);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void shutdown() {
+        expiry.interrupt();
+    }
+
+    public class Session {
+
+        private final String id;
+        private final Customer customer;
+        private final String source;
+
+        private volatile long lastActive;
+        private volatile boolean open = true;
+
+        private Session(String id, Customer customer, String source, long now) {
+            this.id = id;
+            this.customer = customer;
+            this.source = source;
+            this.lastActive = now;
+        }
+
+        // Record activity; false if the session was closed or has been idle too long, and is now closed
+        public boolean touch() {
+            long now = System.nanoTime();
+
+            if (!open) {
+                return false;
+            }
+
+            // The wheel may not have come round yet
+            if (now - lastActive >= idleNanos) {
+                expire(this);
+                return false;
+            }
+
+            lastActive = now;
+            return true;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public Customer getCustomer() {
+            return this.customer;
+        }
+
+        public String getSource() {
+            return this.source;
+        }
+
+        public boolean isOpen() {
+            return this.open;
+        }
+
+    }
+
+    // Helpers
+
+    private void schedule(Session session) {
+        long due = (session.lastActive + idleNanos - start) / TICK_NANOS + 1;
+
+        // Never into a slot already passed this round
+        wheel.get((int) (Math.max(due, tick + 1) & (SLOTS - 1))).add(session);
+    }
+
+    // Counted once, whether the wheel or the session's own thread gets there first
+    private void expire(Session session) {
+        session.open = false;
+
+        if (sessions.remove(session.id, session)) {
+            Metrics.SESSIONS_EXPIRED.increment();
+        }
+    }
+
+    // Process each slot as its tick comes, catching up on any missed while the thread wasn't scheduled
+    private void turn() {
+        List<Session> due = new ArrayList<>();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            long current = (now - start) / TICK_NANOS;
+
+            while (tick < current) {
+                Queue<Session> slot = wheel.get((int) (++tick & (SLOTS - 1)));
+
+                // Taken out first, so sessions moved back into this slot wait for the next round
+                for (Session session = slot.poll(); session != null; session = slot.poll()) {
+                    due.add(session);
+                }
+
+                for (Session session : due) {
+                    if (!session.open) {
+                        continue;
+                    }
+
+                    if (now - session.lastActive >= idleNanos) {
+                        expire(session);
+                    } else {
+                        schedule(session);
+                    }
+                }
+
+                due.clear();
+            }
+
+            try {
+                Thread.sleep(Math.max(1, (start + (current + 1) * TICK_NANOS - System.nanoTime()) / 1000000 + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
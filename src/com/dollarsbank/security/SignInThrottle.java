@@ -0,0 +1,55 @@
+package com.dollarsbank.security;
+
+import com.dollarsbank.metrics.Metrics;
+
+// Limits how often passwords are checked, both for one username and from one source (a client address, or the
+// console), before any hashing is done, so guessing passwords in a burst costs the bank almost nothing.
+//
+// By default a username gets 5 attempts and then one every 10 seconds, and a source 20 and then one a second:
+//   -Ddollarsbank.signin.user.burst / .user.refill (ms) and -Ddollarsbank.signin.source.burst / .source.refill
+// -Ddollarsbank.signin.throttle=false turns the limits off.
+public class SignInThrottle {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("dollarsbank.signin.throttle"));
+
+    private final TokenBuckets usernames;
+    private final TokenBuckets sources;
+    private final boolean enabled;
+
+    public SignInThrottle() {
+        this(ENABLED,
+            Integer.getInteger("dollarsbank.signin.user.burst", 5), Long.getLong("dollarsbank.signin.user.refill", 10000),
+            Integer.getInteger("dollarsbank.signin.source.burst", 20), Long.getLong("dollarsbank.signin.source.refill", 1000));
+    }
+
+    public SignInThrottle(boolean enabled, int userBurst, long userRefillMillis, int sourceBurst, long sourceRefillMillis) {
+        this.enabled = enabled;
+        this.usernames = new TokenBuckets(userBurst, userRefillMillis);
+        this.sources = new TokenBuckets(sourceBurst, sourceRefillMillis);
+    }
+
+    // Take an attempt for the username from the source; returns 0 if it may go ahead, or how many milliseconds
+    // until it may. The source is checked first, so one flooding many usernames doesn't use up theirs.
+    public long tryAcquire(String username, String source) {
+        if (!enabled) {
+            return 0;
+        }
+
+        long wait = sources.tryAcquire(source);
+
+        if (wait == 0) {
+            wait = usernames.tryAcquire(username);
+        }
+
+        if (wait > 0) {
+            Metrics.SIGN_INS_THROTTLED.increment();
+        }
+
+        return wait;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+}
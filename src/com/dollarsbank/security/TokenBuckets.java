@@ -0,0 +1,71 @@
+package com.dollarsbank.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A token bucket per key, e.g. per username: up to burst attempts at once, then one more every refill period.
+//
+// Each bucket is a single AtomicLong holding the time at which it will be full again, so taking a token is one
+// compare-and-set with no lock, and a key nobody uses costs nothing to refill. Full buckets are dropped now and
+// then by whichever caller comes along first, so keys that stopped trying don't stay in memory.
+public class TokenBuckets {
+
+    private final long refillNanos;
+
+    // How far ahead of now a bucket's full time can be before it is empty
+    private final long capacityNanos;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    public TokenBuckets(int burst, long refillMillis) {
+        this.refillNanos = refillMillis * 1000000;
+        this.capacityNanos = burst * refillNanos;
+    }
+
+    // Take a token for the key; returns 0 if there was one, or how many milliseconds until there is
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        sweep(now);
+
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long full = bucket.get();
+
+            // Full by now: start from now, the tokens beyond the burst are not kept
+            long next = (full - now > 0 ? full : now) + refillNanos;
+
+            if (next - now > capacityNanos) {
+                return (next - now - capacityNanos + 999999) / 1000000;
+            }
+
+            if (bucket.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Keys with a bucket that isn't full
+    public int size() {
+        return buckets.size();
+    }
+
+    // Helpers
+
+    // At most once per burst period, drop the buckets that have refilled. A caller may still be taking a token from
+    // a bucket as it goes; that bucket was full, so the token is one a new bucket would have given anyway.
+    private void sweep(long now) {
+        long last = lastSweep.get();
+
+        if (now - last < capacityNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.dollarsbank.service;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+
+// Every account in the bank with its owner, keyed by account number (the digits of the account id).
+//
+// An open addressing table over parallel arrays: an int key, the account and its owner per slot. Millions
+// of accounts cost three array slots each rather than a boxed key and an entry object. Number 0 marks a
+// free slot, account numbers start at 1.
+//
+// Adding and removing hold the write lock. Lookups read optimistically without locking and only take the read lock
+// if a change ran at the same time; a lookup racing a change may see a half-written slot, but never returns it.
+public class AccountStore {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Capacity is a power of two, kept at least twice the size so probes stay short
+    private int[] numbers;
+    private Account[] accounts;
+    private Customer[] owners;
+    private int size;
+
+    public AccountStore(int expected) {
+        int capacity = MIN_CAPACITY;
+
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    // LOOKUPS
+
+    public Account get(int accountNo) {
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            int[] table = numbers;
+            Account[] values = accounts;
+            Account account = table.length == values.length ? lookup(table, values, accountNo) : null;
+
+            if (lock.validate(stamp)) {
+                return account;
+            }
+        }
+
+        // A change ran meanwhile, so the arrays may not have matched; look again under the read lock
+        stamp = lock.readLock();
+        try {
+            return lookup(numbers, accounts, accountNo);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Customer getOwner(int accountNo) {
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            int[] table = numbers;
+            Customer[] values = owners;
+            Customer owner = table.length == values.length ? lookup(table, values, accountNo) : null;
+
+            if (lock.validate(stamp)) {
+                return owner;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return lookup(numbers, owners, accountNo);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Visit every account with its owner; changes wait until the visit is done
+    public void forEach(BiConsumer<Account, Customer> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int slot = 0; slot < numbers.length; slot++) {
+                if (numbers[slot] != 0) {
+                    action.accept(accounts[slot], owners[slot]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // UPDATES
+
+    // Returns false, changing nothing, if the account number is invalid or taken
+    public boolean add(Account account, Customer owner) {
+        int accountNo = account.getAccountNo();
+
+        if (accountNo <= 0) {
+            return false;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (probe(numbers, accountNo) >= 0) {
+                return false;
+            }
+
+            if ((size + 1) * 2 > numbers.length) {
+                resize(numbers.length * 2);
+            }
+
+            // A free slot is where the probe stopped
+            int slot = -probe(numbers, accountNo) - 1;
+            accounts[slot] = account;
+            owners[slot] = owner;
+            numbers[slot] = accountNo;
+            size++;
+
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Returns false if the account isn't in the store under that owner
+    public boolean remove(Account account, Customer owner) {
+        int accountNo = account.getAccountNo();
+
+        if (accountNo <= 0) {
+            return false;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            int slot = probe(numbers, accountNo);
+
+            if (slot < 0 || owners[slot] != owner) {
+                return false;
+            }
+
+            // Shift later entries of the probe run back into the hole, so lookups never stop at it early
+            int mask = numbers.length - 1;
+            int hole = slot;
+
+            for (int next = (hole + 1) & mask; numbers[next] != 0; next = (next + 1) & mask) {
+                int home = hash(numbers[next]) & mask;
+
+                // Only entries whose home is not between the hole and their slot may move into the hole
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    numbers[hole] = numbers[next];
+                    accounts[hole] = accounts[next];
+                    owners[hole] = owners[next];
+                    hole = next;
+                }
+            }
+
+            numbers[hole] = 0;
+            accounts[hole] = null;
+            owners[hole] = null;
+            size--;
+
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // True if none of the accounts' numbers is taken
+    public boolean isFree(Iterable<Account> candidates) {
+        for (Account account : candidates) {
+            if (account.getAccountNo() <= 0 || get(account.getAccountNo()) != null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Helpers
+
+    private static <T> T lookup(int[] table, T[] values, int accountNo) {
+        if (accountNo <= 0) {
+            return null;
+        }
+
+        int slot = probe(table, accountNo);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    // Linear probe: the slot holding the number, or -(free slot + 1) where it would go.
+    // Bounded by the table length, so a table read mid-resize can't loop forever.
+    private static int probe(int[] table, int accountNo) {
+        int mask = table.length - 1;
+        int slot = hash(accountNo) & mask;
+
+        for (int i = 0; i < table.length; i++) {
+            int number = table[slot];
+
+            if (number == accountNo) {
+                return slot;
+            }
+            if (number == 0) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -table.length - 1;
+    }
+
+    // Consecutive numbers land far apart
+    private static int hash(int accountNo) {
+        int h = accountNo * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void resize(int capacity) {
+        int[] oldNumbers = numbers;
+        Account[] oldAccounts = accounts;
+        Customer[] oldOwners = owners;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldNumbers.length; i++) {
+            if (oldNumbers[i] != 0) {
+                int slot = -probe(numbers, oldNumbers[i]) - 1;
+                numbers[slot] = oldNumbers[i];
+                accounts[slot] = oldAccounts[i];
+                owners[slot] = oldOwners[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.numbers = new int[capacity];
+        this.accounts = new Account[capacity];
+        this.owners = new Customer[capacity];
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.dollarsbank.service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.dollarsbank.metrics.Metrics;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.persistence.AccountLedger;
+import com.dollarsbank.persistence.CheckpointScheduler;
+import com.dollarsbank.persistence.IdLeaseFile;
+import com.dollarsbank.persistence.MappedAccountStore;
+import com.dollarsbank.persistence.SqlStore;
+import com.dollarsbank.persistence.TransactionJournal;
+import com.dollarsbank.security.CredentialVerifier;
+import com.dollarsbank.security.SessionManager;
+import com.dollarsbank.security.SignInThrottle;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// State of the bank shared by every session: the customers, their storage and the engine applying changes.
+// A console run has one session; the server creates a single core and a controller per connection.
+public class BankCore {
+
+    // Full transaction history of every account, kept on disk
+    private final AccountLedger ledger = new AccountLedger();
+
+    // Collection of customers
+    // Will import saved user data, or start with an empty map if no data exists.
+    // With the mapped engine, or the sql engine and a cache size, customers are read as they are needed instead.
+    private final Map<String, Customer> customers = loadCustomers(ledger);
+
+    // Every operation since the last snapshot is journaled and replayed on top of it at start-up
+    private final TransactionJournal journal = TransactionJournal.recover(customers, ledger);
+
+    // Writes changed customers in the background so exiting doesn't have to save the whole bank
+    private final CheckpointScheduler checkpoints = new CheckpointScheduler(journal, ledger);
+
+    // Applies every balance change
+    private final TransferEngine engine = new TransferEngine(customers, journal, ledger, checkpoints);
+
+    // Hashes and checks passwords on a bounded pool of its own
+    private final CredentialVerifier credentials = new CredentialVerifier();
+
+    // Signed-in sessions, and how often each username and source may try a password
+    private final SessionManager sessions = new SessionManager();
+    private final SignInThrottle throttle = new SignInThrottle();
+
+    private volatile boolean closed = false;
+
+    public BankCore() {
+        // Everything stored is loaded and its ids reserved; from now on new ids are leased from disk a block
+        // at a time, so a restart never hands out one that was used before a crash
+        IdLeaseFile.attachAll();
+
+        // Changes replayed from the journal aren't in the snapshot yet; the next checkpoint has to save them
+        // before it lets the journal go
+        if (journal.getLastSequence() > FileStorageUtility.getSnapshotSequence()) {
+            checkpoints.getLock().readLock().lock();
+            try {
+                customers.values().forEach(checkpoints::markDirty);
+            } finally {
+                checkpoints.getLock().readLock().unlock();
+            }
+        }
+
+        // Sizes of this bank, replacing those of any bank created before it in this process
+        Metrics.gauge("customers", customers::size);
+        Metrics.gauge("accounts in memory", engine.getIndex().getAccounts()::size);
+        Metrics.gauge("dirty customers", checkpoints::getDirtyCount);
+        Metrics.gauge("customers signed in", sessions::size);
+
+        if (customers instanceof CustomerCache) {
+            Metrics.gauge("customers in memory", ((CustomerCache) customers)::getResidentCount);
+        }
+
+        Metrics.registerMBeans();
+    }
+
+    public Map<String, Customer> getCustomers() {
+        return this.customers;
+    }
+
+    public AccountLedger getLedger() {
+        return this.ledger;
+    }
+
+    public TransferEngine getEngine() {
+        return this.engine;
+    }
+
+    public CheckpointScheduler getCheckpoints() {
+        return this.checkpoints;
+    }
+
+    public CredentialVerifier getCredentials() {
+        return this.credentials;
+    }
+
+    public SessionManager getSessions() {
+        return this.sessions;
+    }
+
+    public SignInThrottle getThrottle() {
+        return this.throttle;
+    }
+
+    private static Map<String, Customer> loadCustomers(AccountLedger ledger) {
+        if (FileStorageUtility.isLoadedOnDemand()) {
+            try {
+                if (FileStorageUtility.isMappedStore()) {
+                    MappedAccountStore store = FileStorageUtility.openMappedStore(ledger);
+                    return new CustomerCache(store, store, FileStorageUtility.getCacheSize());
+                }
+
+                SqlStore store = FileStorageUtility.openSqlStore();
+                return new CustomerCache(store.customers(), store.accounts(), FileStorageUtility.getCacheSize());
+            } catch (IOException e) {
+                // Never start with an empty bank in place of the real one
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to import data. The bank cannot start.");
+                throw new IllegalStateException("Unable to open the customer database", e);
+            }
+        }
+
+        return new ConcurrentHashMap<>(FileStorageUtility.importData());
+    }
+
+    // Save whatever changed since the last background checkpoint
+    public void checkpointNow() {
+        checkpoints.checkpointNow();
+    }
+
+    // Save everything and release the files; safe to call more than once
+    public synchronized void shutdown() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        credentials.shutdown();
+        sessions.shutdown();
+        checkpoints.shutdown();
+        journal.close();
+        ledger.close();
+
+        if (Metrics.DUMP_FILE != null) {
+            Metrics.dump(Metrics.DUMP_FILE);
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.dollarsbank.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.security.PasswordHasher;
+import com.dollarsbank.utility.InputValidator;
+
+// Applies a stream of commands without any prompts, one command per line:
+//
+//   create,username,password,firstName,lastName,address,phoneNumber,email,initialDeposit[,savings]
+//   open,username,initialDeposit[,savings]
+//   deposit,account,amount
+//   withdraw,account,amount
+//   transfer,fromAccount,toAccount,amount
+//
+// A create or open ending in ",savings" opens a savings account with the default terms; open gives an
+// existing customer another account. An account is a username, meaning that customer's primary account,
+// or an account id like U000123.
+// Blank lines and lines starting with # are skipped. Fields are validated like the console input;
+// a line that fails validation or can't be applied (unknown user, insufficient funds) is rejected
+// and reported, and the run carries on with the next line.
+//
+// Input is read a line at a time, so the file can be any size. Operations don't wait for the journal
+// individually; the run waits once every BATCH_SIZE lines and at the end.
+public class BatchProcessor {
+
+    // Lines applied between waits for the journal to reach the disk
+    private static final int BATCH_SIZE = Integer.getInteger("dollarsbank.batch.size", 10000);
+
+    // Rejected lines are all counted but only this many are reported
+    private static final int MAX_REPORTED = Integer.getInteger("dollarsbank.batch.report", 100);
+
+    private final TransferEngine engine;
+    private final Map<String, Customer> customers;
+
+    // Where rejected lines are reported
+    private final PrintStream rejects;
+
+    public BatchProcessor(TransferEngine engine, PrintStream rejects) {
+        this.engine = engine;
+        this.customers = engine.getCustomers();
+        this.rejects = rejects;
+    }
+
+    // Counts of a finished run
+    public static class Summary {
+        private long lines;
+        private long applied;
+        private long rejected;
+        private long elapsedNanos;
+
+        public long getLines() {
+            return this.lines;
+        }
+
+        public long getApplied() {
+            return this.applied;
+        }
+
+        public long getRejected() {
+            return this.rejected;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        public double getOpsPerSecond() {
+            return elapsedNanos == 0 ? 0 : applied / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines, %d applied, %d rejected in %d ms (%.0f ops/sec)",
+                lines, applied, rejected, elapsedNanos / 1000000, getOpsPerSecond());
+        }
+    }
+
+    // Apply every command of the input; the summary is returned once all of them are durable
+    public Summary run(BufferedReader in) throws IOException {
+        Summary summary = new Summary();
+        long begin = System.nanoTime();
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            summary.lines++;
+
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+
+            String error;
+
+            try {
+                error = apply(line.split(","));
+            } catch (NumberFormatException | ArithmeticException e) {
+                error = "Invalid monetary value";
+            }
+
+            if (error == null) {
+                summary.applied++;
+            } else if (++summary.rejected <= MAX_REPORTED) {
+                rejects.println("Line " + summary.lines + ": " + error + ": " + line);
+            }
+
+            if (summary.lines % BATCH_SIZE == 0) {
+                engine.awaitDurable();
+            }
+        }
+
+        engine.awaitDurable();
+
+        if (summary.rejected > MAX_REPORTED) {
+            rejects.println((summary.rejected - MAX_REPORTED) + " more rejected lines not shown");
+        }
+
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    // Apply one command; returns why it was rejected, or null if it was applied
+    private String apply(String[] fields) {
+        switch (fields[0]) {
+            case "create":
+                return create(fields);
+
+            case "open":
+                return open(fields);
+
+            case "deposit": {
+                if (fields.length != 3) {
+                    return "Expected deposit,account,amount";
+                }
+
+                Account account = findAccount(fields[1]);
+                if (account == null) {
+                    return "No such account";
+                }
+
+                engine.deposit(ownerOf(fields[1]), account, Money.parse(fields[2]), false);
+                return null;
+            }
+
+            case "withdraw": {
+                if (fields.length != 3) {
+                    return "Expected withdraw,account,amount";
+                }
+
+                Account account = findAccount(fields[1]);
+                if (account == null) {
+                    return "No such account";
+                }
+
+                return engine.withdraw(ownerOf(fields[1]), account, Money.parse(fields[2]), false) != null ? null : "Insufficient funds";
+            }
+
+            case "transfer": {
+                if (fields.length != 4) {
+                    return "Expected transfer,fromAccount,toAccount,amount";
+                }
+
+                Account source = findAccount(fields[1]);
+                Account destination = findAccount(fields[2]);
+                if (source == null || destination == null) {
+                    return "No such account";
+                }
+                if (source == destination) {
+                    return "Cannot transfer money to the same account";
+                }
+
+                return engine.transfer(ownerOf(fields[1]), source, ownerOf(fields[2]), destination, Money.parse(fields[3]), false) != null ? null : "Insufficient funds";
+            }
+
+            default:
+                return "Unknown command";
+        }
+    }
+
+    private String open(String[] fields) {
+        if (fields.length != 3 && !(fields.length == 4 && fields[3].equals("savings"))) {
+            return "Expected open,username,initialDeposit[,savings]";
+        }
+
+        Customer customer = customers.get(fields[1]);
+        if (customer == null) {
+            return "No such user";
+        }
+
+        long initialDeposit = Money.parse(fields[2]);
+
+        Account account = fields.length == 4 ? new SavingsAccount() : new Account();
+        account.setBalance(initialDeposit);
+
+        return engine.openAccount(customer, account, initialDeposit, false) ? null : "Account id is unavailable";
+    }
+
+    private String create(String[] fields) {
+        if (fields.length != 9 && !(fields.length == 10 && fields[9].equals("savings"))) {
+            return "Expected create,username,password,firstName,lastName,address,phoneNumber,email,initialDeposit[,savings]";
+        }
+
+        if (!InputValidator.isUsername(fields[1])) {
+            return "Invalid username";
+        }
+        if (!InputValidator.isPassword(fields[2])) {
+            return "Invalid password";
+        }
+        if (!InputValidator.isName(fields[3]) || !InputValidator.isName(fields[4])) {
+            return "Invalid name";
+        }
+        if (!InputValidator.isNumber(fields[6])) {
+            return "Invalid phone number";
+        }
+        if (!InputValidator.isEmail(fields[7])) {
+            return "Invalid email";
+        }
+
+        long initialDeposit = Money.parse(fields[8]);
+
+        // Checked first so a taken username or email doesn't use up an account number
+        if (customers.containsKey(fields[1])) {
+            return "Username is unavailable";
+        }
+        if (engine.getIndex().isEmailTaken(fields[7])) {
+            return "Email is already registered";
+        }
+
+        Account account = fields.length == 10 ? new SavingsAccount() : new Account();
+        account.setBalance(initialDeposit);
+
+        // Hashed here, on the batch's own thread, rather than on the pool sign-ins wait for
+        Customer customer = new Customer(fields[1], PasswordHasher.hash(fields[2]), fields[3], fields[4], fields[5], fields[6], fields[7], account);
+
+        try {
+            return engine.openAccount(customer, initialDeposit, false) ? null : "Username or email is unavailable";
+        } catch (IllegalArgumentException e) {
+            return "Details too long";
+        }
+    }
+
+    // A username's primary account, or the account with the given id
+    private Account findAccount(String name) {
+        Customer customer = customers.get(name);
+
+        if (customer != null) {
+            return customer.getAccount();
+        }
+        return InputValidator.isAccountId(name) ? engine.getIndex().getAccount(name) : null;
+    }
+
+    private Customer ownerOf(String name) {
+        Customer customer = customers.get(name);
+        return customer != null ? customer : engine.getIndex().getByAccountId(name);
+    }
+
+}
@@ -0,0 +1,468 @@
+package com.dollarsbank.service;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.persistence.AccountRepository;
+import com.dollarsbank.persistence.CheckpointScheduler;
+import com.dollarsbank.persistence.CustomerRepository;
+import com.dollarsbank.utility.ConsolePrinterUtility;
+
+// Customers map that reads customers from storage on demand and keeps only about capacity of them in memory.
+//
+// get() and containsKey() read a customer that isn't in memory from the repository; size() counts every customer.
+// Iterating only sees the customers in memory. put() is for new customers, which are never in storage yet.
+//
+// Eviction approximates least recently used with a clock: customers queue in the order they were loaded, a get()
+// marks its customer as used, and the evictor passes over a used customer once, clearing the mark, before evicting
+// it. Customers with changes that aren't on disk yet stay; when only those are left over capacity, the cache asks
+// for a checkpoint, which writes them back so they can go. Pinned customers stay until unpinned.
+//
+// A customer is only evicted while holding its stripe lock, so never in the middle of a change. One evicted while
+// still held somewhere, e.g. by a signed in session, is remembered weakly and comes back on its next get() rather
+// than being read again, so there is never more than one copy of a customer in memory.
+public class CustomerCache extends AbstractMap<String, Customer> {
+
+    private final CustomerRepository repository;
+    private final AccountRepository accounts;
+    private final int capacity;
+
+    // Customers in storage when opened, plus those added since
+    private final int stored;
+    private final AtomicInteger added = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, Entry> resident;
+
+    // Customers being read from storage, so each is read once however many threads ask for it at the same time
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+    // Usernames in eviction order, one per customer in memory
+    private final ConcurrentLinkedQueue<String> clock = new ConcurrentLinkedQueue<>();
+
+    // Evicted customers that may still be held somewhere
+    private final ConcurrentHashMap<String, Evicted> evicted = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Customer> collected = new ReferenceQueue<>();
+
+    // One thread evicts at a time; the others go on without waiting
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    // Checkpoint count when a full pass found only customers waiting to be written; no use passing again until the next
+    private volatile long blockedAt = -1;
+
+    // Set once the engine is built, nothing is evicted before
+    private volatile TransferEngine engine;
+    private volatile CheckpointScheduler checkpoints;
+
+    private static class Entry {
+        private final Customer customer;
+
+        // Used since the clock last passed it
+        private volatile boolean used;
+
+        // In the engine's index; only then can it be evicted
+        private volatile boolean indexed;
+
+        // Guarded by the entry
+        private int pins;
+        private boolean gone;
+
+        private Entry(Customer customer) {
+            this.customer = customer;
+        }
+    }
+
+    private static class Evicted extends WeakReference<Customer> {
+        private final String username;
+
+        private Evicted(String username, Customer customer, ReferenceQueue<Customer> queue) {
+            super(customer, queue);
+            this.username = username;
+        }
+    }
+
+    public CustomerCache(CustomerRepository repository, AccountRepository accounts, int capacity) throws IOException {
+        this.repository = repository;
+        this.accounts = accounts;
+        this.capacity = Math.max(1, capacity);
+        this.stored = repository.count();
+        this.resident = new ConcurrentHashMap<>(Math.max(16, (int) (this.capacity / 0.75f) + 1));
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    // Number of customers in memory
+    public int getResidentCount() {
+        return resident.size();
+    }
+
+    // MAP
+
+    @Override
+    public Customer get(Object username) {
+        Entry entry = entry((String) username);
+        return entry != null ? entry.customer : null;
+    }
+
+    @Override
+    public boolean containsKey(Object username) {
+        return get(username) != null;
+    }
+
+    // A new customer, already indexed by the caller
+    @Override
+    public Customer put(String username, Customer customer) {
+        Entry entry = new Entry(customer);
+        entry.indexed = true;
+
+        Entry previous = resident.put(username, entry);
+        if (previous == null) {
+            added.incrementAndGet();
+            clock.add(username);
+        }
+
+        evict();
+        return previous != null ? previous.customer : null;
+    }
+
+    @Override
+    public int size() {
+        return stored + added.get();
+    }
+
+    // The customers in memory
+    @Override
+    public Set<Map.Entry<String, Customer>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Customer>>() {
+            @Override
+            public Iterator<Map.Entry<String, Customer>> iterator() {
+                Iterator<Map.Entry<String, Entry>> entries = resident.entrySet().iterator();
+
+                return new Iterator<Map.Entry<String, Customer>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Customer> next() {
+                        Map.Entry<String, Entry> entry = entries.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().customer);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return resident.size();
+            }
+        };
+    }
+
+    // PINNING
+
+    // Keep a customer in memory until unpin(), e.g. while a batch job works through it; null if there is no such customer
+    public Customer pin(String username) {
+        while (true) {
+            Entry entry = entry(username);
+
+            if (entry == null) {
+                return null;
+            }
+
+            synchronized (entry) {
+                // Evicted between the lookup and now, look again
+                if (!entry.gone) {
+                    entry.pins++;
+                    return entry.customer;
+                }
+            }
+        }
+    }
+
+    public void unpin(Customer customer) {
+        Entry entry = resident.get(customer.getUsername());
+
+        if (entry != null && entry.customer == customer) {
+            synchronized (entry) {
+                if (entry.pins > 0) {
+                    entry.pins--;
+                }
+            }
+        }
+    }
+
+    // Write every change back now and evict down to capacity
+    public void flush() {
+        if (checkpoints != null) {
+            checkpoints.checkpointNow();
+        }
+
+        evict();
+    }
+
+    // STORAGE LOOKUPS
+
+    // Owner of an account, read from storage if not in memory; null if there is none
+    Customer getByAccountId(String accountId) {
+        try {
+            String owner = accounts.findOwner(accountId);
+            return owner != null ? get(owner) : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to load customer.");
+            return null;
+        }
+    }
+
+    // Customer with the email, read from storage if not in memory; null if there is none
+    Customer getByEmail(String email) {
+        try {
+            Customer stored = repository.findByEmail(email);
+            Customer customer = stored != null ? get(stored.getUsername()) : null;
+
+            // The one in memory may have changed its email since it was stored
+            return customer != null && emailKey(customer.getEmail()).equals(emailKey(email)) ? customer : null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to load customer.");
+            return null;
+        }
+    }
+
+    // Whether storage has a customer with the email. Until a changed email is written back, storage
+    // still has the old one, so it stays taken a little longer than it needs to.
+    boolean isEmailStored(String email) {
+        try {
+            return repository.findByEmail(email) != null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to load customer.");
+            return true;
+        }
+    }
+
+    // Username and full name of every customer in storage
+    void loadNames(CustomerDirectory directory) {
+        try {
+            repository.forEachName(directory::add);
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to load customer directory.");
+        }
+    }
+
+    // Start evicting; the engine's index covers every customer in memory by now. Nothing is evicted until
+    // the next load, so customers replayed from the journal can be marked changed first.
+    void attach(TransferEngine engine, CheckpointScheduler checkpoints) {
+        for (Entry entry : resident.values()) {
+            entry.indexed = true;
+        }
+
+        this.checkpoints = checkpoints;
+        this.engine = engine;
+    }
+
+    // Helpers
+
+    private Entry entry(String username) {
+        Entry entry = resident.get(username);
+
+        if (entry != null) {
+            entry.used = true;
+            return entry;
+        }
+
+        // Read outside the resident map, whose bin locks would otherwise be held for the whole read; threads
+        // asking for the same customer meanwhile wait for this read instead of starting their own
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> other = loading.putIfAbsent(username, mine);
+
+        if (other != null) {
+            entry = other.join();
+
+            if (entry != null) {
+                entry.used = true;
+            }
+            return entry;
+        }
+
+        try {
+            // Loaded by another thread between the first look and now
+            entry = resident.get(username);
+
+            if (entry == null) {
+                Entry loaded = load(username);
+                entry = loaded != null ? resident.putIfAbsent(username, loaded) : null;
+
+                if (entry == null && loaded != null) {
+                    mine.complete(loaded);
+                    admit(loaded);
+                    return loaded;
+                }
+            }
+
+            if (entry != null) {
+                entry.used = true;
+            }
+
+            mine.complete(entry);
+            return entry;
+
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(username, mine);
+        }
+    }
+
+    // An evicted customer that is still around, or else the stored one
+    private Entry load(String username) {
+        purge();
+
+        Evicted ref = evicted.remove(username);
+        Customer customer = ref != null ? ref.get() : null;
+
+        if (customer == null) {
+            try {
+                customer = repository.findByUsername(username);
+            } catch (IOException e) {
+                e.printStackTrace();
+                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to load customer.");
+            }
+        }
+
+        return customer != null ? new Entry(customer) : null;
+    }
+
+    // Index a customer just loaded, outside the resident map's locks, then make room for it
+    private void admit(Entry entry) {
+        TransferEngine current = engine;
+
+        clock.add(entry.customer.getUsername());
+
+        if (current != null) {
+            current.getIndex().add(entry.customer);
+            entry.indexed = true;
+        }
+
+        evict();
+    }
+
+    private void evict() {
+        TransferEngine current = engine;
+
+        if (current == null || resident.size() <= capacity || (checkpoints != null && checkpoints.getWrittenCount() == blockedAt)) {
+            return;
+        }
+
+        if (!evicting.tryLock()) {
+            return;
+        }
+
+        try {
+            long written = checkpoints != null ? checkpoints.getWrittenCount() : 0;
+            boolean pending = false;
+            int budget = 2 * resident.size();
+
+            // Each customer is passed at most twice, once to clear its mark and once to evict it
+            for (; budget > 0 && resident.size() > capacity; budget--) {
+                String username = clock.poll();
+
+                if (username == null) {
+                    break;
+                }
+
+                Entry entry = resident.get(username);
+
+                if (entry == null) {
+                    continue;
+                }
+
+                if (entry.used || !entry.indexed) {
+                    entry.used = false;
+                    clock.add(username);
+                    continue;
+                }
+
+                if (checkpoints != null && checkpoints.isPending(username)) {
+                    pending = true;
+                    clock.add(username);
+                    continue;
+                }
+
+                if (!tryEvict(current, username, entry)) {
+                    clock.add(username);
+                }
+            }
+
+            // Only customers waiting to be written are left to evict
+            if (pending && resident.size() > capacity) {
+                if (budget == 0) {
+                    blockedAt = written;
+                }
+
+                checkpoints.requestCheckpoint();
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    // Evict unless the customer is being changed, is pinned or has changes not on disk yet
+    private boolean tryEvict(TransferEngine current, String username, Entry entry) {
+        ReentrantLock stripe = current.lockOf(entry.customer);
+
+        // This thread may be the one changing customers in the stripe
+        if (stripe.isHeldByCurrentThread() || !stripe.tryLock()) {
+            return false;
+        }
+
+        try {
+            synchronized (entry) {
+                if (entry.pins > 0 || (checkpoints != null && checkpoints.isPending(username))) {
+                    return false;
+                }
+
+                // Remembered first, so a get() that misses it from now on brings this one back
+                evicted.put(username, new Evicted(username, entry.customer, collected));
+                current.getIndex().remove(entry.customer);
+                resident.remove(username, entry);
+                entry.gone = true;
+            }
+
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Forget evicted customers nobody held on to
+    private void purge() {
+        Evicted ref;
+
+        while ((ref = (Evicted) collected.poll()) != null) {
+            evicted.remove(ref.username, ref);
+        }
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.dollarsbank.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.dollarsbank.model.Customer;
+
+// Customers sorted by username and by full name, searched by prefix a page at a time.
+// A page costs a skip list seek plus the entries on it, however many customers the bank has.
+//
+// Only usernames are kept, so the directory can list every customer even when most of them aren't in memory;
+// the customers on a page are looked up in the customers map as it is filled.
+//
+// Both orders ignore case. A customer whose username matches the prefix is listed with the username
+// matches; otherwise they are listed with the name matches, so nobody appears twice.
+public class CustomerDirectory {
+
+    // Separates the sort key from the username that makes it unique
+    private static final char SEPARATOR = '\0';
+
+    private final Map<String, Customer> customers;
+
+    // Sort key to username
+    private final ConcurrentSkipListMap<String, String> byUsername = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, String> byName = new ConcurrentSkipListMap<>();
+
+    public CustomerDirectory(Map<String, Customer> customers) {
+        this.customers = customers;
+    }
+
+    public void add(Customer customer) {
+        add(customer.getUsername(), customer.getFullName());
+    }
+
+    public void add(String username, String fullName) {
+        byUsername.put(usernameKey(username), username);
+        byName.put(fullName.toLowerCase(Locale.ROOT) + SEPARATOR + username, username);
+    }
+
+    // Every username in order
+    public Collection<String> usernames() {
+        return Collections.unmodifiableCollection(byUsername.values());
+    }
+
+    // First page of customers whose username or full name starts with the prefix; an empty prefix lists everyone
+    public Page search(String prefix, int pageSize) {
+        return fill(new Page(prefix.toLowerCase(Locale.ROOT), pageSize, 0, false, null));
+    }
+
+    // Page following the given one, empty if there are no more results
+    public Page next(Page page) {
+        return fill(new Page(page.prefix, page.pageSize, page.start + page.customers.size(), page.inNames, page.lastKey));
+    }
+
+    // Helpers
+
+    private Page fill(Page page) {
+        if (!page.inNames) {
+            scan(page, byUsername);
+
+            // Every username matches an empty prefix, so there is nothing more to find by name
+            if (page.more || page.prefix.isEmpty()) {
+                return page;
+            }
+
+            page.inNames = true;
+            page.lastKey = null;
+        }
+
+        scan(page, byName);
+        return page;
+    }
+
+    // Add entries from the map matching the page's prefix, after its last key, until the page is full.
+    // Stops at the first entry that doesn't fit, so hasMore() never promises an empty page.
+    private void scan(Page page, ConcurrentSkipListMap<String, String> map) {
+        Map<String, String> tail = page.lastKey == null ? map.tailMap(page.prefix, true) : map.tailMap(page.lastKey, false);
+
+        for (Map.Entry<String, String> entry : tail.entrySet()) {
+            String key = entry.getKey();
+
+            if (!key.startsWith(page.prefix)) {
+                break;
+            }
+
+            // Already listed with the username matches
+            if (page.inNames && usernameKey(entry.getValue()).startsWith(page.prefix)) {
+                page.lastKey = key;
+                continue;
+            }
+
+            if (page.customers.size() == page.pageSize) {
+                page.more = true;
+                return;
+            }
+
+            Customer customer = customers.get(entry.getValue());
+
+            page.lastKey = key;
+            if (customer != null) {
+                page.customers.add(customer);
+            }
+        }
+
+        page.more = false;
+    }
+
+    private static String usernameKey(String username) {
+        return username.toLowerCase(Locale.ROOT) + SEPARATOR + username;
+    }
+
+    // One page of search results, and where the next one starts
+    public static class Page {
+
+        private final String prefix;
+        private final int pageSize;
+        private final int start;
+        private final List<Customer> customers;
+
+        private boolean inNames;
+        private String lastKey;
+        private boolean more;
+
+        private Page(String prefix, int pageSize, int start, boolean inNames, String lastKey) {
+            this.prefix = prefix;
+            this.pageSize = pageSize;
+            this.start = start;
+            this.customers = new ArrayList<>(pageSize);
+            this.inNames = inNames;
+            this.lastKey = lastKey;
+        }
+
+        public List<Customer> getCustomers() {
+            return Collections.unmodifiableList(this.customers);
+        }
+
+        // Number of results on the pages before this one
+        public int getStart() {
+            return this.start;
+        }
+
+        public boolean hasMore() {
+            return this.more;
+        }
+
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.dollarsbank.service;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+
+// Secondary indexes over the customers by account, email and phone number, plus the sorted directory,
+// so none of those lookups has to scan every customer. The customers map stays the primary index, keyed by username.
+// Every account of every customer is in the account store, keyed by account number.
+//
+// Emails are unique, compared ignoring case. Several customers may share a phone number, so that index
+// holds a set per number.
+//
+// Registering a customer, adding an account and changing contact details hold this index's monitor, so the uniqueness
+// checks and every index update happen together. Lookups don't lock.
+//
+// When customers are loaded on demand (see CustomerCache) the indexes only cover the customers in memory, and
+// account and email lookups that miss go to storage. The directory lists every customer either way.
+public class CustomerIndex {
+
+    private final Map<String, Customer> customers;
+
+    // Set when customers are loaded on demand
+    private final CustomerCache cache;
+
+    private final AccountStore accounts;
+    private final ConcurrentHashMap<String, Customer> byEmail;
+    private final ConcurrentHashMap<String, Set<Customer>> byPhone;
+
+    // Sorted by username and name for the transfer screen
+    private final CustomerDirectory directory;
+
+    // Build the indexes over existing customers in a single pass, e.g. right after they are imported
+    public CustomerIndex(Map<String, Customer> customers) {
+        this.customers = customers;
+        this.cache = customers instanceof CustomerCache ? (CustomerCache) customers : null;
+        this.directory = new CustomerDirectory(customers);
+
+        // Sized up front so a large import never rehashes
+        int expected = cache != null ? Math.min(customers.size(), cache.getCapacity()) : customers.size();
+        int capacity = Math.max(16, (int) (expected / 0.75f) + 1);
+
+        this.accounts = new AccountStore(expected);
+        this.byEmail = new ConcurrentHashMap<>(capacity);
+        this.byPhone = new ConcurrentHashMap<>(capacity);
+
+        for (Customer customer : customers.values()) {
+            index(customer);
+            directory.add(customer);
+        }
+
+        if (cache != null) {
+            cache.loadNames(directory);
+        }
+    }
+
+    // LOOKUPS
+
+    public Customer getByAccountId(String accountId) {
+        Customer owner = accounts.getOwner(Account.numberOf(accountId));
+        return owner != null || cache == null ? owner : cache.getByAccountId(accountId);
+    }
+
+    public Account getAccount(String accountId) {
+        Account account = accounts.get(Account.numberOf(accountId));
+
+        if (account != null || cache == null) {
+            return account;
+        }
+
+        Customer owner = cache.getByAccountId(accountId);
+        return owner != null ? owner.getAccount(accountId) : null;
+    }
+
+    public AccountStore getAccounts() {
+        return this.accounts;
+    }
+
+    public Customer getByEmail(String email) {
+        Customer customer = byEmail.get(emailKey(email));
+        return customer != null || cache == null ? customer : cache.getByEmail(email);
+    }
+
+    // Only customers in memory when they are loaded on demand
+    public Set<Customer> getByPhone(String phoneNumber) {
+        Set<Customer> owners = byPhone.get(phoneNumber);
+        return owners != null ? Collections.unmodifiableSet(owners) : Collections.emptySet();
+    }
+
+    public boolean isEmailTaken(String email) {
+        return byEmail.containsKey(emailKey(email)) || (cache != null && cache.isEmailStored(email));
+    }
+
+    public CustomerDirectory getDirectory() {
+        return this.directory;
+    }
+
+    // UPDATES
+
+    // Add a new customer to the customers map and every index; returns false, changing nothing,
+    // if the username, an account id or the email is already taken
+    public synchronized boolean register(Customer customer) {
+        String email = emailKey(customer.getEmail());
+
+        if (customers.containsKey(customer.getUsername()) || !accounts.isFree(customer.getAccounts()) || isEmailTaken(email)) {
+            return false;
+        }
+
+        customers.put(customer.getUsername(), customer);
+        for (Account account : customer.getAccounts()) {
+            accounts.add(account, customer);
+        }
+        byEmail.put(email, customer);
+        addPhone(customer);
+        directory.add(customer);
+
+        return true;
+    }
+
+    // Give a registered customer another account; returns false, changing nothing, if its id is taken
+    public synchronized boolean addAccount(Customer customer, Account account) {
+        if (!accounts.add(account, customer)) {
+            return false;
+        }
+
+        customer.addAccount(account);
+        return true;
+    }
+
+    // Change a customer's email and phone number along with their index entries; returns false,
+    // changing nothing, if another customer has the email
+    public synchronized boolean updateContact(Customer customer, String email, String phoneNumber) {
+        String oldEmail = emailKey(customer.getEmail());
+        String newEmail = emailKey(email);
+        Customer owner = byEmail.get(newEmail);
+
+        if (owner != null && owner != customer) {
+            return false;
+        }
+
+        byEmail.remove(oldEmail, customer);
+        removePhone(customer);
+
+        customer.setEmail(email);
+        customer.setPhoneNumber(phoneNumber);
+
+        byEmail.put(newEmail, customer);
+        addPhone(customer);
+
+        return true;
+    }
+
+    // Index a customer just loaded into memory
+    synchronized void add(Customer customer) {
+        index(customer);
+    }
+
+    // Drop a customer evicted from memory; the directory keeps listing them
+    synchronized void remove(Customer customer) {
+        for (Account account : customer.getAccounts()) {
+            accounts.remove(account, customer);
+        }
+
+        byEmail.remove(emailKey(customer.getEmail()), customer);
+        removePhone(customer);
+    }
+
+    // Helpers
+
+    private void index(Customer customer) {
+        for (Account account : customer.getAccounts()) {
+            accounts.add(account, customer);
+        }
+
+        // Data saved before emails were unique keeps its first owner in the index
+        byEmail.putIfAbsent(emailKey(customer.getEmail()), customer);
+        addPhone(customer);
+    }
+
+    private void addPhone(Customer customer) {
+        byPhone.computeIfAbsent(customer.getPhoneNumber(), number -> ConcurrentHashMap.newKeySet()).add(customer);
+    }
+
+    private void removePhone(Customer customer) {
+        // Drop the set along with its last owner
+        byPhone.computeIfPresent(customer.getPhoneNumber(), (number, owners) -> {
+            owners.remove(customer);
+            return owners.isEmpty() ? null : owners;
+        });
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.dollarsbank.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+
+// Month-end run over every savings account: credit a month of interest and reset the withdrawal count.
+//
+// Savings accounts are grouped by their owner's lock stripe, and each partition owns a fixed share of the
+// stripes. Partitions never wait on each other's locks, and everything in one stripe is applied under a
+// single lock and journaled as one record. Sessions can keep running; they only wait for the stripe
+// being processed. The run waits once for the journal at the end.
+//
+// When customers are loaded on demand, only a chunk of them is in memory at a time, see runInChunks().
+public class MonthEndProcessor {
+
+    // Partitions processed in parallel
+    private static final int PARTITIONS = Integer.getInteger("dollarsbank.monthend.partitions", Runtime.getRuntime().availableProcessors());
+
+    private final TransferEngine engine;
+    private final int partitions;
+
+    public MonthEndProcessor(TransferEngine engine) {
+        this(engine, PARTITIONS);
+    }
+
+    public MonthEndProcessor(TransferEngine engine, int partitions) {
+        this.engine = engine;
+        this.partitions = Math.max(1, Math.min(partitions, engine.getStripeCount()));
+    }
+
+    // Accounts, interest and time of one partition
+    public static class Partition {
+        private final int index;
+        private long accounts;
+        private long interest;
+        private long elapsedNanos;
+
+        private Partition(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return this.index;
+        }
+
+        public long getAccounts() {
+            return this.accounts;
+        }
+
+        public long getInterest() {
+            return this.interest;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Partition %d: %d accounts, $%s interest in %d ms",
+                index, accounts, Money.format(interest), elapsedNanos / 1000000);
+        }
+    }
+
+    // Totals of a finished run, with every partition's share
+    public static class Summary {
+        private final List<Partition> partitions = new ArrayList<>();
+        private long accounts;
+        private long interest;
+        private long groupingNanos;
+        private long elapsedNanos;
+
+        public List<Partition> getPartitions() {
+            return this.partitions;
+        }
+
+        public long getAccounts() {
+            return this.accounts;
+        }
+
+        public long getInterest() {
+            return this.interest;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        public double getAccountsPerSecond() {
+            return elapsedNanos == 0 ? 0 : accounts / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+
+            for (Partition partition : partitions) {
+                sb.append(partition).append(System.lineSeparator());
+            }
+
+            return sb.append(String.format("%d savings accounts, $%s interest in %d ms (%d ms grouping, %.0f accounts/sec)",
+                accounts, Money.format(interest), elapsedNanos / 1000000, groupingNanos / 1000000, getAccountsPerSecond())).toString();
+        }
+    }
+
+    // Process every savings account; the summary is returned once all of it is durable
+    public Summary run() throws InterruptedException {
+        Summary summary = new Summary();
+        long begin = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(partitions, task -> {
+            Thread thread = new Thread(task, "month-end");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            if (engine.getCustomers() instanceof CustomerCache) {
+                runInChunks((CustomerCache) engine.getCustomers(), executor, summary);
+            } else {
+                List<List<SavingsAccount>> byStripe = groupByStripe();
+                summary.groupingNanos = System.nanoTime() - begin;
+
+                runPartitions(byStripe, executor, summary);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        engine.awaitDurable();
+
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    // Helpers
+
+    private void runPartitions(List<List<SavingsAccount>> byStripe, ExecutorService executor, Summary summary) throws InterruptedException {
+        List<Callable<Partition>> tasks = new ArrayList<>(partitions);
+
+        for (int p = 0; p < partitions; p++) {
+            int index = p;
+            tasks.add(() -> runPartition(index, byStripe));
+        }
+
+        try {
+            for (Future<Partition> future : executor.invokeAll(tasks)) {
+                Partition partition = future.get();
+
+                // Chunks add to the partition's share from the chunks before
+                if (partition.index < summary.partitions.size()) {
+                    Partition total = summary.partitions.get(partition.index);
+                    total.accounts += partition.accounts;
+                    total.interest = Money.add(total.interest, partition.interest);
+                    total.elapsedNanos += partition.elapsedNanos;
+                } else {
+                    summary.partitions.add(partition);
+                }
+
+                summary.accounts += partition.accounts;
+                summary.interest = Money.add(summary.interest, partition.interest);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Month-end partition failed", e.getCause());
+        }
+    }
+
+    // Partition p owns stripes p, p + partitions, p + 2 * partitions...
+    private Partition runPartition(int index, List<List<SavingsAccount>> byStripe) {
+        Partition partition = new Partition(index);
+        long begin = System.nanoTime();
+
+        for (int stripe = index; stripe < byStripe.size(); stripe += partitions) {
+            List<SavingsAccount> savers = byStripe.get(stripe);
+
+            if (!savers.isEmpty()) {
+                partition.interest = Money.add(partition.interest, engine.accrueInterest(stripe, savers));
+                partition.accounts += savers.size();
+            }
+        }
+
+        partition.elapsedNanos = System.nanoTime() - begin;
+        return partition;
+    }
+
+    // Customers loaded on demand are processed half a cache at a time, in directory order. A chunk stays pinned
+    // in memory while it is processed, then is written back so it can be evicted before the next one is loaded.
+    private void runInChunks(CustomerCache cache, ExecutorService executor, Summary summary) throws InterruptedException {
+        int chunkSize = Math.max(1, cache.getCapacity() / 2);
+        List<Customer> chunk = new ArrayList<>(chunkSize);
+
+        for (String username : engine.getIndex().getDirectory().usernames()) {
+            Customer customer = cache.pin(username);
+
+            if (customer != null) {
+                chunk.add(customer);
+            }
+
+            if (chunk.size() == chunkSize) {
+                runChunk(cache, chunk, executor, summary);
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            runChunk(cache, chunk, executor, summary);
+        }
+    }
+
+    private void runChunk(CustomerCache cache, List<Customer> chunk, ExecutorService executor, Summary summary) throws InterruptedException {
+        long begin = System.nanoTime();
+
+        try {
+            List<List<SavingsAccount>> byStripe = newStripes();
+
+            for (Customer customer : chunk) {
+                for (Account account : customer.getAccounts()) {
+                    if (account instanceof SavingsAccount) {
+                        byStripe.get(engine.stripeOf(customer)).add((SavingsAccount) account);
+                    }
+                }
+            }
+
+            summary.groupingNanos += System.nanoTime() - begin;
+            runPartitions(byStripe, executor, summary);
+        } finally {
+            for (Customer customer : chunk) {
+                cache.unpin(customer);
+            }
+
+            chunk.clear();
+        }
+
+        cache.flush();
+    }
+
+    // One pass over the account store, keeping only savings accounts, grouped by their owner's stripe
+    private List<List<SavingsAccount>> groupByStripe() {
+        List<List<SavingsAccount>> byStripe = newStripes();
+
+        engine.getIndex().getAccounts().forEach((account, owner) -> {
+            if (account instanceof SavingsAccount) {
+                byStripe.get(engine.stripeOf(owner)).add((SavingsAccount) account);
+            }
+        });
+
+        return byStripe;
+    }
+
+    private List<List<SavingsAccount>> newStripes() {
+        int stripes = engine.getStripeCount();
+        List<List<SavingsAccount>> byStripe = new ArrayList<>(stripes);
+
+        for (int i = 0; i < stripes; i++) {
+            byStripe.add(new ArrayList<>());
+        }
+
+        return byStripe;
+    }
+
+}
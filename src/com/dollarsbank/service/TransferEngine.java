@@ -0,0 +1,598 @@
+package com.dollarsbank.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.dollarsbank.metrics.Metrics;
+import com.dollarsbank.model.Account;
+import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.SavingsAccount;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
+import com.dollarsbank.persistence.AccountLedger;
+import com.dollarsbank.persistence.CheckpointScheduler;
+import com.dollarsbank.persistence.TransactionJournal;
+import com.dollarsbank.utility.DataGeneratorStubUtil;
+import com.dollarsbank.utility.FileStorageUtility;
+
+// Thread-safe core for opening accounts, deposits, withdrawals and transfers, shared by every session.
+//
+// Accounts are guarded by a fixed array of lock stripes chosen from the owner's primary account id, so
+// every account of a customer shares one lock with the customer's recent transactions. A transfer takes
+// both stripes in stripe order, so two transfers in opposite directions can never deadlock. The funds
+// check and the debit happen under the same lock, so balances can't go negative under contention.
+//
+// Persistence is optional: the journal, ledger and checkpoint scheduler may be null.
+public class TransferEngine {
+
+    // Must be a power of two
+    private static final int STRIPES = 256;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // Concurrent, or loaded on demand
+    private final Map<String, Customer> customers;
+
+    // Lookups by account, email and phone number, kept in step with the customers
+    private final CustomerIndex index;
+
+    private final TransactionJournal journal;
+    private final AccountLedger ledger;
+    private final CheckpointScheduler checkpoints;
+
+    public TransferEngine(Map<String, Customer> customers, TransactionJournal journal, AccountLedger ledger, CheckpointScheduler checkpoints) {
+        this.customers = customers instanceof ConcurrentHashMap || customers instanceof CustomerCache ? customers : new ConcurrentHashMap<>(customers);
+        this.journal = journal;
+        this.ledger = ledger;
+        this.checkpoints = checkpoints;
+        this.index = new CustomerIndex(this.customers);
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        if (checkpoints != null) {
+            checkpoints.attach(stripes, this::stripeOf);
+        }
+
+        // Customers can only be evicted once there are stripe locks to hold and an index to drop them from
+        if (customers instanceof CustomerCache) {
+            ((CustomerCache) customers).attach(this, checkpoints);
+        }
+    }
+
+    // Engine without any persistence, used for benchmarks and stress tests
+    public TransferEngine(Map<String, Customer> customers) {
+        this(customers, null, null, null);
+    }
+
+    public Map<String, Customer> getCustomers() {
+        return this.customers;
+    }
+
+    public CustomerIndex getIndex() {
+        return this.index;
+    }
+
+    // Accounts in different stripes can be changed in parallel without contending for a lock
+    public int getStripeCount() {
+        return STRIPES;
+    }
+
+    public int stripeOf(Customer customer) {
+        return stripeOf(customer.getAccount());
+    }
+
+    // Held while any of the customer's accounts change
+    ReentrantLock lockOf(Customer customer) {
+        return stripes[stripeOf(customer)];
+    }
+
+    private static int stripeOf(Account account) {
+        int h = account.getAccountId().hashCode();
+
+        // Spread the hash so ids differing only in their last digits use different stripes
+        h ^= (h >>> 16);
+        return (h * 0x9E3779B9) >>> 24 & (STRIPES - 1);
+    }
+
+    // OPERATIONS
+
+    // Each operation returns once it is journaled and durable. The overloads taking durable = false return
+    // as soon as it is applied, for callers like batch runs that call awaitDurable() once per many operations.
+    // Either way its latency up to the return is recorded in Metrics.
+
+    // Register a new customer; returns false if the username or email was taken in the meantime
+    public boolean openAccount(Customer customer, long initialDeposit) {
+        return openAccount(customer, initialDeposit, true);
+    }
+
+    public boolean openAccount(Customer customer, long initialDeposit, boolean durable) {
+        long begin = System.nanoTime();
+        long journalSeq = 0;
+        Lock stripe = stripes[stripeOf(customer)];
+
+        checkAmount(initialDeposit);
+
+        if (!TransactionJournal.fits(customer) || !FileStorageUtility.fits(customer)) {
+            throw new IllegalArgumentException("Details of " + customer.getUsername() + " are too long to keep");
+        }
+
+        beginMutation();
+        stripe.lock();
+        try {
+            if (!index.register(customer)) {
+                Metrics.OPEN_ACCOUNT.recordSince(begin);
+                return false;
+            }
+
+            if (journal != null) {
+                journalSeq = journal.logCreate(customer, initialDeposit);
+            }
+
+            post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INITIAL_DEPOSIT, initialDeposit, customer.getAccount()));
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+
+        if (durable) {
+            awaitDurable(journalSeq);
+        }
+
+        Metrics.OPEN_ACCOUNT.recordSince(begin);
+        return true;
+    }
+
+    // Give an existing customer another account, e.g. a savings account next to their checking;
+    // returns false if the account id is already taken
+    public boolean openAccount(Customer customer, Account account, long initialDeposit) {
+        return openAccount(customer, account, initialDeposit, true);
+    }
+
+    public boolean openAccount(Customer customer, Account account, long initialDeposit, boolean durable) {
+        long begin = System.nanoTime();
+        long journalSeq = 0;
+        Lock stripe = stripes[stripeOf(customer)];
+
+        checkAmount(initialDeposit);
+
+        beginMutation();
+        stripe.lock();
+        try {
+            if (!index.addAccount(customer, account)) {
+                Metrics.OPEN_ACCOUNT.recordSince(begin);
+                return false;
+            }
+
+            if (journal != null) {
+                journalSeq = journal.logOpenAccount(customer.getUsername(), account, initialDeposit);
+            }
+
+            post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INITIAL_DEPOSIT, initialDeposit, account));
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+
+        if (durable) {
+            awaitDurable(journalSeq);
+        }
+
+        Metrics.OPEN_ACCOUNT.recordSince(begin);
+        return true;
+    }
+
+    // Deposits, withdrawals and transfers without an account use the customer's primary account
+
+    public Transaction deposit(Customer customer, long amount) {
+        return deposit(customer, customer.getAccount(), amount, true);
+    }
+
+    public Transaction deposit(Customer customer, long amount, boolean durable) {
+        return deposit(customer, customer.getAccount(), amount, durable);
+    }
+
+    public Transaction deposit(Customer customer, Account account, long amount) {
+        return deposit(customer, account, amount, true);
+    }
+
+    public Transaction deposit(Customer customer, Account account, long amount, boolean durable) {
+        long begin = System.nanoTime();
+        long journalSeq = 0;
+        Transaction transaction;
+        Lock stripe = stripes[stripeOf(customer)];
+
+        checkOwner(customer, account);
+        checkAmount(amount);
+
+        beginMutation();
+        stripe.lock();
+        try {
+            // Checked before anything is journaled, so an overflow leaves nothing to undo
+            Money.add(account.getBalance(), amount);
+
+            if (journal != null) {
+                journalSeq = journal.logDeposit(customer.getUsername(), account.getAccountId(), amount);
+            }
+
+            transaction = applyDeposit(customer, account, amount);
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+
+        if (durable) {
+            awaitDurable(journalSeq);
+        }
+
+        Metrics.DEPOSIT.recordSince(begin);
+        return transaction;
+    }
+
+    // Returns null if the account doesn't have enough funds
+    public Transaction withdraw(Customer customer, long amount) {
+        return withdraw(customer, customer.getAccount(), amount, true);
+    }
+
+    public Transaction withdraw(Customer customer, long amount, boolean durable) {
+        return withdraw(customer, customer.getAccount(), amount, durable);
+    }
+
+    public Transaction withdraw(Customer customer, Account account, long amount) {
+        return withdraw(customer, account, amount, true);
+    }
+
+    public Transaction withdraw(Customer customer, Account account, long amount, boolean durable) {
+        long begin = System.nanoTime();
+        long journalSeq = 0;
+        Transaction transaction;
+        Lock stripe = stripes[stripeOf(customer)];
+
+        checkOwner(customer, account);
+        checkAmount(amount);
+
+        beginMutation();
+        stripe.lock();
+        try {
+            if (amount > account.getBalance()) {
+                Metrics.WITHDRAWAL.recordSince(begin);
+                return null;
+            }
+
+            if (journal != null) {
+                journalSeq = journal.logWithdrawal(customer.getUsername(), account.getAccountId(), amount);
+            }
+
+            transaction = applyWithdrawal(customer, account, amount);
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+
+        if (durable) {
+            awaitDurable(journalSeq);
+        }
+
+        Metrics.WITHDRAWAL.recordSince(begin);
+        return transaction;
+    }
+
+    // Move funds between two accounts, which may belong to the same customer; returns the sender's
+    // transaction, or null if the source doesn't have enough funds
+    public Transaction transfer(Customer from, Customer to, long amount) {
+        return transfer(from, from.getAccount(), to, to.getAccount(), amount, true);
+    }
+
+    public Transaction transfer(Customer from, Customer to, long amount, boolean durable) {
+        return transfer(from, from.getAccount(), to, to.getAccount(), amount, durable);
+    }
+
+    public Transaction transfer(Customer from, Account source, Customer to, Account destination, long amount) {
+        return transfer(from, source, to, destination, amount, true);
+    }
+
+    public Transaction transfer(Customer from, Account source, Customer to, Account destination, long amount, boolean durable) {
+        long begin = System.nanoTime();
+        long journalSeq = 0;
+        Transaction transaction;
+
+        checkOwner(from, source);
+        checkOwner(to, destination);
+        checkAmount(amount);
+
+        if (source == destination) {
+            throw new IllegalArgumentException("Cannot transfer within account " + source.getAccountId());
+        }
+
+        int first = stripeOf(from);
+        int second = stripeOf(to);
+
+        // Always lock the lower stripe first; both accounts may share a stripe
+        if (first > second) {
+            int tmp = first;
+            first = second;
+            second = tmp;
+        }
+
+        beginMutation();
+        stripes[first].lock();
+        if (second != first) {
+            stripes[second].lock();
+        }
+        try {
+            if (amount > source.getBalance()) {
+                Metrics.TRANSFER.recordSince(begin);
+                return null;
+            }
+
+            Money.add(destination.getBalance(), amount);
+
+            if (journal != null) {
+                journalSeq = journal.logTransfer(from.getUsername(), source.getAccountId(), to.getUsername(), destination.getAccountId(), amount);
+            }
+
+            // Debit and credit happen together under both locks
+            transaction = applyTransfer(from, source, to, destination, amount);
+        } finally {
+            if (second != first) {
+                stripes[second].unlock();
+            }
+            stripes[first].unlock();
+            endMutation();
+        }
+
+        if (durable) {
+            awaitDurable(journalSeq);
+        }
+
+        Metrics.TRANSFER.recordSince(begin);
+        return transaction;
+    }
+
+    // Change a customer's email and phone number; returns false if another customer has the email
+    public boolean updateContact(Customer customer, String email, String phoneNumber) {
+        long journalSeq = 0;
+        Lock stripe = stripes[stripeOf(customer)];
+
+        if (!FileStorageUtility.fitsContact(email, phoneNumber)) {
+            throw new IllegalArgumentException("Contact details of " + customer.getUsername() + " are too long to keep");
+        }
+
+        beginMutation();
+        stripe.lock();
+        try {
+            if (!index.updateContact(customer, email, phoneNumber)) {
+                return false;
+            }
+
+            if (journal != null) {
+                journalSeq = journal.logContactUpdate(customer.getUsername(), email, phoneNumber);
+            }
+
+            if (checkpoints != null) {
+                checkpoints.markDirty(customer);
+            }
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+
+        awaitDurable(journalSeq);
+        return true;
+    }
+
+    // Replace a customer's stored password hash, e.g. with one at a higher cost after they sign in.
+    // Not journaled: a rehash lost in a crash is simply done again at the next sign-in.
+    public void changePassword(Customer customer, String hash) {
+        Lock stripe = stripes[stripeOf(customer)];
+
+        beginMutation();
+        stripe.lock();
+        try {
+            customer.setPassword(hash);
+
+            if (checkpoints != null) {
+                checkpoints.markDirty(customer);
+            }
+        } finally {
+            stripe.unlock();
+            endMutation();
+        }
+    }
+
+    // Month-end for savings accounts whose owners all share the given stripe: credit a month of interest and reset
+    // the withdrawal count. Holding the one stripe covers them all, and they are journaled together as one record.
+    // Returns the interest credited; call awaitDurable() once the whole run is done.
+    public long accrueInterest(int stripe, List<SavingsAccount> savings) {
+        Customer[] owners = new Customer[savings.size()];
+        String[] usernames = new String[owners.length];
+        String[] accountIds = new String[owners.length];
+        long[] amounts = new long[owners.length];
+        long total = 0;
+
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = index.getByAccountId(savings.get(i).getAccountId());
+
+            if (owners[i] == null || stripeOf(owners[i]) != stripe) {
+                throw new IllegalArgumentException("Not a savings account in stripe " + stripe + ": " + savings.get(i).getAccountId());
+            }
+        }
+
+        beginMutation();
+        stripes[stripe].lock();
+        try {
+            // Every amount is worked out and checked before anything is journaled, and nothing is applied before
+            // it is, so an overflow leaves the whole batch untouched
+            for (int i = 0; i < owners.length; i++) {
+                SavingsAccount account = savings.get(i);
+                long interest = account.getMonthlyInterest();
+
+                Money.add(account.getBalance(), interest);
+                total = Money.add(total, interest);
+
+                usernames[i] = owners[i].getUsername();
+                accountIds[i] = account.getAccountId();
+                amounts[i] = interest;
+            }
+
+            if (journal != null && usernames.length > 0) {
+                journal.logInterest(usernames, accountIds, amounts, usernames.length);
+            }
+
+            for (int i = 0; i < owners.length; i++) {
+                Customer customer = owners[i];
+                SavingsAccount account = savings.get(i);
+
+                account.setBalance(account.getBalance() + amounts[i]);
+                account.setWithdrawalsThisMonth(0);
+
+                if (amounts[i] > 0) {
+                    post(customer, DataGeneratorStubUtil.transactionStub(TransactionType.INTEREST, amounts[i], account));
+                } else if (checkpoints != null) {
+                    // The withdrawal count still changed
+                    checkpoints.markDirty(customer);
+                }
+            }
+        } finally {
+            stripes[stripe].unlock();
+            endMutation();
+        }
+
+        return total;
+    }
+
+    // Wait until every operation applied so far is durable
+    public void awaitDurable() {
+        if (journal != null) {
+            awaitDurable(journal.getLastSequence());
+        }
+    }
+
+    // Sum of every balance, taken with all stripes held so no transfer is half applied.
+    // Customers loaded on demand only count while they are in memory.
+    public long totalBalance() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i].lock();
+        }
+
+        try {
+            long total = 0;
+
+            for (Customer customer : customers.values()) {
+                for (Account account : customer.getAccounts()) {
+                    total = Money.add(total, account.getBalance());
+                }
+            }
+
+            return total;
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    // Copy of a customer's recent transactions, taken under the account's lock
+    public Transaction[] recentTransactions(Customer customer) {
+        Lock stripe = stripes[stripeOf(customer)];
+
+        stripe.lock();
+        try {
+            Transaction[] recent = new Transaction[customer.getTransactions().size()];
+
+            for (int i = 0; i < recent.length; i++) {
+                recent[i] = customer.getTransactions().get(i);
+            }
+
+            return recent;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Balance changes once checked and journaled. Callers hold the stripes of every customer involved and the
+    // mutation lock.
+
+    private Transaction applyDeposit(Customer customer, Account account, long amount) {
+        account.setBalance(Money.add(account.getBalance(), amount));
+
+        Transaction transaction = DataGeneratorStubUtil.transactionStub(TransactionType.DEPOSIT, amount, account);
+        post(customer, transaction);
+        return transaction;
+    }
+
+    private Transaction applyWithdrawal(Customer customer, Account account, long amount) {
+        account.setBalance(Money.subtract(account.getBalance(), amount));
+
+        if (account instanceof SavingsAccount) {
+            ((SavingsAccount) account).recordWithdrawal();
+        }
+
+        Transaction transaction = DataGeneratorStubUtil.transactionStub(TransactionType.WITHDRAWAL, amount, account);
+        post(customer, transaction);
+        return transaction;
+    }
+
+    private Transaction applyTransfer(Customer from, Account source, Customer to, Account destination, long amount) {
+        source.setBalance(Money.subtract(source.getBalance(), amount));
+        destination.setBalance(Money.add(destination.getBalance(), amount));
+
+        Transaction transaction = DataGeneratorStubUtil.transferToStub(amount, source, to, destination);
+        post(from, transaction);
+        post(to, DataGeneratorStubUtil.transferFromStub(amount, from, source, destination));
+        return transaction;
+    }
+
+    // Helpers
+
+    private static void checkOwner(Customer customer, Account account) {
+        if (!customer.owns(account)) {
+            throw new IllegalArgumentException("Account " + account.getAccountId() + " does not belong to " + customer.getUsername());
+        }
+    }
+
+    // A negative amount would turn a withdrawal into a deposit and get past the funds check
+    private static void checkAmount(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Negative amount: " + amount);
+        }
+    }
+
+    // Post to the recent transactions and ledger, and mark the customer for the next checkpoint
+    private void post(Customer customer, Transaction transaction) {
+        DataGeneratorStubUtil.postTransaction(customer, transaction);
+
+        if (ledger != null) {
+            ledger.append(transaction);
+        }
+
+        if (checkpoints != null) {
+            checkpoints.markDirty(customer);
+        }
+    }
+
+    // Mutations run concurrently with each other but never while a checkpoint captures state
+    void beginMutation() {
+        if (checkpoints != null) {
+            checkpoints.getLock().readLock().lock();
+        }
+    }
+
+    void endMutation() {
+        if (checkpoints != null) {
+            checkpoints.getLock().readLock().unlock();
+        }
+    }
+
+    private void awaitDurable(long journalSeq) {
+        if (journal != null && journalSeq > 0) {
+            journal.awaitDurable(journalSeq);
+        }
+    }
+
+}
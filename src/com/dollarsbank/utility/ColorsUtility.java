@@ -11,9 +11,25 @@ public enum ColorsUtility {
     ANSI_CYAN("\u001B[36m"), ANSI_CYAN_BACKGROUND("\u001B[46m"),
     ANSI_WHITE("\u001B[37m"), ANSI_WHITE_BACKGROUND("\u001B[47m");
 
+    // Always the code; outputs without colors leave it out as they write, see ConsolePrinterUtility.openOutput
     public final String value;
 
+    // -Ddollarsbank.ansi=on|off|auto; auto, the default, decides for each output
+    private static final String SETTING = System.getProperty("dollarsbank.ansi", "auto");
+
     private ColorsUtility(String value) {
         this.value = value;
     }
+
+    // Whether an output keeps ANSI codes, given whether it is shown by a terminal
+    public static boolean isEnabled(boolean terminal) {
+        switch (SETTING) {
+            case "on":
+                return true;
+            case "off":
+                return false;
+            default:
+                return terminal;
+        }
+    }
 }
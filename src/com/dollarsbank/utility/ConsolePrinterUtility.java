@@ -1,5 +1,14 @@
 package com.dollarsbank.utility;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
 public class ConsolePrinterUtility {
 
     // Default colors for the different types of messages
@@ -10,45 +19,118 @@ public class ConsolePrinterUtility {
     public static final String MSG_SYS = ColorsUtility.ANSI_YELLOW.value;
     public static final String USER_INPUT = ColorsUtility.ANSI_CYAN.value;
     public static final String RESET_TEXT = ColorsUtility.ANSI_RESET.value;
+
+    // Screens are written to a buffer and sent in one write when the user is asked for input, see flush().
+    // System.out would write every line as it is printed. Colored only when the console is a terminal.
+    private static final int CONSOLE_BUFFER = 16 * 1024;
+    private static final PrintStream CONSOLE = openOutput(new FileOutputStream(FileDescriptor.out), CONSOLE_BUFFER, Charset.defaultCharset(), System.console() != null);
+
+    // -Ddollarsbank.admin=true offers the bank's metrics on the guest menu
+    public static final boolean ADMIN_MENU = Boolean.getBoolean("dollarsbank.admin");
+
+    // Output of the session running on the current thread, see bindOutput
+    private static final ThreadLocal<PrintStream> OUTPUT = new ThreadLocal<>();
+
+    // Static screens, built once
+    private static final String GUEST_MENU = createBoxedMsg("DOLLARSBANK Welcomes You!") + guestMenuOptions();
+    private static final String CUSTOMER_MENU = createBoxedMsg("WELCOME Customer!!!") + customerMenuOptions();
+    private static final String NEW_ACCT_HEADER = createBoxedMsg("Enter Details for New Account");
+    private static final String LOGIN_HEADER = createBoxedMsg("Enter Login Details");
+    private static final String RECENT_TRANS_HEADER = createBoxedMsg("5 Recent Transactions");
+    private static final String TRANSACTION_HISTORY_HEADER = createBoxedMsg("Transaction History");
+    private static final String CUSTOMER_INFO_HEADER = createBoxedMsg("Your Information");
+    private static final String METRICS_HEADER = createBoxedMsg("Bank Metrics");
+
+    static {
+        // Whatever is left in the buffer when the program ends
+        Runtime.getRuntime().addShutdownHook(new Thread(CONSOLE::flush, "console-flush"));
+    }
+
+    // Where everything printed on this thread goes: the session's connection, or the console.
+    // Neither flushes on its own, see flush().
+    public static final PrintStream out() {
+        PrintStream out = OUTPUT.get();
+        return out != null ? out : CONSOLE;
+    }
+
+    // Send the screen composed so far; done whenever input is asked for, and after messages nobody replies to
+    public static final void flush() {
+        out().flush();
+    }
+
+    // Send this thread's output to a session until unbindOutput is called.
+    // The stream should buffer and not flush automatically, so a screen is sent in one write.
+    public static final void bindOutput(PrintStream out) {
+        OUTPUT.set(out);
+    }
+
+    public static final void unbindOutput() {
+        OUTPUT.remove();
+    }
+
+    // Buffered stream without autoflush over an output, e.g. a session's connection, leaving out ANSI codes
+    // unless colors are on for it
+    public static final PrintStream openOutput(OutputStream out, int bufferSize, Charset charset, boolean terminal) {
+        OutputStream buffered = new BufferedOutputStream(out, bufferSize);
+        return new PrintStream(ColorsUtility.isEnabled(terminal) ? buffered : new PlainOutputStream(buffered), false, charset);
+    }
     
     // Welcome message seen when a user is not logged in
     public static final String getGuestMenu() {
-        return createBoxedMsg("DOLLARSBANK Welcomes You!") + guestMenuOptions();
+        return GUEST_MENU;
     }
 
     // Welcome message when a user is logged in
     public static final String getCustomerMenu() {
-        return createBoxedMsg("WELCOME Customer!!!") + customerMenuOptions();
+        return CUSTOMER_MENU;
     }
 
     // Instructions when created a new account
     public static final void printNewAcctHeader() {
-        System.out.print(createBoxedMsg("Enter Details for New Account"));
+        out().print(NEW_ACCT_HEADER);
     }
 
     // Login message
     public static final void printLoginHeader() {
-        System.out.print(createBoxedMsg("Enter Login Details"));
+        out().print(LOGIN_HEADER);
     }
 
     // 5 Recent Transactions header
     public static final void printRecentTransHeader() {
-        System.out.print(createBoxedMsg("5 Recent Transactions"));
+        out().print(RECENT_TRANS_HEADER);
+    }
+
+    // Full Transaction History header
+    public static final void printTransactionHistoryHeader() {
+        out().print(TRANSACTION_HISTORY_HEADER);
     }
 
     // Header for displaying customer information
     public static final void printCustomerInfoHeader() {
-        System.out.println(createBoxedMsg("Your Information"));
+        out().println(CUSTOMER_INFO_HEADER);
+    }
+
+    // Header for the admin menu's metrics
+    public static final void printMetricsHeader() {
+        out().println(METRICS_HEADER);
     }
 
     // Error Message
     public static final void printMessage(String type, String msg) {
-        System.out.println(type + msg + RESET_TEXT);
+        PrintStream out = out();
+        out.println(type + msg + RESET_TEXT);
+
+        // Errors are often printed by background threads, with no prompt coming to send them
+        if (MSG_ERROR.equals(type)) {
+            out.flush();
+        }
     }
 
-    // Asking for user input
+    // Asking for user input, which ends the screen
     public static final void askForInput(String msg) {
-        System.out.println(MSG_CHOICE + msg + USER_INPUT);
+        PrintStream out = out();
+        out.println(MSG_CHOICE + msg + USER_INPUT);
+        out.flush();
     }
 
     // Menu for users who hasn't logged in yet
@@ -56,7 +138,8 @@ public class ConsolePrinterUtility {
         return
             "1. Create New Account\n" +
             "2. Login\n" +
-            "3. Exit\n";
+            "3. Exit\n" +
+            (ADMIN_MENU ? "4. Bank Metrics\n" : "");
     }
 
     // Menu once user has logged in
@@ -66,14 +149,16 @@ public class ConsolePrinterUtility {
             "2. Withdraw Amount\n" +
             "3. Funds Transfer\n" +
             "4. View 5 Recent Transactions\n" +
-            "5. Display Customer Information\n" +
-            "6. Sign Out\n";
+            "5. View Transaction History\n" +
+            "6. Display Customer Information\n" +
+            "7. Open Another Account\n" +
+            "8. Sign Out\n";
     }
 
     // Helper function used to box a message
     private static String createBoxedMsg(String msg) {
         int msgLength = getMaxStringLen(msg);
-        StringBuffer sb = new StringBuffer(100);
+        StringBuilder sb = new StringBuilder(100);
         
         sb.append("\n" + boxedLine(msgLength));
         sb.append(String.format("%s| %s |%s%n", MSG_HEADER, padString(msg, msgLength), RESET_TEXT));
@@ -107,4 +192,59 @@ public class ConsolePrinterUtility {
         return sb.append(fill(' ', length - str.length())).toString();
     }
 
+    // Drops ANSI escape sequences, ESC [ parameters and a final letter, from what passes through
+    private static class PlainOutputStream extends FilterOutputStream {
+
+        private static final int ESC = 0x1B;
+
+        // 0 outside a sequence, 1 after ESC, 2 in its parameters
+        private int state = 0;
+
+        PlainOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (keep(b)) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int run = off;
+
+            for (int i = off; i < off + len; i++) {
+                if (!keep(b[i])) {
+                    out.write(b, run, i - run);
+                    run = i + 1;
+                }
+            }
+
+            out.write(b, run, off + len - run);
+        }
+
+        private boolean keep(int b) {
+            b &= 0xFF;
+
+            switch (state) {
+                case 0:
+                    if (b == ESC) {
+                        state = 1;
+                        return false;
+                    }
+                    return true;
+                case 1:
+                    state = b == '[' ? 2 : 0;
+                    return false;
+                default:
+                    if (b >= 0x40 && b <= 0x7E) {
+                        state = 0;
+                    }
+                    return false;
+            }
+        }
+    }
+
 }
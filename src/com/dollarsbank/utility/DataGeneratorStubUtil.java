@@ -1,70 +1,100 @@
 package com.dollarsbank.utility;
 
-import java.time.ZonedDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import com.dollarsbank.model.Account;
 import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.Money;
+import com.dollarsbank.model.Transaction;
+import com.dollarsbank.model.TransactionType;
 
 public class DataGeneratorStubUtil {
 
-    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("E, dd MMM YYYY HH:mm:ss z");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("E, dd MMM YYYY HH:mm:ss z").withZone(ZoneId.systemDefault());
 
     // Generate the transaction stub
-    public static final String transactionStub(String action, double amount, Account account) {
-
-        // Transaction
-        String transaction = String.format("%s of $%.2f in [%s].%n", action, amount, account.getAccountId());
-
-        // Account balance after transaction
-        transaction += balanceStatement(account);
+    public static final Transaction transactionStub(TransactionType type, long amount, Account account) {
+        return transactionStub(type, amount, account, System.currentTimeMillis());
+    }
 
-        return transaction;
+    public static final Transaction transactionStub(TransactionType type, long amount, Account account, long timestamp) {
+        return new Transaction(type, amount, account.getAccountId(), null, null, timestamp, account.getBalance());
     }
 
     // Transaction stub for user making the transfer
-    public static final String transferToStub(double amount, Account from, Customer to) {
-        String transaction = String.format("Transfer of $%.2f from [%s] to %s [%s].%n", amount, from.getAccountId(), to.getFullName(), to.getAccount().getAccountId());
-        
-        transaction += balanceStatement(from);
+    public static final Transaction transferToStub(long amount, Account from, Customer to) {
+        return transferToStub(amount, from, to, to.getAccount());
+    }
 
-        return transaction;
+    public static final Transaction transferToStub(long amount, Account from, Customer to, Account destination) {
+        return transferToStub(amount, from, to, destination, System.currentTimeMillis());
+    }
+
+    public static final Transaction transferToStub(long amount, Account from, Customer to, Account destination, long timestamp) {
+        return new Transaction(TransactionType.TRANSFER_OUT, amount, from.getAccountId(), to.getUsername(), destination.getAccountId(), timestamp, from.getBalance());
     }
 
     // Transaction stub for the user receiving the transfer
-    public static final String transferFromStub(double amount, Customer from, Account to) {
-        String transaction = String.format("Transfer of $%.2f from %s [%s] to [%s].%n", amount, from.getFullName(), from.getAccount().getAccountId(), to.getAccountId());
-        
-        transaction += balanceStatement(to);
+    public static final Transaction transferFromStub(long amount, Customer from, Account to) {
+        return transferFromStub(amount, from, from.getAccount(), to);
+    }
+
+    public static final Transaction transferFromStub(long amount, Customer from, Account source, Account to) {
+        return transferFromStub(amount, from, source, to, System.currentTimeMillis());
+    }
 
-        return transaction;
+    public static final Transaction transferFromStub(long amount, Customer from, Account source, Account to, long timestamp) {
+        return new Transaction(TransactionType.TRANSFER_IN, amount, to.getAccountId(), from.getUsername(), source.getAccountId(), timestamp, to.getBalance());
     }
 
     // Save/store the user's transaction
-    public static final void postTransaction(Customer customer, String transaction) {
-        // Get user's current transactions
-        ArrayBlockingQueue<String> transactions = customer.getTransactions();
-
-        // Attempt to add latest transaction to queue
-        try {
-            transactions.add(transaction);
-        
-        // If queue is full
-        } catch (IllegalStateException e) {
-            // Remove the oldest transaction
-            transactions.remove();
-
-            // Add again
-            transactions.add(transaction);
+    public static final void postTransaction(Customer customer, Transaction transaction) {
+        // Recent transactions are a ring buffer, the oldest is overwritten once it is full
+        customer.getTransactions().add(transaction);
+    }
+
+    // Render a transaction for display; counterparty is the other customer of a transfer, if still known
+    public static final String renderTransaction(Transaction transaction, Customer counterparty) {
+        StringBuilder sb = new StringBuilder(128);
+
+        switch (transaction.getType()) {
+            case TRANSFER_OUT:
+                sb.append("Transfer of $");
+                Money.appendTo(sb, transaction.getAmount()).append(" from [").append(transaction.getAccountId()).append("] to ");
+                appendCounterparty(sb, transaction, counterparty).append(".");
+                break;
+
+            case TRANSFER_IN:
+                sb.append("Transfer of $");
+                Money.appendTo(sb, transaction.getAmount()).append(" from ");
+                appendCounterparty(sb, transaction, counterparty).append(" to [").append(transaction.getAccountId()).append("].");
+                break;
+
+            default:
+                sb.append(transaction.getType().label).append(" of $");
+                Money.appendTo(sb, transaction.getAmount()).append(" in [").append(transaction.getAccountId()).append("].");
+                break;
         }
 
-        // Update the customer's transactions
-        customer.setTransactions(transactions);
+        sb.append(System.lineSeparator());
+
+        // Account balance after transaction
+        return balanceStatement(sb, transaction).toString();
     }
 
-    private static final String balanceStatement(Account acct) {
-        return String.format("Balance - $%.2f as of %s", acct.getBalance(), TIMESTAMP.format(ZonedDateTime.now()));
+    private static final StringBuilder appendCounterparty(StringBuilder sb, Transaction transaction, Customer counterparty) {
+        sb.append(counterparty != null ? counterparty.getFullName() : transaction.getCounterparty());
+        return sb.append(" [").append(transaction.getCounterpartyAccountId()).append("]");
     }
-    
-}
\ No newline at end of file
+
+    private static final StringBuilder balanceStatement(StringBuilder sb, Transaction transaction) {
+        sb.append("Balance - $");
+        Money.appendTo(sb, transaction.getBalance()).append(" as of ");
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(transaction.getTimestamp()), sb);
+
+        return sb;
+    }
+
+}
@@ -1,95 +1,513 @@
 package com.dollarsbank.utility;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
-import com.dollarsbank.model.Account;
+import com.dollarsbank.metrics.Metrics;
 import com.dollarsbank.model.Customer;
+import com.dollarsbank.model.legacy.LegacyObjectInputStream;
+import com.dollarsbank.persistence.AccountLedger;
+import com.dollarsbank.persistence.MappedAccountStore;
+import com.dollarsbank.persistence.SqlStore;
 
 public class FileStorageUtility {
-    
-    private static final String DATAFILE = "resources/data.txt";
-    
+
+    // Directory holding every data file, relative to the working directory unless absolute
+    public static final String DATADIR = System.getProperty("dollarsbank.data", "resources");
+
+    private static final String DATAFILE = DATADIR + "/data.txt";
+
+    // Incremental checkpoints holding only the customers that changed since the previous one
+    private static final String CHECKPOINTDIR = DATADIR + "/checkpoints";
+
+    // Storage engine: "serialized" (default) writes the whole map with ObjectOutputStream,
+    // "mapped" keeps balances in a fixed-width memory-mapped record file,
+    // "sql" keeps customers and accounts in an embedded database
+    private static final boolean USE_MAPPED_STORE = "mapped".equals(System.getProperty("dollarsbank.storage"));
+    private static final boolean USE_SQL_STORE = "sql".equals(System.getProperty("dollarsbank.storage"));
+
+    // With the sql engine, keep about this many customers in memory and read the others on demand; 0 loads them all.
+    // The mapped engine always reads customers on demand, keeping MAPPED_CACHE_SIZE unless told otherwise.
+    public static final int CACHE_SIZE = Integer.getInteger("dollarsbank.cache.size", 0);
+    private static final int MAPPED_CACHE_SIZE = 100000;
+
+    // Last journal sequence number contained in the imported snapshot
+    private static long snapshotSequence = 0;
+
+    // Number of the next checkpoint file to be written
+    private static long nextCheckpoint = 0;
+
+    private static MappedAccountStore mappedStore;
+    private static SqlStore sqlStore;
+
     // Export the data to a file to be saved somewhere
     public static final void exportData(Map<String, Customer> users) {
-        
-        // Retrieve the number of users that are being saved
-        int numUsers = users.size();
+        exportData(users, 0);
+    }
 
-        File file = new File(DATAFILE);
+    // Export the data along with the last journal sequence number it includes
+    public static final synchronized void exportData(Map<String, Customer> users, long journalSeq) {
+        long begin = System.nanoTime();
 
-        // If the file does not exist
-        if (!file.exists()) {
+        writeData(users, journalSeq);
+        Metrics.EXPORT.recordSince(begin);
+    }
 
-            // Try to create it
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to create data file.");
-            }
+    private static final void writeData(Map<String, Customer> users, long journalSeq) {
+
+        if (USE_MAPPED_STORE) {
+            exportMappedData(users.values(), journalSeq);
+            return;
+        }
+
+        if (USE_SQL_STORE) {
+            exportSqlData(users.values(), journalSeq);
+            return;
+        }
+
+        // Write to a temporary file first so a crash never leaves a half written data file
+        File file = new File(DATAFILE);
+        File temp = new File(DATAFILE + ".tmp");
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
         }
 
         // Attempt to write users to the file
-        try (ObjectOutputStream writer = new ObjectOutputStream(new FileOutputStream(file))) {
-            
+        try (FileOutputStream out = new FileOutputStream(temp); ObjectOutputStream writer = new ObjectOutputStream(out)) {
+
             // First store the number of users whose data is being stored
-            writer.writeInt(numUsers);
+            writer.writeInt(users.size());
 
             // Then write in user data
             for (Customer user : users.values()) {
                 writer.writeObject(user);
             }
 
+            // Lastly store the journal position so replay can skip records already in this snapshot
+            writer.writeLong(journalSeq);
+            writer.flush();
+            out.getFD().sync();
+
         } catch (IOException e) {
             e.printStackTrace();
             ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save data.");
+            return;
+        }
+
+        Metrics.EXPORT_BYTES.add(temp.length());
+
+        if (replaceFile(temp, file)) {
+            // Every checkpoint is now contained in the full snapshot
+            for (File checkpoint : listCheckpoints()) {
+                checkpoint.delete();
+            }
         }
     }
-    
+
     // Import the data from a saved file
-    public static final Map<String, Customer> importData() {
+    public static final synchronized Map<String, Customer> importData() {
+        long begin = System.nanoTime();
+        Map<String, Customer> users = readData();
+
+        Metrics.IMPORT.recordSince(begin);
+        return users;
+    }
+
+    private static final Map<String, Customer> readData() {
+
+        if (USE_MAPPED_STORE) {
+            return importMappedData();
+        }
+
+        if (USE_SQL_STORE) {
+            return importSqlData();
+        }
+
         Map<String, Customer> users = new HashMap<String, Customer>();
-        Customer user;
 
+        try {
+            snapshotSequence = readSnapshot(users);
+
+        } catch (IOException | ClassNotFoundException e) {
+            throw unableToImport(e);
+        }
+
+        return users;
+    }
+
+    // Starting with some or none of the customers would lose the others at the next save, so the bank doesn't start
+    private static final IllegalStateException unableToImport(Exception e) {
+        e.printStackTrace();
+        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to import data from " + DATADIR + ". The bank cannot start.");
+        return new IllegalStateException("Unable to import data from " + DATADIR, e);
+    }
+
+    // Read the full snapshot followed by every newer checkpoint; returns the last journal sequence they contain
+    private static final long readSnapshot(Map<String, Customer> users) throws IOException, ClassNotFoundException {
+        long journalSeq = 0;
         File file = new File(DATAFILE);
 
         // If the file contains any data
         if (file.length() > 0) {
 
-            // Attempt to read from the file
-            try (ObjectInputStream reader = new ObjectInputStream(new FileInputStream(new File(DATAFILE)))) {
-                
+            // Attempt to read from the file; files saved by older versions are converted as they are read
+            try (ObjectInputStream reader = new LegacyObjectInputStream(new FileInputStream(file))) {
+
                 // Read the number of users that are stored in the file so that we know how many users to read
-                int numUsers = (int) reader.readInt();
+                int numUsers = reader.readInt();
 
                 // Read from file the number of users specified
                 for (int i = 0; i < numUsers; i++) {
-                    
+
                     // Read a user from the file
-                    user = (Customer) reader.readObject();
+                    Customer user = (Customer) reader.readObject();
 
                     // Store the user into the hashmap
                     users.put(user.getUsername(), user);
+                }
+
+                // Snapshots written before journaling was added have no sequence number
+                try {
+                    journalSeq = reader.readLong();
+                } catch (EOFException e) {
+                    journalSeq = 0;
+                }
+            }
+
+            Metrics.IMPORT_BYTES.add(file.length());
+        }
+
+        // Newer versions of the changed customers replace the ones from the snapshot
+        for (File checkpoint : listCheckpoints()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint))) {
+                long checkpointSeq = in.readLong();
+
+                // Left behind by a crash during compaction, already part of the snapshot
+                if (checkpointSeq <= journalSeq && checkpointSeq > 0) {
+                    continue;
+                }
+
+                Metrics.IMPORT_BYTES.add(checkpoint.length());
+
+                ObjectInputStream reader = new ObjectInputStream(in);
+                int numUsers = reader.readInt();
+                for (int i = 0; i < numUsers; i++) {
+                    Customer user = (Customer) reader.readObject();
+                    users.put(user.getUsername(), user);
+                }
 
-                    // Update customer and account count
-                    Customer.incrCustomerCnt();
-                    Account.incrAccountCnt();
+                journalSeq = Math.max(journalSeq, checkpointSeq);
+            }
+        }
+
+        return journalSeq;
+    }
+
+    // CHECKPOINTS
+
+    // Serialize a set of customers so they can be written out later without touching the live objects
+    public static final byte[] serializeCustomers(Collection<Customer> users) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * users.size());
+
+        try (ObjectOutputStream writer = new ObjectOutputStream(bytes)) {
+            writer.writeInt(users.size());
+
+            for (Customer user : users) {
+                writer.writeObject(user);
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
 
+        return bytes.toByteArray();
+    }
+
+    // Same format, written one group at a time; written is given each group's index once it is serialized, e.g. so
+    // whatever keeps the group from changing can be let go
+    public static final byte[] serializeCustomers(List<List<Customer>> groups, IntConsumer written) {
+        int count = 0;
+
+        for (List<Customer> group : groups) {
+            count += group.size();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * count);
+
+        try (ObjectOutputStream writer = new ObjectOutputStream(bytes)) {
+            writer.writeInt(count);
+
+            for (int i = 0; i < groups.size(); i++) {
+                for (Customer user : groups.get(i)) {
+                    writer.writeObject(user);
                 }
 
+                written.accept(i);
+            }
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    // Durably write a checkpoint of serialized customers; returns whether it was written
+    public static final synchronized boolean writeCheckpoint(byte[] serializedUsers, long journalSeq) {
+        long begin = System.nanoTime();
+        boolean written = writeCheckpointData(serializedUsers, journalSeq);
+
+        if (written) {
+            Metrics.CHECKPOINT_BYTES.add(serializedUsers.length);
+        }
+
+        Metrics.CHECKPOINT.recordSince(begin);
+        return written;
+    }
+
+    private static final boolean writeCheckpointData(byte[] serializedUsers, long journalSeq) {
+
+        if (USE_MAPPED_STORE) {
+            try {
+                return exportMappedData(deserializeCustomers(serializedUsers), journalSeq);
             } catch (IOException | ClassNotFoundException e) {
-                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to import data.");
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        if (USE_SQL_STORE) {
+            try {
+                return exportSqlData(deserializeCustomers(serializedUsers), journalSeq);
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        File dir = new File(CHECKPOINTDIR);
+        dir.mkdirs();
+
+        // Continue numbering after any checkpoint already on disk
+        if (nextCheckpoint == 0) {
+            for (File checkpoint : listCheckpoints()) {
+                nextCheckpoint = Math.max(nextCheckpoint, checkpointNumber(checkpoint) + 1);
+            }
+        }
+
+        File file = new File(dir, String.format("%020d.dat", nextCheckpoint));
+        File temp = new File(dir, file.getName() + ".tmp");
+
+        // Journal position first, followed by the serialized customers as their own object stream
+        try (FileOutputStream out = new FileOutputStream(temp); DataOutputStream writer = new DataOutputStream(out)) {
+            writer.writeLong(journalSeq);
+            writer.write(serializedUsers);
+            writer.flush();
+            out.getFD().sync();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to write checkpoint.");
+            return false;
+        }
+
+        if (!replaceFile(temp, file)) {
+            return false;
+        }
+
+        nextCheckpoint++;
+        return true;
+    }
+
+    public static final synchronized int getCheckpointCount() {
+        return listCheckpoints().size();
+    }
+
+    // Fold every checkpoint into a new full snapshot, working only from the files on disk
+    public static final synchronized void compactCheckpoints() {
+        if (USE_MAPPED_STORE || USE_SQL_STORE) {
+            return;
+        }
+
+        Map<String, Customer> users = new HashMap<String, Customer>();
+
+        try {
+            long journalSeq = readSnapshot(users);
+            exportData(users, journalSeq);
+
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to compact checkpoints.");
+        }
+    }
+
+    private static final List<Customer> deserializeCustomers(byte[] serializedUsers) throws IOException, ClassNotFoundException {
+        List<Customer> users = new ArrayList<Customer>();
+
+        try (ObjectInputStream reader = new ObjectInputStream(new ByteArrayInputStream(serializedUsers))) {
+            int numUsers = reader.readInt();
+
+            for (int i = 0; i < numUsers; i++) {
+                users.add((Customer) reader.readObject());
             }
         }
 
         return users;
     }
 
+    // Checkpoint files in the order they were written
+    private static final List<File> listCheckpoints() {
+        File[] files = new File(CHECKPOINTDIR).listFiles((dir, name) -> name.endsWith(".dat"));
+
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static final long checkpointNumber(File checkpoint) {
+        String name = checkpoint.getName();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    // Atomically move a fully written temporary file over its destination
+    private static final boolean replaceFile(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save data.");
+            return false;
+        }
+    }
+
+    // MAPPED STORE
+
+    // Write balances into the mapped record files, appending profiles only for new customers or changed details
+    private static final boolean exportMappedData(Collection<Customer> users, long journalSeq) {
+        try {
+            if (mappedStore == null) {
+                mappedStore = MappedAccountStore.open(null);
+            }
+
+            mappedStore.snapshot(users, journalSeq);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save data.");
+            return false;
+        }
+    }
+
+    // Map the record files and build every customer from them, without their recent transactions
+    private static final Map<String, Customer> importMappedData() {
+        Map<String, Customer> users = new HashMap<String, Customer>();
+
+        try {
+            for (Customer user : openMappedStore(null).findAll()) {
+                users.put(user.getUsername(), user);
+            }
+        } catch (IOException e) {
+            throw unableToImport(e);
+        }
+
+        return users;
+    }
+
+    // Map the record files without loading any customers, for reading them on demand; recent transactions
+    // are read from the ledger, if given
+    public static final synchronized MappedAccountStore openMappedStore(AccountLedger ledger) throws IOException {
+        if (mappedStore == null) {
+            mappedStore = MappedAccountStore.open(ledger);
+        }
+
+        snapshotSequence = mappedStore.getJournalSequence();
+        return mappedStore;
+    }
+
+    // SQL STORE
+
+    // Write the customers and their accounts in one transaction
+    private static final boolean exportSqlData(Collection<Customer> users, long journalSeq) {
+        try {
+            if (sqlStore == null) {
+                sqlStore = SqlStore.open();
+            }
+
+            sqlStore.snapshot(users, journalSeq);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Unable to save data.");
+            return false;
+        }
+    }
+
+    // Open the database and build customers from it
+    private static final Map<String, Customer> importSqlData() {
+        try {
+            return openSqlStore().loadAll();
+        } catch (IOException e) {
+            throw unableToImport(e);
+        }
+    }
+
+    // Whether the storage engine can hold every field of the customer; checked before a customer is registered
+    public static final boolean fits(Customer customer) {
+        return !USE_SQL_STORE || SqlStore.fits(customer);
+    }
+
+    public static final boolean fitsContact(String email, String phoneNumber) {
+        return !USE_SQL_STORE || SqlStore.fitsContact(email, phoneNumber);
+    }
+
+    public static final boolean isLoadedOnDemand() {
+        return USE_MAPPED_STORE || (USE_SQL_STORE && CACHE_SIZE > 0);
+    }
+
+    public static final boolean isMappedStore() {
+        return USE_MAPPED_STORE;
+    }
+
+    // Customers kept in memory when they are loaded on demand
+    public static final int getCacheSize() {
+        return USE_MAPPED_STORE && CACHE_SIZE <= 0 ? MAPPED_CACHE_SIZE : CACHE_SIZE;
+    }
+
+    // Open the database without loading any customers, for reading them on demand
+    public static final synchronized SqlStore openSqlStore() throws IOException {
+        if (sqlStore == null) {
+            sqlStore = SqlStore.open();
+        }
+
+        snapshotSequence = sqlStore.getJournalSequence();
+        return sqlStore;
+    }
+
+    public static final long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
 }
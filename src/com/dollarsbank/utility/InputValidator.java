@@ -0,0 +1,241 @@
+package com.dollarsbank.utility;
+
+// Single-pass checks of input against the StringUtil formats, without regular expressions or allocation.
+// Each method accepts exactly what the matching StringUtil pattern accepts for a whole token.
+public final class InputValidator {
+
+    // Whole dollars in an amount, up to just under a trillion, so no single amount comes near overflowing a balance
+    public static final int MAX_DOLLAR_DIGITS = 12;
+
+    private InputValidator() {
+        // private constructor to make class un-instantiable
+    }
+
+    // Check input against any of the formats
+    public static boolean isValid(StringUtil type, CharSequence input) {
+        switch (type) {
+            case NAME:
+                return isName(input);
+            case USERNAME:
+                return isUsername(input);
+            case PASSWORD:
+                return isPassword(input);
+            case NUMBER:
+                return isNumber(input);
+            case EMAIL:
+                return isEmail(input);
+            case CONFIRM:
+                return isConfirm(input);
+            case MONETARY:
+                return isMonetary(input);
+            case ACCOUNT:
+                return isAccountId(input);
+            default:
+                return isAny(input);
+        }
+    }
+
+    // [a-zA-Z]+
+    public static boolean isName(CharSequence input) {
+        int length = input.length();
+
+        if (length == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (!isLetter(input.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // [a-zA-Z]+[a-zA-Z0-9]+ : a letter, then at least one more letter or digit
+    public static boolean isUsername(CharSequence input) {
+        int length = input.length();
+
+        if (length < 2 || !isLetter(input.charAt(0))) {
+            return false;
+        }
+
+        for (int i = 1; i < length; i++) {
+            char ch = input.charAt(i);
+
+            if (!isLetter(ch) && !isDigit(ch)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // At least 8 of [A-Za-z0-9@$!%*?&], including a lowercase letter, an uppercase letter and a special
+    // character. Only the specials both of the pattern's classes allow can appear.
+    public static boolean isPassword(CharSequence input) {
+        int length = input.length();
+        boolean lower = false, upper = false, special = false;
+
+        if (length < 8) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char ch = input.charAt(i);
+
+            if (ch >= 'a' && ch <= 'z') {
+                lower = true;
+            } else if (ch >= 'A' && ch <= 'Z') {
+                upper = true;
+            } else if (isPasswordSpecial(ch)) {
+                special = true;
+            } else if (!isDigit(ch)) {
+                return false;
+            }
+        }
+
+        return lower && upper && special;
+    }
+
+    // [0-9]{10}
+    public static boolean isNumber(CharSequence input) {
+        return input.length() == 10 && isDigits(input, 0, 10);
+    }
+
+    // [a-zA-Z]+\w+@[a-zA-Z]+\.(com|net|edu|org)
+    public static boolean isEmail(CharSequence input) {
+        int length = input.length();
+        int at = -1;
+
+        // Local part: a letter, then at least one more word character
+        for (int i = 0; i < length; i++) {
+            char ch = input.charAt(i);
+
+            if (ch == '@') {
+                at = i;
+                break;
+            }
+
+            if (i == 0 ? !isLetter(ch) : !isWordChar(ch)) {
+                return false;
+            }
+        }
+
+        // Domain: at least one letter, a dot and one of the top level domains
+        int dot = length - 4;
+        if (at < 2 || dot <= at + 1 || input.charAt(dot) != '.') {
+            return false;
+        }
+
+        for (int i = at + 1; i < dot; i++) {
+            if (!isLetter(input.charAt(i))) {
+                return false;
+            }
+        }
+
+        return regionEquals(input, dot + 1, "com") || regionEquals(input, dot + 1, "net")
+            || regionEquals(input, dot + 1, "edu") || regionEquals(input, dot + 1, "org");
+    }
+
+    // y, yes, n or no, in any case
+    public static boolean isConfirm(CharSequence input) {
+        return isYes(input) || isNo(input);
+    }
+
+    public static boolean isYes(CharSequence input) {
+        int length = input.length();
+
+        return (length == 1 && lower(input.charAt(0)) == 'y')
+            || (length == 3 && lower(input.charAt(0)) == 'y' && lower(input.charAt(1)) == 'e' && lower(input.charAt(2)) == 's');
+    }
+
+    public static boolean isNo(CharSequence input) {
+        int length = input.length();
+
+        return (length == 1 && lower(input.charAt(0)) == 'n')
+            || (length == 2 && lower(input.charAt(0)) == 'n' && lower(input.charAt(1)) == 'o');
+    }
+
+    // \d{1,12}(\.\d\d)?
+    public static boolean isMonetary(CharSequence input) {
+        int length = input.length();
+        int point = length - 3;
+
+        // With cents: digits, a point and exactly two more digits
+        if (point > 0 && input.charAt(point) == '.') {
+            return point <= MAX_DOLLAR_DIGITS && isDigits(input, 0, point) && isDigits(input, point + 1, length);
+        }
+
+        return length > 0 && length <= MAX_DOLLAR_DIGITS && isDigits(input, 0, length);
+    }
+
+    // U\d{6,10} : ids are zero-padded to six digits and grow past a million
+    public static boolean isAccountId(CharSequence input) {
+        int length = input.length();
+        return length >= 7 && length <= 11 && input.charAt(0) == 'U' && isDigits(input, 1, length);
+    }
+
+    // .* : anything on a single line
+    public static boolean isAny(CharSequence input) {
+        int length = input.length();
+
+        for (int i = 0; i < length; i++) {
+            char ch = input.charAt(i);
+
+            if (ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Helpers
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isWordChar(char ch) {
+        return isLetter(ch) || isDigit(ch) || ch == '_';
+    }
+
+    private static boolean isPasswordSpecial(char ch) {
+        return ch == '@' || ch == '$' || ch == '!' || ch == '%' || ch == '*' || ch == '?' || ch == '&';
+    }
+
+    // All of input[from, to) are digits, and there is at least one
+    private static boolean isDigits(CharSequence input, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (!isDigit(input.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence input, int from, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (input.charAt(from + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static char lower(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+}
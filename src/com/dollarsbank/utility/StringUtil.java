@@ -1,19 +1,29 @@
 package com.dollarsbank.utility;
 
+import java.util.regex.Pattern;
+
 public enum StringUtil {
     NAME("[a-zA-Z]+"),
     USERNAME("[a-zA-Z]+[a-zA-Z0-9]+"), 
     PASSWORD("(?=.*[a-z])(?=.*[A-Z])(?=.*[-+_!@#$%^&*.,?])[A-Za-z\\d@$!%*?&]{8,}"),
     NUMBER("[0-9]{10}"),
     EMAIL("[a-zA-Z]+\\w+@[a-zA-Z]+\\.(com|net|edu|org)"),
-    CONFIRM("y(es)?\\Z|no?\\Z"),
-    MONETARY("\\d+(\\.\\d\\d)?"),
-    ACCOUNT("U\\d{6}"),
+    CONFIRM("y(es)?|no?", Pattern.CASE_INSENSITIVE),
+    MONETARY("\\d{1,12}(\\.\\d\\d)?"),
+    ACCOUNT("U\\d{6,10}"),
     ANY(".*");
 
     public final String pattern;
 
+    // Compiled once, for callers that still need a regex; InputValidator checks the same formats without one
+    public final Pattern compiled;
+
     private StringUtil(String pattern) {
+        this(pattern, 0);
+    }
+
+    private StringUtil(String pattern, int flags) {
         this.pattern = pattern;
+        this.compiled = Pattern.compile(pattern, flags);
     }
 }
@@ -1,9 +1,7 @@
 package com.dollarsbank.utility;
 
 import java.util.InputMismatchException;
-import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import com.dollarsbank.model.Account;
 
@@ -22,7 +20,7 @@ public class ValidationUtility {
         while (!isValid) {
 
             // Print the instructions
-            System.out.println(instr);
+            ConsolePrinterUtility.out().println(instr);
 
             ConsolePrinterUtility.askForInput("Enter a choice (1 - " + maxOpt + "):");
 
@@ -59,7 +57,6 @@ public class ValidationUtility {
     public static String getValidatedStrInput(Scanner sc, String instr, StringUtil type) {
         String input = "";
         boolean isValid = false;
-        Pattern pattern = Pattern.compile(type.pattern);
 
         // Keep asking user for input until a valid input is made
         while (!isValid) {
@@ -69,11 +66,14 @@ public class ValidationUtility {
             
             // Attempt to retrieve the correct input
             try {
-                input = sc.next(pattern);
-                isValid = true;
-            
+                input = sc.next();
+                isValid = InputValidator.isValid(type, input);
+            } finally {
+                sc.nextLine();
+            }
+
             // Proper input not made
-            } catch (InputMismatchException e) {
+            if (!isValid) {
                 // Print error message based on type of input
                 switch(type) {
                     case NAME:
@@ -92,16 +92,11 @@ public class ValidationUtility {
                         ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Phone number must be entered as 10 digits.");
                         break;
                     case MONETARY:
-                        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Invalid monetary value.");
+                        ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Invalid monetary value. Amounts have at most " + InputValidator.MAX_DOLLAR_DIGITS + " digits before the point.");
                         break;
                     default:
                         break;
                 }
-
-                // Declare input as invalid
-                isValid = false;
-            } finally {
-                sc.nextLine();
             }
         }
         
@@ -116,35 +111,31 @@ public class ValidationUtility {
         boolean validInput = false;
         String input;
 
-        // Pattern to look for: yes, y, no, n (case insensitive)
-        Pattern pattern = Pattern.compile(StringUtil.CONFIRM.pattern, Pattern.CASE_INSENSITIVE);
-        
         // While the current input is invalid
         while (!validInput) {
-            System.out.println(ConsolePrinterUtility.MSG_VALIDATION + msg + " (y/n)" + ConsolePrinterUtility.USER_INPUT);
+            ConsolePrinterUtility.out().println(ConsolePrinterUtility.MSG_VALIDATION + msg + " (y/n)" + ConsolePrinterUtility.USER_INPUT);
+            ConsolePrinterUtility.flush();
 
             // Attempt to receive input
             try {
                 
-                // Check for a specific pattern as input
-                input = sc.next(pattern);
-
-                // Assume input is true
-                validInput = true;
+                // Check for yes, y, no, n (case insensitive) as input
+                input = sc.next();
 
                 // If user inputs "y" or "yes" (case-insensitive)
-                if (input.equalsIgnoreCase("y") || input.equalsIgnoreCase("yes")) {
+                if (InputValidator.isYes(input)) {
                     confirm = true;
+                    validInput = true;
 
                 // User inputted "n" or "no"
-                } else {
+                } else if (InputValidator.isNo(input)) {
                     confirm = false;
-                }
+                    validInput = true;
 
-            // Input did not match the possible inputs (case-insensitive: y, yes, n, no)
-            } catch (NoSuchElementException e) {
-                validInput = false;
-                ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Invalid input. Try again.");
+                // Input did not match the possible inputs
+                } else {
+                    ConsolePrinterUtility.printMessage(ConsolePrinterUtility.MSG_ERROR, "ERR: Invalid input. Try again.");
+                }
             } finally {
                 // Consume EOL
                 sc.nextLine();
@@ -156,7 +147,7 @@ public class ValidationUtility {
         return confirm;
     }
 
-    public static boolean checkForSsufficientFunds(Account acct, double amt) {
+    public static boolean checkForSsufficientFunds(Account acct, long amt) {
 
         // If amount is greater than the account balance
         if (amt > acct.getBalance()) {